@@ -0,0 +1,25 @@
+package cn.zifangsky.netty.exercise.chapter10;
+
+import io.netty.channel.CombinedChannelDuplexHandler;
+
+/**
+ * 以分隔符分隔的ASCII十进制整数协议的编解码器，入站输出{@link IntBatch}，出站接受Integer、int[]和IntBatch
+ *
+ * @author zifangsky
+ * @date 2020/11/22
+ * @since 1.0.0
+ */
+public class AsciiIntegerCodec extends CombinedChannelDuplexHandler<AsciiIntegerDecoder, AsciiIntegerEncoder> {
+
+    public AsciiIntegerCodec() {
+        super(new AsciiIntegerDecoder(), new AsciiIntegerEncoder());
+    }
+
+    /**
+     * @param delimiter 分隔符
+     * @param batchSize 每个批次最多包含的int个数
+     */
+    public AsciiIntegerCodec(byte delimiter, int batchSize) {
+        super(new AsciiIntegerDecoder(delimiter, batchSize), new AsciiIntegerEncoder(delimiter));
+    }
+}
@@ -0,0 +1,117 @@
+package cn.zifangsky.netty.exercise.chapter10;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.util.ByteProcessor;
+
+/**
+ * 将以分隔符分隔的ASCII十进制整数（例如“12\n-345\n”）直接从字节解析到{@link IntBatch}中
+ * <p>不创建String和Integer，也不使用累积缓冲区：正在解析的数字保存在字段中，跨越多次读取时继续解析。
+ * 连续的分隔符（空数字）会被忽略，'\r'会被跳过，因此也可以解析CRLF分隔的数据。
+ * 包含非法字符或者超出int范围的数字会被丢弃到下一个分隔符为止，并触发一次{@link CorruptedFrameException}，之后继续解析</p>
+ *
+ * @author zifangsky
+ * @date 2020/11/22
+ * @since 1.0.0
+ */
+public class AsciiIntegerDecoder extends ChannelInboundHandlerAdapter implements ByteProcessor {
+    private static final long MAX_ABS_VALUE = -(long) Integer.MIN_VALUE;
+
+    private final byte delimiter;
+    private final IntBatch batch;
+    /**
+     * 正在解析的数字的绝对值
+     */
+    private long value;
+    private int digits;
+    private boolean negative;
+    /**
+     * 正在丢弃一个非法的数字
+     */
+    private boolean discarding;
+    /**
+     * 只在channelRead()期间有效，供{@link #process(byte)}使用
+     */
+    private ChannelHandlerContext ctx;
+
+    public AsciiIntegerDecoder() {
+        this((byte) '\n', IntStreamDecoder.DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param delimiter 分隔符，不能是数字、'-'或者'\r'
+     * @param batchSize 每个批次最多包含的int个数
+     */
+    public AsciiIntegerDecoder(byte delimiter, int batchSize) {
+        if ((delimiter >= '0' && delimiter <= '9') || delimiter == '-' || delimiter == '\r') {
+            throw new IllegalArgumentException("Illegal delimiter: " + delimiter);
+        }
+        this.delimiter = delimiter;
+        this.batch = new IntBatch(batchSize);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (!(msg instanceof ByteBuf)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+
+        ByteBuf in = (ByteBuf) msg;
+        this.ctx = ctx;
+        try {
+            //使用forEachByte()逐个处理字节，避免每次getByte()的边界检查
+            in.forEachByte(this);
+        } finally {
+            this.ctx = null;
+            in.release();
+            batch.fireAndClear(ctx);
+        }
+    }
+
+    @Override
+    public boolean process(byte b) {
+        if (b == delimiter) {
+            this.endNumber(ctx);
+        } else if (discarding || b == '\r') {
+            return true;
+        } else if (b >= '0' && b <= '9') {
+            value = value * 10 + (b - '0');
+            digits++;
+            if (value > MAX_ABS_VALUE || (!negative && value == MAX_ABS_VALUE)) {
+                this.discard(ctx, "Integer out of range");
+            }
+        } else if (b == '-' && digits == 0 && !negative) {
+            negative = true;
+        } else {
+            this.discard(ctx, "Illegal character: " + (b & 0xFF));
+        }
+        return true;
+    }
+
+    private void endNumber(ChannelHandlerContext ctx) {
+        if (digits > 0 && !discarding) {
+            batch.add(negative ? (int) -value : (int) value);
+            if (batch.isFull()) {
+                batch.fireAndClear(ctx);
+            }
+        } else if (negative && !discarding) {
+            ctx.fireExceptionCaught(new CorruptedFrameException("Missing digits after '-'"));
+        }
+        value = 0;
+        digits = 0;
+        negative = false;
+        discarding = false;
+    }
+
+    /**
+     * 丢弃当前数字直到下一个分隔符，之前已经解析的数字先输出，保证顺序
+     */
+    private void discard(ChannelHandlerContext ctx, String message) {
+        discarding = true;
+        batch.fireAndClear(ctx);
+        ctx.fireExceptionCaught(new CorruptedFrameException(message));
+    }
+}
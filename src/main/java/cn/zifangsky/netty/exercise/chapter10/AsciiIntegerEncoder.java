@@ -0,0 +1,98 @@
+package cn.zifangsky.netty.exercise.chapter10;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToByteEncoder;
+import io.netty.util.CharsetUtil;
+
+/**
+ * 将整数编码为以分隔符结尾的ASCII十进制数字，直接写入出站的ByteBuf，不创建String
+ * <p>支持Integer、int[]和{@link IntBatch}，批量写出时整批只分配一个ByteBuf</p>
+ *
+ * @author zifangsky
+ * @date 2020/11/22
+ * @since 1.0.0
+ */
+public class AsciiIntegerEncoder extends MessageToByteEncoder<Object> {
+    /**
+     * 一个int编码后的最大字节数（包括负号和分隔符）
+     */
+    private static final int MAX_ENCODED_LENGTH = 12;
+    private static final byte[] MIN_VALUE = String.valueOf(Integer.MIN_VALUE).getBytes(CharsetUtil.US_ASCII);
+
+    private final byte delimiter;
+
+    public AsciiIntegerEncoder() {
+        this((byte) '\n');
+    }
+
+    /**
+     * @param delimiter 每个数字后面的分隔符
+     */
+    public AsciiIntegerEncoder(byte delimiter) {
+        this.delimiter = delimiter;
+    }
+
+    @Override
+    public boolean acceptOutboundMessage(Object msg) throws Exception {
+        return msg instanceof Integer || msg instanceof int[] || msg instanceof IntBatch;
+    }
+
+    @Override
+    protected ByteBuf allocateBuffer(ChannelHandlerContext ctx, Object msg, boolean preferDirect) throws Exception {
+        int count = msg instanceof int[] ? ((int[]) msg).length
+                : msg instanceof IntBatch ? ((IntBatch) msg).size() : 1;
+        int capacity = count * MAX_ENCODED_LENGTH;
+        return preferDirect ? ctx.alloc().ioBuffer(capacity) : ctx.alloc().heapBuffer(capacity);
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, Object msg, ByteBuf out) throws Exception {
+        if (msg instanceof Integer) {
+            this.writeInt(out, (Integer) msg);
+        } else if (msg instanceof int[]) {
+            for (int value : (int[]) msg) {
+                this.writeInt(out, value);
+            }
+        } else {
+            IntBatch batch = (IntBatch) msg;
+            int[] values = batch.array();
+            for (int i = 0; i < batch.size(); i++) {
+                this.writeInt(out, values[i]);
+            }
+        }
+    }
+
+    private void writeInt(ByteBuf out, int value) {
+        out.ensureWritable(MAX_ENCODED_LENGTH);
+        int index = out.writerIndex();
+        if (value == Integer.MIN_VALUE) {
+            out.setBytes(index, MIN_VALUE);
+            out.setByte(index + MIN_VALUE.length, delimiter);
+            out.writerIndex(index + MIN_VALUE.length + 1);
+            return;
+        }
+        if (value < 0) {
+            out.setByte(index++, '-');
+            value = -value;
+        }
+
+        //从最低位开始倒序写入
+        int digits = digits(value);
+        for (int i = index + digits - 1; i >= index; i--) {
+            int next = value / 10;
+            out.setByte(i, '0' + value - next * 10);
+            value = next;
+        }
+        out.setByte(index + digits, delimiter);
+        out.writerIndex(index + digits + 1);
+    }
+
+    private static int digits(int value) {
+        int digits = 1;
+        for (long limit = 10; limit <= value; limit *= 10) {
+            digits++;
+        }
+        return digits;
+    }
+}
@@ -0,0 +1,142 @@
+package cn.zifangsky.netty.exercise.chapter10;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+
+import java.nio.CharBuffer;
+
+/**
+ * 将UTF-16（大端序，与{@link ByteBuf#readChar()}一致）字节流批量解码为{@link CharBuffer}
+ * <p>与{@link ByteToCharDecoder}每2个字节输出一个Character不同，每次读取时通过{@link java.nio.ByteBuffer#asCharBuffer()}
+ * 批量转换所有完整的字符，放入一个可复用的CharBuffer，写满之后立即输出一次。该CharBuffer只在channelRead()调用期间有效，
+ * 需要保留时使用toString()复制。上次读取剩下的奇数字节保存在字段中，与下次读取的第一个字节拼接；
+ * 批次末尾的高代理项（high surrogate）会留到下一个批次，因此代理对（surrogate pair）不会被拆分到两个消息中</p>
+ *
+ * @author zifangsky
+ * @date 2020/11/23
+ * @since 1.0.0
+ */
+public class ByteToCharBufferDecoder extends ChannelInboundHandlerAdapter {
+    /**
+     * 默认的批次大小（字符数）
+     */
+    public static final int DEFAULT_BATCH_SIZE = 4096;
+
+    private final char[] chars;
+    /**
+     * chars的视图，每次输出前重置position和limit
+     */
+    private final CharBuffer batch;
+    private int size;
+    /**
+     * 上次读取剩下的一个字节，没有时为-1
+     */
+    private int pendingByte = -1;
+
+    public ByteToCharBufferDecoder() {
+        this(DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param batchSize 每个批次最多包含的字符数，至少为2（保证代理对可以放入同一个批次）
+     */
+    public ByteToCharBufferDecoder(int batchSize) {
+        if (batchSize < 2) {
+            throw new IllegalArgumentException("batchSize must be at least 2: " + batchSize);
+        }
+        this.chars = new char[batchSize];
+        this.batch = CharBuffer.wrap(chars);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (!(msg instanceof ByteBuf)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+
+        ByteBuf in = (ByteBuf) msg;
+        try {
+            int index = in.readerIndex();
+            int end = in.writerIndex();
+
+            //1. 补全上次读取剩下的字符
+            if (pendingByte >= 0 && index < end) {
+                this.add(ctx, (char) (pendingByte << 8 | in.getUnsignedByte(index++)));
+                pendingByte = -1;
+            }
+
+            //2. 批量转换所有完整的字符
+            while (end - index >= 2) {
+                int count = Math.min((end - index) >>> 1, chars.length - size);
+                if (in.nioBufferCount() == 1) {
+                    in.nioBuffer(index, count << 1).asCharBuffer().get(chars, size, count);
+                } else {
+                    for (int i = 0; i < count; i++) {
+                        chars[size + i] = in.getChar(index + (i << 1));
+                    }
+                }
+                size += count;
+                index += count << 1;
+                if (size == chars.length) {
+                    this.fireBatch(ctx);
+                }
+            }
+
+            //3. 保存剩下的奇数字节
+            if (index < end) {
+                pendingByte = in.getUnsignedByte(index);
+            }
+        } finally {
+            in.release();
+            this.fireBatch(ctx);
+        }
+    }
+
+    /**
+     * 连接断开时输出留下的高代理项（此时它已经不可能组成完整的代理对），剩下的奇数字节被丢弃
+     */
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        if (size > 0) {
+            this.fire(ctx, size);
+        }
+        pendingByte = -1;
+        ctx.fireChannelInactive();
+    }
+
+    private void add(ChannelHandlerContext ctx, char c) {
+        chars[size++] = c;
+        if (size == chars.length) {
+            this.fireBatch(ctx);
+        }
+    }
+
+    /**
+     * 输出当前批次，末尾的高代理项移动到下一个批次的开头
+     */
+    private void fireBatch(ChannelHandlerContext ctx) {
+        int length = size;
+        if (length > 0 && Character.isHighSurrogate(chars[length - 1])) {
+            length--;
+        }
+        if (length > 0) {
+            this.fire(ctx, length);
+        }
+    }
+
+    private void fire(ChannelHandlerContext ctx, int length) {
+        batch.clear().limit(length);
+        try {
+            ctx.fireChannelRead(batch);
+        } finally {
+            //保留的高代理项移动到数组开头，之后的字符接在它后面
+            int remaining = size - length;
+            if (remaining > 0) {
+                chars[0] = chars[length];
+            }
+            size = remaining;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package cn.zifangsky.netty.exercise.chapter10;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToByteEncoder;
+
+import java.nio.CharBuffer;
+
+/**
+ * 将整个CharSequence一次性编码为UTF-16（大端序，与{@link ByteBuf#writeChar(int)}一致）
+ * <p>与{@link CharToByteEncoder}每个字符一个消息不同，一个CharSequence只分配一个ByteBuf，
+ * 并通过{@link java.nio.ByteBuffer#asCharBuffer()}批量写入。为了兼容也接受Character</p>
+ *
+ * @author zifangsky
+ * @date 2020/11/23
+ * @since 1.0.0
+ */
+public class CharSequenceToByteEncoder extends MessageToByteEncoder<Object> {
+
+    @Override
+    public boolean acceptOutboundMessage(Object msg) throws Exception {
+        return msg instanceof CharSequence || msg instanceof Character;
+    }
+
+    @Override
+    protected ByteBuf allocateBuffer(ChannelHandlerContext ctx, Object msg, boolean preferDirect) throws Exception {
+        int capacity = msg instanceof CharSequence ? ((CharSequence) msg).length() << 1 : 2;
+        return preferDirect ? ctx.alloc().ioBuffer(capacity) : ctx.alloc().heapBuffer(capacity);
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, Object msg, ByteBuf out) throws Exception {
+        if (msg instanceof Character) {
+            out.writeChar((Character) msg);
+            return;
+        }
+
+        CharSequence chars = (CharSequence) msg;
+        int length = chars.length() << 1;
+        out.ensureWritable(length);
+        int index = out.writerIndex();
+        if (out.nioBufferCount() == 1) {
+            CharBuffer target = out.nioBuffer(index, length).asCharBuffer();
+            if (chars instanceof String) {
+                target.put((String) chars);
+            } else if (chars instanceof CharBuffer) {
+                target.put(((CharBuffer) chars).duplicate());
+            } else {
+                target.append(chars);
+            }
+        } else {
+            for (int i = 0; i < chars.length(); i++) {
+                out.setChar(index + (i << 1), chars.charAt(i));
+            }
+        }
+        out.writerIndex(index + length);
+    }
+}
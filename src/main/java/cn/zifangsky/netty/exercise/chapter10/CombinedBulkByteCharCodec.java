@@ -0,0 +1,24 @@
+package cn.zifangsky.netty.exercise.chapter10;
+
+import io.netty.channel.CombinedChannelDuplexHandler;
+
+/**
+ * {@link CombinedByteCharCodec}的批量版本：入站输出CharBuffer，出站接受整个CharSequence
+ *
+ * @author zifangsky
+ * @date 2020/11/23
+ * @since 1.0.0
+ */
+public class CombinedBulkByteCharCodec extends CombinedChannelDuplexHandler<ByteToCharBufferDecoder, CharSequenceToByteEncoder> {
+
+    public CombinedBulkByteCharCodec() {
+        super(new ByteToCharBufferDecoder(), new CharSequenceToByteEncoder());
+    }
+
+    /**
+     * @param batchSize 入站每个批次最多包含的字符数
+     */
+    public CombinedBulkByteCharCodec(int batchSize) {
+        super(new ByteToCharBufferDecoder(batchSize), new CharSequenceToByteEncoder());
+    }
+}
@@ -0,0 +1,80 @@
+package cn.zifangsky.netty.exercise.chapter10;
+
+import io.netty.channel.ChannelHandlerContext;
+
+import java.util.Arrays;
+
+/**
+ * 一批int值，由{@link IntStreamDecoder}和{@link AsciiIntegerDecoder}输出
+ * <p>同一个解码器每次输出的都是同一个对象，只在channelRead()调用期间有效，需要保留时使用{@link #toArray()}复制</p>
+ *
+ * @author zifangsky
+ * @date 2020/11/22
+ * @since 1.0.0
+ */
+public final class IntBatch {
+    private final int[] values;
+    private int size;
+
+    /**
+     * @param capacity 最多保存的int个数
+     */
+    public IntBatch(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be a positive integer: " + capacity);
+        }
+        this.values = new int[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return values.length;
+    }
+
+    public boolean isFull() {
+        return size == values.length;
+    }
+
+    public int get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        }
+        return values[index];
+    }
+
+    /**
+     * 底层数组，只有前{@link #size()}个元素有效
+     */
+    public int[] array() {
+        return values;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    void add(int value) {
+        values[size++] = value;
+    }
+
+    /**
+     * 非空时传递给下一个handler，下游处理完成后（channelRead()返回）清空并复用
+     */
+    void fireAndClear(ChannelHandlerContext ctx) {
+        if (size > 0) {
+            try {
+                ctx.fireChannelRead(this);
+            } finally {
+                size = 0;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "IntBatch(size: " + size + ')';
+    }
+}
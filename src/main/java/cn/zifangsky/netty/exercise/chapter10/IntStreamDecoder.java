@@ -0,0 +1,104 @@
+package cn.zifangsky.netty.exercise.chapter10;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+
+import java.nio.ByteOrder;
+
+/**
+ * 将连续的4字节int数据流解码为{@link IntBatch}
+ * <p>与{@link ToIntegerDecoder}（每个int一个Integer消息）和{@link ToIntegerDecoder2}（数据不足时抛出信号并重新解码）不同，
+ * 每次读取时一次性解码所有完整的int并放入一个可复用的IntBatch，批次满了之后立即输出一次。
+ * 不使用累积缓冲区：上次读取剩下的不足4个字节保存在一个int中，与下次读取的开头几个字节拼接，因此不会复制输入数据</p>
+ *
+ * @author zifangsky
+ * @date 2020/11/22
+ * @since 1.0.0
+ */
+public class IntStreamDecoder extends ChannelInboundHandlerAdapter {
+    /**
+     * 默认的批次大小
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+
+    private final boolean littleEndian;
+    private final IntBatch batch;
+    /**
+     * 上次读取剩下的不完整的int（按照读取顺序从高位到低位）
+     */
+    private int tail;
+    private int tailBytes;
+
+    public IntStreamDecoder() {
+        this(ByteOrder.BIG_ENDIAN, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param order 字节序
+     * @param batchSize 每个批次最多包含的int个数
+     */
+    public IntStreamDecoder(ByteOrder order, int batchSize) {
+        if (order == null) {
+            throw new NullPointerException("order");
+        }
+        this.littleEndian = order == ByteOrder.LITTLE_ENDIAN;
+        this.batch = new IntBatch(batchSize);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (!(msg instanceof ByteBuf)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+
+        ByteBuf in = (ByteBuf) msg;
+        try {
+            int index = in.readerIndex();
+            int end = in.writerIndex();
+
+            //1. 补全上次读取剩下的int
+            if (tailBytes > 0) {
+                while (tailBytes < 4 && index < end) {
+                    tail = tail << 8 | in.getUnsignedByte(index++);
+                    tailBytes++;
+                }
+                if (tailBytes < 4) {
+                    return;
+                }
+                this.add(ctx, littleEndian ? Integer.reverseBytes(tail) : tail);
+                tailBytes = 0;
+            }
+
+            //2. 批量解码所有完整的int
+            int last = end - 4;
+            if (littleEndian) {
+                for (; index <= last; index += 4) {
+                    this.add(ctx, in.getIntLE(index));
+                }
+            } else {
+                for (; index <= last; index += 4) {
+                    this.add(ctx, in.getInt(index));
+                }
+            }
+
+            //3. 保存剩下的不足4个字节
+            tail = 0;
+            for (; index < end; index++) {
+                tail = tail << 8 | in.getUnsignedByte(index);
+                tailBytes++;
+            }
+        } finally {
+            in.release();
+            batch.fireAndClear(ctx);
+        }
+    }
+
+    private void add(ChannelHandlerContext ctx, int value) {
+        batch.add(value);
+        if (batch.isFull()) {
+            batch.fireAndClear(ctx);
+        }
+    }
+}
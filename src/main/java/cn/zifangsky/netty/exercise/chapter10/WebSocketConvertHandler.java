@@ -5,11 +5,16 @@ import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToMessageCodec;
 import io.netty.handler.codec.http.websocketx.*;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.Recycler;
 
 import java.util.List;
+import java.util.function.Function;
 
 /**
  * Using MessageToMessageCodec
+ * <p>解码时通过{@link ClassValue}按照WebSocketFrame的类型查找FrameType，编码时按照opcode从数组中查找对应的WebSocketFrame构造方法；
+ * MyWebSocketFrame由{@link Recycler}复用，释放时同时释放持有的ByteBuf</p>
  *
  * @author zifangsky
  * @date 2020/10/22
@@ -17,82 +22,216 @@ import java.util.List;
  */
 @Sharable
 public class WebSocketConvertHandler extends MessageToMessageCodec<WebSocketFrame, WebSocketConvertHandler.MyWebSocketFrame> {
-     @Override
-     protected void encode(ChannelHandlerContext ctx, WebSocketConvertHandler.MyWebSocketFrame msg, List<Object> out) throws Exception {
-         ByteBuf payload = msg.getData().duplicate().retain();
-
-         //实例化一个指定子类型的WebSocketFrame
-         switch (msg.getType()) {
-             case BINARY:
-                 out.add(new BinaryWebSocketFrame(payload));
-                 break;
-             case TEXT:
-                 out.add(new TextWebSocketFrame(payload));
-                 break;
-             case CLOSE:
-                 out.add(new CloseWebSocketFrame(true, 0, payload));
-                 break;
-             case CONTINUATION:
-                 out.add(new ContinuationWebSocketFrame(payload));
-                 break;
-             case PONG:
-                 out.add(new PongWebSocketFrame(payload));
-                 break;
-             case PING:
-                 out.add(new PingWebSocketFrame(payload));
-                 break;
-             default:
-                 throw new IllegalStateException("Unsupported websocket msg " + msg);}
+    private static final ClassValue<MyWebSocketFrame.FrameType> FRAME_TYPES = new ClassValue<MyWebSocketFrame.FrameType>() {
+        @Override
+        protected MyWebSocketFrame.FrameType computeValue(Class<?> type) {
+            if (BinaryWebSocketFrame.class.isAssignableFrom(type)) {
+                return MyWebSocketFrame.FrameType.BINARY;
+            } else if (CloseWebSocketFrame.class.isAssignableFrom(type)) {
+                return MyWebSocketFrame.FrameType.CLOSE;
+            } else if (PingWebSocketFrame.class.isAssignableFrom(type)) {
+                return MyWebSocketFrame.FrameType.PING;
+            } else if (PongWebSocketFrame.class.isAssignableFrom(type)) {
+                return MyWebSocketFrame.FrameType.PONG;
+            } else if (TextWebSocketFrame.class.isAssignableFrom(type)) {
+                return MyWebSocketFrame.FrameType.TEXT;
+            } else if (ContinuationWebSocketFrame.class.isAssignableFrom(type)) {
+                return MyWebSocketFrame.FrameType.CONTINUATION;
+            }
+            return null;
+        }
+    };
+
+    /**
+     * 按照opcode索引的WebSocketFrame构造方法
+     */
+    @SuppressWarnings("unchecked")
+    private static final Function<ByteBuf, WebSocketFrame>[] FRAME_FACTORIES = new Function[MyWebSocketFrame.FrameType.MAX_OPCODE + 1];
+
+    static {
+        FRAME_FACTORIES[MyWebSocketFrame.FrameType.BINARY.opcode()] = BinaryWebSocketFrame::new;
+        FRAME_FACTORIES[MyWebSocketFrame.FrameType.TEXT.opcode()] = TextWebSocketFrame::new;
+        FRAME_FACTORIES[MyWebSocketFrame.FrameType.CLOSE.opcode()] = payload -> new CloseWebSocketFrame(true, 0, payload);
+        FRAME_FACTORIES[MyWebSocketFrame.FrameType.CONTINUATION.opcode()] = ContinuationWebSocketFrame::new;
+        FRAME_FACTORIES[MyWebSocketFrame.FrameType.PONG.opcode()] = PongWebSocketFrame::new;
+        FRAME_FACTORIES[MyWebSocketFrame.FrameType.PING.opcode()] = PingWebSocketFrame::new;
+    }
+
+    /**
+     * 是否直接接管原始帧的ByteBuf，而不是持有它的duplicate()
+     */
+    private final boolean transferOwnership;
+
+    public WebSocketConvertHandler() {
+        this(false);
+    }
+
+    /**
+     * @param transferOwnership 为true时转换后的帧直接持有（retain）原始帧的ByteBuf，不再创建duplicate()，
+     *                          两者共享读写索引，因此只有原始帧在转换之后不会再被其他地方使用时才可以开启
+     */
+    public WebSocketConvertHandler(boolean transferOwnership) {
+        this.transferOwnership = transferOwnership;
     }
 
     @Override
-    protected void decode(ChannelHandlerContext ctx, WebSocketFrame msg, List<Object> out) throws Exception {
-        ByteBuf payload = msg.content().duplicate().retain();
+    protected void encode(ChannelHandlerContext ctx, WebSocketConvertHandler.MyWebSocketFrame msg, List<Object> out) throws Exception {
+        //实例化一个指定子类型的WebSocketFrame
+        Function<ByteBuf, WebSocketFrame> factory = FRAME_FACTORIES[msg.getType().opcode()];
+        if (factory == null) {
+            throw new IllegalStateException("Unsupported websocket msg " + msg);
+        }
+        out.add(factory.apply(this.retainPayload(msg.getData())));
+    }
 
+    @Override
+    protected void decode(ChannelHandlerContext ctx, WebSocketFrame msg, List<Object> out) throws Exception {
         //将WebSocketFrame 解码为MyWebSocketFrame，并设置FrameType
-        if (msg instanceof BinaryWebSocketFrame) {
-            out.add(new MyWebSocketFrame(MyWebSocketFrame.FrameType.BINARY, payload));
-        } else
-        if (msg instanceof CloseWebSocketFrame) {
-            out.add(new MyWebSocketFrame (MyWebSocketFrame.FrameType.CLOSE, payload));
-        } else
-        if (msg instanceof PingWebSocketFrame) {
-            out.add(new MyWebSocketFrame (MyWebSocketFrame.FrameType.PING, payload));
-        } else
-        if (msg instanceof PongWebSocketFrame) {
-            out.add(new MyWebSocketFrame (MyWebSocketFrame.FrameType.PONG, payload));
-        } else
-        if (msg instanceof TextWebSocketFrame) {
-            out.add(new MyWebSocketFrame (MyWebSocketFrame.FrameType.TEXT, payload));
-        } else
-        if (msg instanceof ContinuationWebSocketFrame) {
-            out.add(new MyWebSocketFrame (MyWebSocketFrame.FrameType.CONTINUATION, payload));
-        } else{
+        MyWebSocketFrame.FrameType type = FRAME_TYPES.get(msg.getClass());
+        if (type == null) {
             throw new IllegalStateException("Unsupported websocket msg " + msg);
         }
+        out.add(MyWebSocketFrame.newInstance(type, this.retainPayload(msg.content())));
+    }
+
+    /**
+     * 原始帧在转换之后会被MessageToMessageCodec释放，因此需要retain()
+     */
+    private ByteBuf retainPayload(ByteBuf payload) {
+        return transferOwnership ? payload.retain() : payload.duplicate().retain();
     }
 
-    public static final class MyWebSocketFrame {
+    /**
+     * 引用计数的帧，释放时同时释放持有的ByteBuf；通过{@link #newInstance(FrameType, ByteBuf)}创建的对象在释放后被回收复用
+     */
+    public static final class MyWebSocketFrame extends AbstractReferenceCounted {
+        private static final Recycler<MyWebSocketFrame> RECYCLER = new Recycler<MyWebSocketFrame>() {
+            @Override
+            protected MyWebSocketFrame newObject(Handle<MyWebSocketFrame> handle) {
+                return new MyWebSocketFrame(handle);
+            }
+        };
+
         public enum FrameType {
-            BINARY,
-            CLOSE,
-            PING,
-            PONG,
-            TEXT,
-            CONTINUATION
+            BINARY(0x2),
+            CLOSE(0x8),
+            PING(0x9),
+            PONG(0xA),
+            TEXT(0x1),
+            CONTINUATION(0x0);
+
+            /**
+             * WebSocket协议中opcode的最大值
+             */
+            public static final int MAX_OPCODE = 0xF;
+            private static final FrameType[] BY_OPCODE = new FrameType[MAX_OPCODE + 1];
+
+            static {
+                for (FrameType type : values()) {
+                    BY_OPCODE[type.opcode] = type;
+                }
+            }
+
+            private final int opcode;
+
+            FrameType(int opcode) {
+                this.opcode = opcode;
+            }
+
+            public int opcode() {
+                return opcode;
+            }
+
+            /**
+             * 按照opcode查找FrameType
+             */
+            public static FrameType valueOf(int opcode) {
+                FrameType type = opcode >= 0 && opcode <= MAX_OPCODE ? BY_OPCODE[opcode] : null;
+                if (type == null) {
+                    throw new IllegalArgumentException("Unsupported opcode: " + opcode);
+                }
+                return type;
+            }
         }
-        private final FrameType type;
-        private final ByteBuf data;
 
+        private final Recycler.Handle<MyWebSocketFrame> handle;
+        private FrameType type;
+        private ByteBuf data;
+
+        /**
+         * 不使用对象池
+         * @param data 帧的内容，所有权转移给该对象
+         */
         public MyWebSocketFrame(FrameType type, ByteBuf data) {
+            this.handle = null;
             this.type = type;
             this.data = data;
         }
+
+        private MyWebSocketFrame(Recycler.Handle<MyWebSocketFrame> handle) {
+            this.handle = handle;
+        }
+
+        /**
+         * 从对象池中获取一个帧
+         * @param data 帧的内容，所有权转移给该对象
+         */
+        public static MyWebSocketFrame newInstance(FrameType type, ByteBuf data) {
+            MyWebSocketFrame frame = RECYCLER.get();
+            frame.setRefCnt(1);
+            frame.type = type;
+            frame.data = data;
+            return frame;
+        }
+
         public FrameType getType() {
             return type;
         }
+
         public ByteBuf getData() {
             return data;
         }
+
+        @Override
+        protected void deallocate() {
+            ByteBuf data = this.data;
+            this.data = null;
+            this.type = null;
+            try {
+                data.release();
+            } finally {
+                if (handle != null) {
+                    handle.recycle(this);
+                }
+            }
+        }
+
+        @Override
+        public MyWebSocketFrame touch(Object hint) {
+            if (data != null) {
+                data.touch(hint);
+            }
+            return this;
+        }
+
+        @Override
+        public MyWebSocketFrame retain() {
+            return (MyWebSocketFrame) super.retain();
+        }
+
+        @Override
+        public MyWebSocketFrame retain(int increment) {
+            return (MyWebSocketFrame) super.retain(increment);
+        }
+
+        @Override
+        public MyWebSocketFrame touch() {
+            return (MyWebSocketFrame) super.touch();
+        }
+
+        @Override
+        public String toString() {
+            return "MyWebSocketFrame(" + type + ", " + data + ')';
+        }
     }
-}
\ No newline at end of file
+}
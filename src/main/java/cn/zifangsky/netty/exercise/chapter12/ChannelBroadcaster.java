@@ -0,0 +1,311 @@
+package cn.zifangsky.netty.exercise.chapter12;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.internal.PlatformDependent;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按EventLoop分片的广播器
+ * <p>成员按照其所属的EventLoop分组，每次广播时每个EventLoop只会收到一个批量任务：在该任务中先将消息写给分片内的所有成员，
+ * 最后再统一冲刷。同一分片在任务执行前收到的多条广播会在同一个任务中处理，从而合并冲刷操作。
+ * 分片内的成员列表只会在其EventLoop中被访问，因此不需要额外的同步</p>
+ * <p>接收者不可写时按照{@link SlowConsumerPolicy}处理，避免慢客户端的出站缓冲区无限增长。每个成员可以在加入时指定自己的策略，
+ * 否则使用广播器的默认策略</p>
+ *
+ * @author zifangsky
+ * @date 2020/11/5
+ * @since 1.0.0
+ */
+@Slf4j
+public class ChannelBroadcaster {
+    private static final AttributeKey<Member> MEMBER_KEY = AttributeKey.valueOf(ChannelBroadcaster.class, "member");
+    /**
+     * 默认的连续丢弃消息数阈值
+     */
+    public static final int DEFAULT_DISCONNECT_THRESHOLD = 1000;
+
+    private final ConcurrentMap<EventLoop, Shard> shards = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final SlowConsumerPolicy defaultPolicy;
+    private final int disconnectThreshold;
+
+    /**
+     * 被丢弃的消息数
+     */
+    private final LongAdder dropped = new LongAdder();
+    /**
+     * 被更新的消息覆盖的消息数
+     */
+    private final LongAdder coalesced = new LongAdder();
+    /**
+     * 因为消费太慢而被断开的连接数
+     */
+    private final LongAdder disconnected = new LongAdder();
+
+    public ChannelBroadcaster() {
+        this(SlowConsumerPolicy.DISCONNECT, DEFAULT_DISCONNECT_THRESHOLD);
+    }
+
+    /**
+     * @param defaultPolicy 成员没有指定策略时，接收者不可写时的处理策略
+     * @param disconnectThreshold DISCONNECT策略下，连续丢弃的消息数超过该值后断开连接
+     */
+    public ChannelBroadcaster(SlowConsumerPolicy defaultPolicy, int disconnectThreshold) {
+        if (disconnectThreshold <= 0) {
+            throw new IllegalArgumentException("disconnectThreshold must be a positive integer: " + disconnectThreshold);
+        }
+        this.defaultPolicy = defaultPolicy;
+        this.disconnectThreshold = disconnectThreshold;
+    }
+
+    /**
+     * 添加一个使用默认策略的成员，Channel关闭后会被自动移除
+     */
+    public void add(Channel channel) {
+        this.add(channel, defaultPolicy);
+    }
+
+    /**
+     * 添加一个成员，Channel关闭后会被自动移除
+     * @param policy 该成员不可写时的处理策略
+     */
+    public void add(Channel channel, SlowConsumerPolicy policy) {
+        Shard shard = shards.computeIfAbsent(channel.eventLoop(), Shard::new);
+        size.incrementAndGet();
+
+        shard.loop.execute(() -> {
+            if (channel.isActive()) {
+                shard.add(channel, policy);
+                //关闭事件可能在批量任务写消息的过程中同步触发，因此延迟到下一个任务中再移除成员
+                channel.closeFuture().addListener(future -> shard.loop.execute(() -> shard.remove(channel)));
+            } else {
+                size.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * 当前成员数
+     */
+    public int size() {
+        return size.get();
+    }
+
+    public long droppedCount() {
+        return dropped.sum();
+    }
+
+    public long coalescedCount() {
+        return coalesced.sum();
+    }
+
+    public long disconnectedCount() {
+        return disconnected.sum();
+    }
+
+    /**
+     * 成员的可写状态发生变化（需要在该Channel的EventLoop中调用，即ChannelHandler#channelWritabilityChanged()）
+     */
+    public void writabilityChanged(Channel channel) {
+        Member member = channel.attr(MEMBER_KEY).get();
+        if (member == null || !channel.isWritable()) {
+            return;
+        }
+
+        //重新变为可写后，发送被合并保留的最新消息
+        member.drops = 0;
+        Object latest = member.latest;
+        if (latest != null) {
+            member.latest = null;
+            channel.writeAndFlush(latest, channel.voidPromise());
+        }
+    }
+
+    /**
+     * 将消息广播给所有成员
+     * <p>调用方需要转移消息的所有权（消息会在所有分片处理完成后被释放），每个成员写出的都是共享内容的retainedDuplicate()</p>
+     */
+    public void broadcast(Object msg) {
+        try {
+            for (Shard shard : shards.values()) {
+                shard.enqueue(ReferenceCountUtil.retain(msg));
+            }
+        } finally {
+            ReferenceCountUtil.release(msg);
+        }
+    }
+
+    static Object duplicate(Object msg) {
+        if (msg instanceof ByteBuf) {
+            return ((ByteBuf) msg).retainedDuplicate();
+        } else if (msg instanceof ByteBufHolder) {
+            return ((ByteBufHolder) msg).retainedDuplicate();
+        } else {
+            return ReferenceCountUtil.retain(msg);
+        }
+    }
+
+    /**
+     * 分片中的成员
+     */
+    static final class Member {
+        final Channel channel;
+        /**
+         * 不可写时的处理策略
+         */
+        final SlowConsumerPolicy policy;
+        /**
+         * 在分片成员列表中的下标
+         */
+        int index;
+        /**
+         * 在当前批次中是否有未冲刷的写操作
+         */
+        boolean dirty;
+        /**
+         * 连续被丢弃的消息数
+         */
+        int drops;
+        /**
+         * COALESCE策略下保留的最新消息
+         */
+        Object latest;
+
+        Member(Channel channel, SlowConsumerPolicy policy) {
+            this.channel = channel;
+            this.policy = policy;
+        }
+    }
+
+    /**
+     * 同一个EventLoop下的所有成员
+     */
+    final class Shard implements Runnable {
+        final EventLoop loop;
+        private final List<Member> members = new ArrayList<>();
+        private final Queue<Object> pending = PlatformDependent.newMpscQueue();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        Shard(EventLoop loop) {
+            this.loop = loop;
+        }
+
+        void add(Channel channel, SlowConsumerPolicy policy) {
+            Member member = new Member(channel, policy);
+            member.index = members.size();
+            members.add(member);
+            channel.attr(MEMBER_KEY).set(member);
+        }
+
+        void remove(Channel channel) {
+            Member member = channel.attr(MEMBER_KEY).getAndSet(null);
+            if (member == null) {
+                return;
+            }
+            if (member.latest != null) {
+                ReferenceCountUtil.release(member.latest);
+                member.latest = null;
+            }
+
+            //将最后一个成员移动到被删除成员的位置
+            Member last = members.remove(members.size() - 1);
+            if (last != member) {
+                last.index = member.index;
+                members.set(member.index, last);
+            }
+            size.decrementAndGet();
+        }
+
+        void enqueue(Object msg) {
+            pending.offer(msg);
+            if (scheduled.compareAndSet(false, true)) {
+                loop.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            scheduled.set(false);
+
+            //1. 将所有待发送的消息写给分片内的所有成员
+            Object msg;
+            while ((msg = pending.poll()) != null) {
+                try {
+                    for (Member member : members) {
+                        Channel channel = member.channel;
+                        if (!channel.isActive()) {
+                            continue;
+                        }
+
+                        if (channel.isWritable()) {
+                            //可写事件可能还没有被处理，保留的旧消息已经被当前消息覆盖，不能再在之后发送
+                            if (member.latest != null) {
+                                ReferenceCountUtil.release(member.latest);
+                                member.latest = null;
+                                coalesced.increment();
+                            }
+                            channel.write(duplicate(msg), channel.voidPromise());
+                            member.dirty = true;
+                            member.drops = 0;
+                        } else {
+                            this.onUnwritable(member, msg);
+                        }
+                    }
+                } finally {
+                    ReferenceCountUtil.release(msg);
+                }
+            }
+
+            //2. 每个成员只冲刷一次
+            for (Member member : members) {
+                if (member.dirty) {
+                    member.dirty = false;
+                    member.channel.flush();
+                }
+            }
+        }
+
+        /**
+         * 接收者不可写时按照策略处理消息
+         */
+        private void onUnwritable(Member member, Object msg) {
+            switch (member.policy) {
+                case DROP:
+                    dropped.increment();
+                    break;
+                case COALESCE:
+                    if (member.latest != null) {
+                        ReferenceCountUtil.release(member.latest);
+                        coalesced.increment();
+                    }
+                    member.latest = duplicate(msg);
+                    break;
+                case DISCONNECT:
+                    dropped.increment();
+                    if (++member.drops > disconnectThreshold) {
+                        log.warn("Closing slow consumer {} after {} dropped messages", member.channel, member.drops);
+                        member.drops = 0;
+                        disconnected.increment();
+                        member.channel.close();
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Unsupported policy " + member.policy);
+            }
+        }
+    }
+}
@@ -1,18 +1,21 @@
 package cn.zifangsky.netty.exercise.chapter12;
 
+import cn.zifangsky.netty.exercise.utils.TransportType;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.DefaultChannelGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.util.concurrent.ImmediateEventExecutor;
 import lombok.extern.slf4j.Slf4j;
 
 import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 引导服务端
@@ -23,27 +26,67 @@ import java.net.InetSocketAddress;
  */
 @Slf4j
 public class ChatServer {
+    /**
+     * 每个连接出站缓冲区的低/高水位线，超过高水位线后Channel变为不可写
+     */
+    private static final WriteBufferWaterMark WATER_MARK = new WriteBufferWaterMark(32 * 1024, 64 * 1024);
+
     private final ChannelGroup channelGroup = new DefaultChannelGroup(ImmediateEventExecutor.INSTANCE);
-    private final EventLoopGroup group = new NioEventLoopGroup();
+    private final ChannelBroadcaster broadcaster;
+    /**
+     * 静态文件服务，为null时只提供首页
+     */
+    private final StaticFileService fileService;
+    private final TransportType transport = TransportType.preferred();
+    private final EventLoopGroup group = transport.newEventLoopGroup();
     private Channel channel;
 
+    public ChatServer() {
+        this(SlowConsumerPolicy.DISCONNECT);
+    }
+
+    public ChatServer(SlowConsumerPolicy policy) {
+        this(policy, null);
+    }
+
+    public ChatServer(SlowConsumerPolicy policy, StaticFileService fileService) {
+        this.broadcaster = new ChannelBroadcaster(policy, ChannelBroadcaster.DEFAULT_DISCONNECT_THRESHOLD);
+        this.fileService = fileService;
+    }
+
     public ChannelFuture start(int port){
         ServerBootstrap bootstrap = new ServerBootstrap();
 
         bootstrap.group(this.group)
-                .channel(NioServerSocketChannel.class)
+                .channel(this.transport.serverSocketChannelClass())
                 .localAddress(new InetSocketAddress(port))
-                .childHandler(this.createInitializer(this.channelGroup));
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, WATER_MARK)
+                .childHandler(this.createInitializer(this.channelGroup, this.broadcaster));
 
         ChannelFuture future = bootstrap.bind();
         future.syncUninterruptibly();
 
         this.channel = future.channel();
+        //定时输出慢客户端相关的统计数据
+        this.group.scheduleAtFixedRate(this::logStatistics, 1, 1, TimeUnit.MINUTES);
         return future;
     }
 
-    protected ChannelInitializer<Channel> createInitializer(ChannelGroup group) {
-        return new ChatServerInitializer(group);
+    protected ChannelInitializer<Channel> createInitializer(ChannelGroup group, ChannelBroadcaster broadcaster) {
+        return new ChatServerInitializer(group, broadcaster, fileService);
+    }
+
+    private void logStatistics() {
+        log.info("members={}, dropped={}, coalesced={}, disconnected={}", broadcaster.size(),
+                broadcaster.droppedCount(), broadcaster.coalescedCount(), broadcaster.disconnectedCount());
+    }
+
+    public ChannelBroadcaster getBroadcaster() {
+        return broadcaster;
+    }
+
+    public StaticFileService getFileService() {
+        return fileService;
     }
 
     public void destroy() {
@@ -52,16 +95,22 @@ public class ChatServer {
         }
         this.channelGroup.close();
         this.group.shutdownGracefully();
+        if (this.fileService != null) {
+            this.fileService.close();
+        }
     }
 
     public static void main(String[] args) throws Exception {
-        if (args.length != 1) {
-            System.err.println("Please give port as argument");
+        if (args.length < 1 || args.length > 3) {
+            System.err.println("Please give port, optional slow consumer policy (DROP, COALESCE, DISCONNECT) "
+                    + "and optional document root as arguments");
             System.exit(1);
         }
         int port = Integer.parseInt(args[0]);
+        SlowConsumerPolicy policy = args.length >= 2 ? SlowConsumerPolicy.valueOf(args[1]) : SlowConsumerPolicy.DISCONNECT;
+        StaticFileService fileService = args.length == 3 ? new StaticFileService(Paths.get(args[2])) : null;
 
-        final ChatServer endpoint = new ChatServer();
+        final ChatServer endpoint = new ChatServer(policy, fileService);
         ChannelFuture future = endpoint.start(port);
 
         Runtime.getRuntime().addShutdownHook(new Thread(endpoint::destroy));
@@ -18,9 +18,20 @@ import io.netty.handler.stream.ChunkedWriteHandler;
  */
 public class ChatServerInitializer extends ChannelInitializer<Channel> {
     private final ChannelGroup group;
+    private final ChannelBroadcaster broadcaster;
+    private final StaticFileService fileService;
 
-    public ChatServerInitializer(ChannelGroup group) {
+    public ChatServerInitializer(ChannelGroup group, ChannelBroadcaster broadcaster) {
+        this(group, broadcaster, null);
+    }
+
+    /**
+     * @param fileService 静态文件服务，为null时只提供首页
+     */
+    public ChatServerInitializer(ChannelGroup group, ChannelBroadcaster broadcaster, StaticFileService fileService) {
         this.group = group;
+        this.broadcaster = broadcaster;
+        this.fileService = fileService;
     }
 
     @Override
@@ -29,8 +40,8 @@ public class ChatServerInitializer extends ChannelInitializer<Channel> {
         pipeline.addLast(new HttpServerCodec());
         pipeline.addLast(new ChunkedWriteHandler());
         pipeline.addLast(new HttpObjectAggregator(64 * 1024));
-        pipeline.addLast(new HttpRequestHandler("/ws"));
+        pipeline.addLast(new HttpRequestHandler("/ws", fileService));
         pipeline.addLast(new WebSocketServerProtocolHandler("/ws"));
-        pipeline.addLast(new TextWebSocketFrameHandler(group));
+        pipeline.addLast(new TextWebSocketFrameHandler(group, broadcaster));
     }
 }
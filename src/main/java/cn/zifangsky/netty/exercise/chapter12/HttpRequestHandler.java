@@ -1,18 +1,18 @@
 package cn.zifangsky.netty.exercise.chapter12;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.*;
 import io.netty.handler.codec.http.*;
-import io.netty.handler.ssl.SslHandler;
-import io.netty.handler.stream.ChunkedNioFile;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.File;
-import java.io.RandomAccessFile;
+import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
 
 /**
  * 处理 HTTP/S 请求
+ * <p>首页从{@link StaticResourceCache}中返回；配置了{@link StaticFileService}时，其他路径交给它从根目录中返回静态文件</p>
  *
  * @author zifangsky
  * @date 2020/10/26
@@ -21,21 +21,31 @@ import java.net.URL;
 @Slf4j
 public class HttpRequestHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
     private final String wsUri;
-    private static final File INDEX;
+    /**
+     * 为null时所有非WebSocket请求都返回首页
+     */
+    private final StaticFileService fileService;
+    private static final String INDEX_PATH = "/index.html";
+    private static final StaticResourceCache CACHE = new StaticResourceCache();
 
     static {
-        //加载首页所在路径
-        URL location = HttpRequestHandler.class.getResource("/index.html");
+        //加载首页所在路径，并将首页内容加载到缓存中
+        URL location = HttpRequestHandler.class.getResource(INDEX_PATH);
         try {
             String path = location.toURI().getPath();
-            INDEX = new File(path);
-        } catch (URISyntaxException e) {
-            throw new IllegalStateException("Unable to locate index.html", e);
+            CACHE.register(INDEX_PATH, new File(path), "text/html; charset=UTF-8");
+        } catch (URISyntaxException | IOException e) {
+            throw new IllegalStateException("Unable to load index.html", e);
         }
     }
 
     public HttpRequestHandler(String wsUri) {
+        this(wsUri, null);
+    }
+
+    public HttpRequestHandler(String wsUri, StaticFileService fileService) {
         this.wsUri = wsUri;
+        this.fileService = fileService;
     }
 
     @Override
@@ -49,36 +59,59 @@ public class HttpRequestHandler extends SimpleChannelInboundHandler<FullHttpRequ
                 this.send100Continue(ctx);
             }
 
-            //读取index.html
-            RandomAccessFile file = new RandomAccessFile(INDEX, "r");
-            HttpResponse response = new DefaultHttpResponse(request.protocolVersion(), HttpResponseStatus.OK);
-            response.headers().set(HttpHeaderNames.CONTENT_TYPE, "text/html; charset=UTF-8");
+            //从根目录中返回首页以外的静态文件
+            if(fileService != null && !isIndex(request.uri())){
+                fileService.serve(ctx, request);
+                return;
+            }
+
+            //从缓存中读取index.html，如果客户端支持gzip，则直接返回预先压缩的内容
+            boolean acceptGzip = request.headers().containsValue(HttpHeaderNames.ACCEPT_ENCODING, HttpHeaderValues.GZIP, true);
+            StaticResourceCache.CachedResource resource = CACHE.get(INDEX_PATH);
+            boolean gzip = acceptGzip && resource.isGzipAvailable();
+            FullHttpResponse response;
+            if(resource.isNotModified(request.headers(), gzip)){
+                //客户端缓存仍然有效，返回304（304响应不能包含Content-Length，它描述的是完整的表示）
+                response = new DefaultFullHttpResponse(request.protocolVersion(), HttpResponseStatus.NOT_MODIFIED);
+            }else{
+                ByteBuf content;
+                while ((content = resource.retainedContent(gzip)) == null) {
+                    //文件刚好被重新加载，重新获取一次
+                    resource = CACHE.get(INDEX_PATH);
+                    gzip = acceptGzip && resource.isGzipAvailable();
+                }
+
+                response = new DefaultFullHttpResponse(request.protocolVersion(), HttpResponseStatus.OK, content);
+                response.headers().set(HttpHeaderNames.CONTENT_TYPE, resource.getContentType());
+                if(gzip){
+                    response.headers().set(HttpHeaderNames.CONTENT_ENCODING, HttpHeaderValues.GZIP);
+                }
+                HttpUtil.setContentLength(response, content.readableBytes());
+            }
+            //gzip和未压缩的内容是同一资源的不同表示，使用不同的ETag
+            response.headers().set(HttpHeaderNames.VARY, HttpHeaderNames.ACCEPT_ENCODING);
+            response.headers().set(HttpHeaderNames.ETAG, resource.getEtag(gzip));
+            response.headers().set(HttpHeaderNames.LAST_MODIFIED, resource.getLastModifiedHeader());
 
             //如果请求了keep-alive，则添加所需要的HTTP头信息
             boolean keepAlive = HttpUtil.isKeepAlive(request);
             if(keepAlive){
-                response.headers().set(HttpHeaderNames.CONTENT_LENGTH, file.length());
                 response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
             }
 
-            //将HttpResponse写到客户端
-            ctx.write(response);
-            //将index.html写到客户端
-            if(ctx.pipeline().get(SslHandler.class) == null){
-                ctx.write(new DefaultFileRegion(file.getChannel(), 0, file.length()));
-            }else{
-                ctx.write(new ChunkedNioFile(file.getChannel()));
-            }
-
-            //写LastHttpContent并冲刷至客户端
-            ChannelFuture future = ctx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
-            //如果没有请求keep-alive，则在写操作完成后关闭Channel
+            //将HttpResponse写到客户端，如果没有请求keep-alive，则在写操作完成后关闭Channel
+            ChannelFuture future = ctx.writeAndFlush(response);
             if(!keepAlive){
                 future.addListener(ChannelFutureListener.CLOSE);
             }
         }
     }
 
+    private static boolean isIndex(String uri) {
+        String path = new QueryStringDecoder(uri).rawPath();
+        return "/".equals(path) || INDEX_PATH.equals(path);
+    }
+
     private void send100Continue(ChannelHandlerContext ctx) {
         FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.CONTINUE);
         ctx.writeAndFlush(response);
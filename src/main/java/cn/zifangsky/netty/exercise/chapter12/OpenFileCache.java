@@ -0,0 +1,205 @@
+package cn.zifangsky.netty.exercise.chapter12;
+
+import io.netty.channel.DefaultFileRegion;
+import io.netty.handler.stream.ChunkedNioFile;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.ReferenceCounted;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 已打开文件的缓存（LRU）
+ * <p>每个缓存项都是引用计数的：缓存本身持有一个引用，每个正在发送的{@link DefaultFileRegion}/{@link ChunkedNioFile}各持有一个引用，
+ * 只有所有引用都被释放后才会真正关闭文件，因此同一个文件的并发下载可以共享同一个文件描述符</p>
+ *
+ * @author zifangsky
+ * @date 2020/11/11
+ * @since 1.0.0
+ */
+@Slf4j
+public class OpenFileCache implements AutoCloseable {
+    /**
+     * 两次检查文件是否被修改的最小间隔
+     */
+    private static final long REVALIDATE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final int maxSize;
+    private final Map<Path, OpenFile> files;
+
+    public OpenFileCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be a positive integer: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.files = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * 获取已打开的文件，调用方在使用完毕后需要调用{@link OpenFile#release()}
+     * <p>锁只保护LRU表本身，打开和关闭文件都在锁外进行，避免所有EventLoop线程在文件I/O上串行化。
+     * 多个线程同时打开同一个文件时，只有第一个放入缓存的会被保留，其他的会被关闭</p>
+     * @param file 文件路径（需要已经过规范化处理）
+     * @param attrs 文件当前的属性
+     */
+    public OpenFile acquire(Path file, BasicFileAttributes attrs) throws IOException {
+        OpenFile cached;
+        synchronized (this) {
+            cached = files.get(file);
+            if (cached != null && !cached.isStale(attrs)) {
+                //缓存中的文件至少被缓存本身持有一个引用，因此可以安全地增加引用计数
+                return (OpenFile) cached.retain();
+            }
+        }
+
+        OpenFile opened = new OpenFile(FileChannel.open(file, StandardOpenOption.READ), attrs);
+        List<OpenFile> released = new ArrayList<>(2);
+        OpenFile result;
+        synchronized (this) {
+            OpenFile current = files.get(file);
+            //其他线程在此期间已经放入了新打开的文件时使用它
+            result = current != null && current != cached ? current : opened;
+
+            if (result == opened) {
+                if (current != null) {
+                    files.remove(file);
+                    released.add(current);
+                }
+                files.put(file, opened);
+                this.evict(released);
+            } else {
+                released.add(opened);
+            }
+            result.retain();
+        }
+
+        for (OpenFile openFile : released) {
+            openFile.release();
+        }
+        return result;
+    }
+
+    /**
+     * 当前打开的文件数
+     */
+    public synchronized int size() {
+        return files.size();
+    }
+
+    @Override
+    public void close() {
+        List<OpenFile> released;
+        synchronized (this) {
+            released = new ArrayList<>(files.values());
+            files.clear();
+        }
+        for (OpenFile openFile : released) {
+            openFile.release();
+        }
+    }
+
+    /**
+     * 移除超出容量的最久未使用的文件，它们需要在锁外释放
+     */
+    private void evict(List<OpenFile> released) {
+        Iterator<OpenFile> iterator = files.values().iterator();
+        while (files.size() > maxSize && iterator.hasNext()) {
+            released.add(iterator.next());
+            iterator.remove();
+        }
+    }
+
+    /**
+     * 缓存中的一个已打开文件
+     */
+    public static final class OpenFile extends AbstractReferenceCounted {
+        private final FileChannel channel;
+        private final long size;
+        private final long lastModified;
+        private volatile long validatedAt;
+
+        OpenFile(FileChannel channel, BasicFileAttributes attrs) {
+            this.channel = channel;
+            this.size = attrs.size();
+            this.lastModified = attrs.lastModifiedTime().toMillis();
+            this.validatedAt = System.nanoTime();
+        }
+
+        public long size() {
+            return size;
+        }
+
+        public long lastModified() {
+            return lastModified;
+        }
+
+        /**
+         * 创建一个零拷贝的FileRegion，该FileRegion会持有一个引用，释放时不会关闭共享的文件
+         */
+        public DefaultFileRegion newFileRegion(long position, long count) {
+            this.retain();
+            return new DefaultFileRegion(channel, position, count) {
+                @Override
+                protected void deallocate() {
+                    OpenFile.this.release();
+                }
+            };
+        }
+
+        /**
+         * 创建一个分块读取的ChunkedNioFile（用于SSL等无法使用零拷贝的场景），该对象会持有一个引用，关闭时不会关闭共享的文件
+         */
+        public ChunkedNioFile newChunkedFile(long position, long count, int chunkSize) throws IOException {
+            this.retain();
+            try {
+                return new ChunkedNioFile(channel, position, count, chunkSize) {
+                    private boolean closed;
+
+                    @Override
+                    public void close() {
+                        if (!closed) {
+                            closed = true;
+                            OpenFile.this.release();
+                        }
+                    }
+                };
+            } catch (IOException | RuntimeException e) {
+                this.release();
+                throw e;
+            }
+        }
+
+        boolean isStale(BasicFileAttributes attrs) {
+            long now = System.nanoTime();
+            if (now - validatedAt < REVALIDATE_INTERVAL_NANOS) {
+                return false;
+            }
+            validatedAt = now;
+            return attrs.size() != size || attrs.lastModifiedTime().toMillis() != lastModified;
+        }
+
+        @Override
+        protected void deallocate() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Failed to close file channel", e);
+            }
+        }
+
+        @Override
+        public ReferenceCounted touch(Object hint) {
+            return this;
+        }
+    }
+}
@@ -8,6 +8,8 @@ import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
 import io.netty.handler.ssl.util.SelfSignedCertificate;
 
+import java.nio.file.Paths;
+
 /**
  * 带加密的引导服务端
  *
@@ -19,24 +21,30 @@ public class SecureChatServer extends ChatServer {
     private final SslContext context;
 
     public SecureChatServer(SslContext context) {
+        this(context, null);
+    }
+
+    public SecureChatServer(SslContext context, StaticFileService fileService) {
+        super(SlowConsumerPolicy.DISCONNECT, fileService);
         this.context = context;
     }
 
     @Override
-    protected ChannelInitializer<Channel> createInitializer(ChannelGroup group) {
-        return new SecureChatServerInitializer(group, context);
+    protected ChannelInitializer<Channel> createInitializer(ChannelGroup group, ChannelBroadcaster broadcaster) {
+        return new SecureChatServerInitializer(group, broadcaster, getFileService(), context);
     }
 
     public static void main(String[] args) throws Exception {
-        if (args.length != 1) {
-            System.err.println("Please give port as argument");
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Please give port and optional document root as arguments");
             System.exit(1);
         }
         int port = Integer.parseInt(args[0]);
+        StaticFileService fileService = args.length == 2 ? new StaticFileService(Paths.get(args[1])) : null;
         SelfSignedCertificate cert = new SelfSignedCertificate();
         SslContext context = SslContextBuilder.forServer(cert.certificate(), cert.privateKey()).build();
 
-        final SecureChatServer endpoint = new SecureChatServer(context);
+        final SecureChatServer endpoint = new SecureChatServer(context, fileService);
         ChannelFuture future = endpoint.start(port);
 
         Runtime.getRuntime().addShutdownHook(new Thread(endpoint::destroy));
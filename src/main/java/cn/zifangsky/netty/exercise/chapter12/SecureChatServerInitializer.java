@@ -17,8 +17,13 @@ import javax.net.ssl.SSLEngine;
 public class SecureChatServerInitializer extends ChatServerInitializer {
     private final SslContext context;
 
-    public SecureChatServerInitializer(ChannelGroup group, SslContext context) {
-        super(group);
+    public SecureChatServerInitializer(ChannelGroup group, ChannelBroadcaster broadcaster, SslContext context) {
+        this(group, broadcaster, null, context);
+    }
+
+    public SecureChatServerInitializer(ChannelGroup group, ChannelBroadcaster broadcaster,
+                                       StaticFileService fileService, SslContext context) {
+        super(group, broadcaster, fileService);
         this.context = context;
     }
 
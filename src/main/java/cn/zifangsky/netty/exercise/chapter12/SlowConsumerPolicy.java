@@ -0,0 +1,23 @@
+package cn.zifangsky.netty.exercise.chapter12;
+
+/**
+ * 广播时接收者不可写（出站缓冲区超过高水位线）的处理策略
+ *
+ * @author zifangsky
+ * @date 2020/11/9
+ * @since 1.0.0
+ */
+public enum SlowConsumerPolicy {
+    /**
+     * 直接丢弃该接收者的消息
+     */
+    DROP,
+    /**
+     * 只保留最新的一条消息，在重新变为可写时发送
+     */
+    COALESCE,
+    /**
+     * 丢弃消息，连续丢弃的消息数超过阈值后断开连接
+     */
+    DISCONNECT
+}
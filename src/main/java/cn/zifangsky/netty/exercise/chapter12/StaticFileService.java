@@ -0,0 +1,458 @@
+package cn.zifangsky.netty.exercise.chapter12;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.DateFormatter;
+import io.netty.handler.codec.http.*;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.util.CharsetUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 提供某个根目录下的静态文件
+ * <p>支持Range请求（包括multipart/byteranges）、ETag/Last-Modified条件请求，并会拒绝访问根目录之外的文件。
+ * 没有SSL时使用{@link io.netty.channel.DefaultFileRegion}零拷贝发送，存在{@link SslHandler}时使用可配置块大小的
+ * {@link io.netty.handler.stream.ChunkedNioFile}。打开的文件由{@link OpenFileCache}缓存，并发下载同一个文件时共享文件描述符</p>
+ *
+ * @author zifangsky
+ * @date 2020/11/11
+ * @since 1.0.0
+ */
+@Slf4j
+public class StaticFileService implements AutoCloseable {
+    /**
+     * SSL下默认的块大小（一个TLS记录最多可以承载16KB明文）
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 16 * 1024;
+    /**
+     * 默认最多缓存的打开文件数
+     */
+    public static final int DEFAULT_MAX_OPEN_FILES = 1024;
+    /**
+     * 一次请求最多允许的区间数，超过后忽略Range请求头
+     */
+    private static final int MAX_RANGES = 16;
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+    private static final Map<String, String> MIME_TYPES = new HashMap<>();
+
+    static {
+        MIME_TYPES.put("html", "text/html; charset=UTF-8");
+        MIME_TYPES.put("htm", "text/html; charset=UTF-8");
+        MIME_TYPES.put("css", "text/css; charset=UTF-8");
+        MIME_TYPES.put("js", "application/javascript; charset=UTF-8");
+        MIME_TYPES.put("json", "application/json; charset=UTF-8");
+        MIME_TYPES.put("txt", "text/plain; charset=UTF-8");
+        MIME_TYPES.put("log", "text/plain; charset=UTF-8");
+        MIME_TYPES.put("xml", "application/xml; charset=UTF-8");
+        MIME_TYPES.put("svg", "image/svg+xml");
+        MIME_TYPES.put("png", "image/png");
+        MIME_TYPES.put("jpg", "image/jpeg");
+        MIME_TYPES.put("jpeg", "image/jpeg");
+        MIME_TYPES.put("gif", "image/gif");
+        MIME_TYPES.put("webp", "image/webp");
+        MIME_TYPES.put("ico", "image/x-icon");
+        MIME_TYPES.put("pdf", "application/pdf");
+        MIME_TYPES.put("zip", "application/zip");
+        MIME_TYPES.put("gz", "application/gzip");
+        MIME_TYPES.put("tar", "application/x-tar");
+        MIME_TYPES.put("mp4", "video/mp4");
+        MIME_TYPES.put("webm", "video/webm");
+        MIME_TYPES.put("mp3", "audio/mpeg");
+        MIME_TYPES.put("wasm", "application/wasm");
+    }
+
+    private final Path docRoot;
+    private final int chunkSize;
+    private final OpenFileCache openFiles;
+    /**
+     * 通过{@link Files#probeContentType(Path)}探测到的扩展名 -> Content-Type
+     */
+    private final Map<String, String> probedTypes = new ConcurrentHashMap<>();
+
+    public StaticFileService(Path docRoot) throws IOException {
+        this(docRoot, DEFAULT_CHUNK_SIZE, DEFAULT_MAX_OPEN_FILES);
+    }
+
+    /**
+     * @param docRoot 根目录
+     * @param chunkSize 存在SslHandler时每次读取的块大小
+     * @param maxOpenFiles 最多缓存的打开文件数
+     */
+    public StaticFileService(Path docRoot, int chunkSize, int maxOpenFiles) throws IOException {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be a positive integer: " + chunkSize);
+        }
+        this.docRoot = docRoot.toRealPath();
+        if (!Files.isDirectory(this.docRoot)) {
+            throw new IllegalArgumentException("docRoot is not a directory: " + docRoot);
+        }
+        this.chunkSize = chunkSize;
+        this.openFiles = new OpenFileCache(maxOpenFiles);
+    }
+
+    /**
+     * 处理一个静态文件请求，响应（包括错误响应）会直接写到客户端
+     */
+    public void serve(ChannelHandlerContext ctx, FullHttpRequest request) throws IOException {
+        boolean head = HttpMethod.HEAD.equals(request.method());
+        if (!head && !HttpMethod.GET.equals(request.method())) {
+            FullHttpResponse response = error(request, HttpResponseStatus.METHOD_NOT_ALLOWED);
+            response.headers().set(HttpHeaderNames.ALLOW, "GET, HEAD");
+            this.write(ctx, request, response);
+            return;
+        }
+
+        //1. 解析文件路径，拒绝访问根目录之外的文件
+        Path file = this.resolve(request.uri());
+        if (file == null) {
+            this.write(ctx, request, error(request, HttpResponseStatus.FORBIDDEN));
+            return;
+        }
+
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            attrs = null;
+        }
+        if (attrs == null || !attrs.isRegularFile()) {
+            this.write(ctx, request, error(request, HttpResponseStatus.NOT_FOUND));
+            return;
+        }
+
+        //2. 从缓存中获取已打开的文件，发送中的FileRegion/ChunkedNioFile会各自持有引用
+        OpenFileCache.OpenFile openFile = openFiles.acquire(file, attrs);
+        try {
+            this.serve(ctx, request, file, openFile, head);
+        } finally {
+            openFile.release();
+        }
+    }
+
+    private void serve(ChannelHandlerContext ctx, FullHttpRequest request, Path file,
+                       OpenFileCache.OpenFile openFile, boolean head) throws IOException {
+        long length = openFile.size();
+        long lastModified = openFile.lastModified() / 1000 * 1000;
+        String etag = "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(length) + "\"";
+        String contentType = this.contentType(file);
+
+        //3. 客户端缓存仍然有效时返回304（不包含Content-Length，它描述的是完整的表示）
+        if (StaticResourceCache.isNotModified(request.headers(), etag, lastModified)) {
+            FullHttpResponse response = new DefaultFullHttpResponse(request.protocolVersion(), HttpResponseStatus.NOT_MODIFIED);
+            response.headers().set(HttpHeaderNames.ETAG, etag);
+            response.headers().set(HttpHeaderNames.LAST_MODIFIED, DateFormatter.format(new Date(lastModified)));
+            this.write(ctx, request, response);
+            return;
+        }
+
+        //4. 解析Range请求头，null表示返回整个文件
+        List<long[]> ranges = null;
+        if (isRangeApplicable(request.headers(), etag, lastModified)) {
+            ranges = parseRanges(request.headers().get(HttpHeaderNames.RANGE), length);
+        }
+        if (ranges != null && ranges.isEmpty()) {
+            FullHttpResponse response = error(request, HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.headers().set(HttpHeaderNames.CONTENT_RANGE, "bytes */" + length);
+            this.write(ctx, request, response);
+            return;
+        }
+
+        HttpResponse response = new DefaultHttpResponse(request.protocolVersion(),
+                ranges == null ? HttpResponseStatus.OK : HttpResponseStatus.PARTIAL_CONTENT);
+        HttpHeaders headers = response.headers();
+        headers.set(HttpHeaderNames.ACCEPT_RANGES, HttpHeaderValues.BYTES);
+        headers.set(HttpHeaderNames.ETAG, etag);
+        headers.set(HttpHeaderNames.LAST_MODIFIED, DateFormatter.format(new Date(lastModified)));
+        boolean keepAlive = HttpUtil.isKeepAlive(request);
+        if (keepAlive) {
+            headers.set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
+        }
+        boolean ssl = ctx.pipeline().get(SslHandler.class) != null;
+
+        ChannelFuture lastFuture;
+        if (ranges == null || ranges.size() == 1) {
+            //5. 整个文件或者单个区间
+            long start = ranges == null ? 0 : ranges.get(0)[0];
+            long count = ranges == null ? length : ranges.get(0)[1] - start + 1;
+            headers.set(HttpHeaderNames.CONTENT_TYPE, contentType);
+            if (ranges != null) {
+                headers.set(HttpHeaderNames.CONTENT_RANGE, contentRange(start, start + count - 1, length));
+            }
+            HttpUtil.setContentLength(response, count);
+
+            ctx.write(response);
+            if (!head && count > 0) {
+                ctx.write(this.body(openFile, start, count, ssl));
+            }
+            lastFuture = ctx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+        } else {
+            //6. 多个区间，使用multipart/byteranges
+            String boundary = Long.toHexString(ThreadLocalRandom.current().nextLong())
+                    + Long.toHexString(ThreadLocalRandom.current().nextLong());
+            List<String> partHeaders = new ArrayList<>(ranges.size());
+            String trailer = "\r\n--" + boundary + "--\r\n";
+            long contentLength = trailer.length();
+            for (long[] range : ranges) {
+                String partHeader = "\r\n--" + boundary + "\r\n"
+                        + HttpHeaderNames.CONTENT_TYPE + ": " + contentType + "\r\n"
+                        + HttpHeaderNames.CONTENT_RANGE + ": " + contentRange(range[0], range[1], length) + "\r\n\r\n";
+                partHeaders.add(partHeader);
+                contentLength += partHeader.length() + range[1] - range[0] + 1;
+            }
+            headers.set(HttpHeaderNames.CONTENT_TYPE, "multipart/byteranges; boundary=" + boundary);
+            HttpUtil.setContentLength(response, contentLength);
+
+            ctx.write(response);
+            if (!head) {
+                for (int i = 0; i < ranges.size(); i++) {
+                    long[] range = ranges.get(i);
+                    ctx.write(new DefaultHttpContent(ByteBufUtil.writeAscii(ctx.alloc(), partHeaders.get(i))));
+                    ctx.write(this.body(openFile, range[0], range[1] - range[0] + 1, ssl));
+                }
+                lastFuture = ctx.writeAndFlush(new DefaultLastHttpContent(ByteBufUtil.writeAscii(ctx.alloc(), trailer)));
+            } else {
+                lastFuture = ctx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+            }
+        }
+
+        //如果没有请求keep-alive，则在写操作完成后关闭Channel
+        if (!keepAlive) {
+            lastFuture.addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+    /**
+     * 当前缓存的打开文件数
+     */
+    public int openFileCount() {
+        return openFiles.size();
+    }
+
+    @Override
+    public void close() {
+        openFiles.close();
+    }
+
+    /**
+     * 将请求路径解析为根目录下的文件，如果请求路径指向根目录之外（包括通过符号链接），则返回null
+     */
+    Path resolve(String uri) throws IOException {
+        String path;
+        try {
+            path = new QueryStringDecoder(uri).path();
+        } catch (IllegalArgumentException e) {
+            //非法的百分号编码
+            return null;
+        }
+        if (path.isEmpty() || path.charAt(0) != '/' || path.indexOf('\0') >= 0) {
+            return null;
+        }
+
+        Path file = docRoot.resolve(path.substring(1)).normalize();
+        if (!file.startsWith(docRoot)) {
+            return null;
+        }
+        if (Files.isDirectory(file)) {
+            file = file.resolve("index.html");
+        }
+        if (Files.exists(file, LinkOption.NOFOLLOW_LINKS)) {
+            //解析符号链接后再检查一次
+            try {
+                Path real = file.toRealPath();
+                return real.startsWith(docRoot) ? real : null;
+            } catch (NoSuchFileException e) {
+                //指向不存在文件的符号链接
+                return file;
+            }
+        }
+        return file;
+    }
+
+    /**
+     * 根据扩展名确定Content-Type
+     */
+    String contentType(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        if (dot < 0 || dot == name.length() - 1) {
+            return DEFAULT_CONTENT_TYPE;
+        }
+
+        String extension = name.substring(dot + 1).toLowerCase(Locale.ROOT);
+        String type = MIME_TYPES.get(extension);
+        if (type != null) {
+            return type;
+        }
+        return probedTypes.computeIfAbsent(extension, ext -> {
+            try {
+                String probed = Files.probeContentType(file);
+                return probed != null ? probed : DEFAULT_CONTENT_TYPE;
+            } catch (IOException e) {
+                return DEFAULT_CONTENT_TYPE;
+            }
+        });
+    }
+
+    /**
+     * 文件内容：没有SSL时零拷贝发送，否则按照配置的块大小分块读取
+     */
+    private Object body(OpenFileCache.OpenFile openFile, long position, long count, boolean ssl) throws IOException {
+        if (ssl) {
+            return openFile.newChunkedFile(position, count, chunkSize);
+        }
+        return openFile.newFileRegion(position, count);
+    }
+
+    /**
+     * 存在If-Range请求头时，只有其中的ETag或者日期与当前文件一致时才处理Range请求头
+     */
+    static boolean isRangeApplicable(HttpHeaders headers, String etag, long lastModified) {
+        if (!headers.contains(HttpHeaderNames.RANGE)) {
+            return false;
+        }
+        String ifRange = headers.get(HttpHeaderNames.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            //只允许强校验
+            return etag.equals(ifRange);
+        }
+        Date date = DateFormatter.parseHttpDate(ifRange);
+        return date != null && date.getTime() == lastModified;
+    }
+
+    /**
+     * 解析Range请求头（RFC 7233），重叠或者相邻的区间会被合并
+     * @param header Range请求头
+     * @param length 文件长度
+     * @return 包含闭区间[start, end]的列表；请求头不合法时返回null（忽略Range请求），没有可满足的区间时返回空列表
+     */
+    static List<long[]> parseRanges(String header, long length) {
+        if (header == null || !header.regionMatches(true, 0, "bytes=", 0, 6)) {
+            return null;
+        }
+
+        String[] specs = header.substring(6).split(",");
+        if (specs.length > MAX_RANGES) {
+            return null;
+        }
+        List<long[]> ranges = new ArrayList<>(specs.length);
+        for (String spec : specs) {
+            spec = spec.trim();
+            int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+
+            long start;
+            long end;
+            if (dash == 0) {
+                //bytes=-n，表示最后n个字节
+                long suffix = parseDigits(spec, 1, spec.length());
+                if (suffix < 0) {
+                    return null;
+                }
+                if (suffix == 0) {
+                    continue;
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = parseDigits(spec, 0, dash);
+                end = dash == spec.length() - 1 ? Long.MAX_VALUE : parseDigits(spec, dash + 1, spec.length());
+                if (start < 0 || end < start) {
+                    return null;
+                }
+                end = Math.min(end, length - 1);
+            }
+
+            if (start < length && start <= end) {
+                ranges.add(new long[]{start, end});
+            }
+        }
+
+        if (ranges.size() <= 1) {
+            return ranges;
+        }
+        ranges.sort(Comparator.comparingLong(range -> range[0]));
+        List<long[]> merged = new ArrayList<>(ranges.size());
+        long[] current = ranges.get(0);
+        for (int i = 1; i < ranges.size(); i++) {
+            long[] next = ranges.get(i);
+            if (next[0] <= current[1] + 1) {
+                current[1] = Math.max(current[1], next[1]);
+            } else {
+                merged.add(current);
+                current = next;
+            }
+        }
+        merged.add(current);
+        return merged;
+    }
+
+    /**
+     * 解析只包含数字的非负整数（Long.parseLong()还会接受正负号），不合法或者溢出时返回-1
+     */
+    private static long parseDigits(String s, int from, int to) {
+        if (from >= to) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9' || value > (Long.MAX_VALUE - (c - '0')) / 10) {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static String contentRange(long start, long end, long length) {
+        return "bytes " + start + "-" + end + "/" + length;
+    }
+
+    private static FullHttpResponse error(HttpRequest request, HttpResponseStatus status) {
+        ByteBuf content = Unpooled.copiedBuffer(status + "\r\n", CharsetUtil.UTF_8);
+        FullHttpResponse response = new DefaultFullHttpResponse(request.protocolVersion(), status, content);
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE, "text/plain; charset=UTF-8");
+        HttpUtil.setContentLength(response, content.readableBytes());
+        return response;
+    }
+
+    private void write(ChannelHandlerContext ctx, HttpRequest request, FullHttpResponse response) {
+        boolean keepAlive = HttpUtil.isKeepAlive(request);
+        if (keepAlive) {
+            response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
+        }
+        if (HttpMethod.HEAD.equals(request.method())) {
+            response.content().clear();
+        }
+        ChannelFuture future = ctx.writeAndFlush(response);
+        if (!keepAlive) {
+            future.addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+}
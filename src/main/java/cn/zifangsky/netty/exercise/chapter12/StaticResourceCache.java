@@ -0,0 +1,309 @@
+package cn.zifangsky.netty.exercise.chapter12;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.handler.codec.DateFormatter;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 静态资源缓存
+ * <p>将文件内容预先加载到池化的直接内存中（同时预先压缩一份gzip版本），并使用{@link WatchService}监听文件变化后重新加载。
+ * 每次请求只需要返回缓存内容的retainedDuplicate()，不需要再打开文件</p>
+ *
+ * @author zifangsky
+ * @date 2020/11/10
+ * @since 1.0.0
+ */
+@Slf4j
+public class StaticResourceCache implements AutoCloseable {
+    /**
+     * 请求路径 -> 缓存的资源
+     */
+    private final Map<String, CachedResource> resources = new ConcurrentHashMap<>();
+    /**
+     * 文件的绝对路径 -> 请求路径
+     */
+    private final Map<Path, String> watchedFiles = new ConcurrentHashMap<>();
+    private final WatchService watchService;
+
+    public StaticResourceCache() {
+        WatchService service;
+        try {
+            service = FileSystems.getDefault().newWatchService();
+        } catch (IOException e) {
+            log.warn("WatchService is not available, static resources will not be reloaded", e);
+            service = null;
+        }
+        this.watchService = service;
+
+        if (service != null) {
+            Thread watchThread = new Thread(this::watch, "static-resource-watcher");
+            watchThread.setDaemon(true);
+            watchThread.start();
+        }
+    }
+
+    /**
+     * 加载文件并注册到指定的请求路径下
+     * @param path 请求路径
+     * @param file 文件
+     * @param contentType Content-Type
+     */
+    public void register(String path, File file, String contentType) throws IOException {
+        Path filePath = file.toPath().toAbsolutePath().normalize();
+        this.load(path, filePath, contentType);
+
+        if (watchService != null && watchedFiles.put(filePath, path) == null) {
+            filePath.getParent().register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+    }
+
+    /**
+     * 获取缓存的资源
+     */
+    public CachedResource get(String path) {
+        return resources.get(path);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+        for (CachedResource resource : resources.values()) {
+            resource.release();
+        }
+        resources.clear();
+    }
+
+    private void load(String path, Path file, String contentType) throws IOException {
+        String previousContentType = contentType;
+        if (previousContentType == null) {
+            CachedResource previous = resources.get(path);
+            previousContentType = previous != null ? previous.getContentType() : "application/octet-stream";
+        }
+
+        byte[] bytes = Files.readAllBytes(file);
+        long lastModified = Files.getLastModifiedTime(file).toMillis();
+        CachedResource resource = new CachedResource(bytes, gzip(bytes), lastModified, previousContentType);
+
+        CachedResource previous = resources.put(path, resource);
+        if (previous != null) {
+            //正在发送中的响应持有各自的引用，因此这里可以直接释放
+            previous.release();
+        }
+    }
+
+    private void watch() {
+        try {
+            for (;;) {
+                WatchKey key = watchService.take();
+                Path dir = (Path) key.watchable();
+
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        continue;
+                    }
+                    Path changed = dir.resolve((Path) event.context()).toAbsolutePath().normalize();
+                    String path = watchedFiles.get(changed);
+                    if (path != null) {
+                        try {
+                            this.load(path, changed, null);
+                            log.info("Reloaded static resource {} from {}", path, changed);
+                        } catch (IOException e) {
+                            log.error("Failed to reload static resource " + changed, e);
+                        }
+                    }
+                }
+                key.reset();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // watcher stopped
+        }
+    }
+
+    /**
+     * 根据If-None-Match/If-Modified-Since请求头判断客户端缓存是否仍然有效
+     * @param etag 资源当前的ETag
+     * @param lastModified 精确到秒的最后修改时间
+     */
+    static boolean isNotModified(HttpHeaders headers, String etag, long lastModified) {
+        String ifNoneMatch = headers.get(HttpHeaderNames.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if ("*".equals(tag) || etag.equals(tag)) {
+                    return true;
+                }
+            }
+            //存在If-None-Match时忽略If-Modified-Since
+            return false;
+        }
+
+        String ifModifiedSince = headers.get(HttpHeaderNames.IF_MODIFIED_SINCE);
+        if (ifModifiedSince != null) {
+            Date since = DateFormatter.parseHttpDate(ifModifiedSince);
+            return since != null && since.getTime() >= lastModified;
+        }
+        return false;
+    }
+
+    /**
+     * 压缩后的内容，如果压缩后没有变小则返回null
+     */
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.size() < bytes.length ? out.toByteArray() : null;
+    }
+
+    /**
+     * 内容的SHA-256摘要的前64位（十六进制），相同长度的内容在同一秒内被修改也能区分
+     */
+    static String digest(byte[] bytes) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuilder builder = new StringBuilder(16);
+            for (int i = 0; i < 8; i++) {
+                builder.append(Character.forDigit((hash[i] >> 4) & 0xF, 16)).append(Character.forDigit(hash[i] & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            //每个Java平台都必须支持SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ByteBuf toDirectBuffer(byte[] bytes) {
+        ByteBuf buf = PooledByteBufAllocator.DEFAULT.directBuffer(bytes.length, bytes.length);
+        return buf.writeBytes(bytes);
+    }
+
+    /**
+     * 缓存的资源
+     */
+    @Getter
+    public static final class CachedResource {
+        @Getter(AccessLevel.NONE)
+        private final ByteBuf content;
+        /**
+         * 预先压缩的内容，为null时表示不需要压缩
+         */
+        @Getter(AccessLevel.NONE)
+        private final ByteBuf gzipContent;
+        /**
+         * 根据内容的摘要生成的强ETag（未压缩的表示）
+         */
+        private final String etag;
+        /**
+         * gzip表示的ETag，与未压缩的表示不同
+         */
+        @Getter(AccessLevel.NONE)
+        private final String gzipEtag;
+        /**
+         * 精确到秒的最后修改时间（与HTTP日期的精度一致）
+         */
+        private final long lastModified;
+        private final String lastModifiedHeader;
+        private final String contentType;
+        /**
+         * 缓存本身持有一个引用，重新加载后释放；正在读取内容的线程会临时增加引用
+         */
+        @Getter(AccessLevel.NONE)
+        private final AtomicInteger refCnt = new AtomicInteger(1);
+
+        CachedResource(byte[] content, byte[] gzipContent, long lastModified, String contentType) {
+            this.content = toDirectBuffer(content);
+            this.gzipContent = gzipContent != null ? toDirectBuffer(gzipContent) : null;
+            this.lastModified = lastModified / 1000 * 1000;
+            this.lastModifiedHeader = DateFormatter.format(new Date(this.lastModified));
+            String digest = digest(content);
+            this.etag = "\"" + digest + "\"";
+            this.gzipEtag = gzipContent != null ? "\"" + digest + "-gz\"" : this.etag;
+            this.contentType = contentType;
+        }
+
+        /**
+         * 是否存在预先压缩的内容
+         */
+        public boolean isGzipAvailable() {
+            return gzipContent != null;
+        }
+
+        /**
+         * 指定表示的ETag
+         * @param gzip 是否是压缩后的内容（不存在压缩内容时返回未压缩表示的ETag）
+         */
+        public String getEtag(boolean gzip) {
+            return gzip ? gzipEtag : etag;
+        }
+
+        /**
+         * 根据If-None-Match/If-Modified-Since请求头判断客户端缓存的指定表示是否仍然有效
+         * @param gzip 是否是压缩后的内容
+         */
+        public boolean isNotModified(HttpHeaders headers, boolean gzip) {
+            return StaticResourceCache.isNotModified(headers, this.getEtag(gzip), lastModified);
+        }
+
+        /**
+         * 获取内容的retainedDuplicate()，如果该资源已经因为重新加载而被释放，则返回null（调用方需要重新从缓存中获取）
+         * @param gzip 是否返回压缩后的内容（如果存在）
+         */
+        public ByteBuf retainedContent(boolean gzip) {
+            for (;;) {
+                int cnt = refCnt.get();
+                if (cnt == 0) {
+                    return null;
+                }
+                if (refCnt.compareAndSet(cnt, cnt + 1)) {
+                    break;
+                }
+            }
+
+            try {
+                return (gzip && gzipContent != null ? gzipContent : content).retainedDuplicate();
+            } finally {
+                this.release();
+            }
+        }
+
+        void release() {
+            if (refCnt.decrementAndGet() == 0) {
+                content.release();
+                if (gzipContent != null) {
+                    gzipContent.release();
+                }
+            }
+        }
+    }
+}
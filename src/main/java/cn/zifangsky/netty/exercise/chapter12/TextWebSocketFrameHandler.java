@@ -1,12 +1,14 @@
 package cn.zifangsky.netty.exercise.chapter12;
 
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelId;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
-import io.netty.util.CharsetUtil;
 
 /**
  * 处理文本帧
@@ -16,10 +18,14 @@ import io.netty.util.CharsetUtil;
  * @since 1.0.0
  */
 public class TextWebSocketFrameHandler extends SimpleChannelInboundHandler<TextWebSocketFrame> {
+    private static final String SAY = "] say: ";
+
     private final ChannelGroup group;
+    private final ChannelBroadcaster broadcaster;
 
-    public TextWebSocketFrameHandler(ChannelGroup group) {
+    public TextWebSocketFrameHandler(ChannelGroup group, ChannelBroadcaster broadcaster) {
         this.group = group;
+        this.broadcaster = broadcaster;
     }
 
     /**
@@ -32,20 +38,43 @@ public class TextWebSocketFrameHandler extends SimpleChannelInboundHandler<TextW
             ctx.pipeline().remove(HttpRequestHandler.class);
 
             //通知所有已经连接的WebSocket客户端新的客户端已经连接上了
-            this.group.writeAndFlush(new TextWebSocketFrame("Client " + ctx.channel().id() + " joined!"));
-            //将新的WebSocket Channel添加到ChannelGroup中，以便它可以接收到所有消息
+            this.broadcaster.broadcast(WebSocketFrameEncoding.textFrame(ctx.alloc(), "Client " + ctx.channel().id() + " joined!"));
+            //将新的WebSocket Channel添加到ChannelGroup（用于关闭服务时统一关闭连接）和广播器中，以便它可以接收到所有消息
             this.group.add(ctx.channel());
+            this.broadcaster.add(ctx.channel());
         }else{
             super.userEventTriggered(ctx, evt);
         }
     }
 
+    /**
+     * 出站缓冲区重新变为可写时，通知广播器发送被合并保留的消息
+     */
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        this.broadcaster.writabilityChanged(ctx.channel());
+        super.channelWritabilityChanged(ctx);
+    }
+
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, TextWebSocketFrame msg) throws Exception {
-        //增加消息的引用计数，并将它写到ChannelGroup 中所有已经连接的客户端
-        String resMsg = String.format("[%s] say: %s", ctx.channel().id(), msg.text());
-        msg = msg.replace(Unpooled.copiedBuffer(resMsg, CharsetUtil.UTF_8));
+        //只编码一次完整的WebSocket帧，并通过广播器将它写到所有已经连接的客户端
+        this.broadcaster.broadcast(encodeChatMessage(ctx.alloc(), ctx.channel().id(), msg.content()));
+    }
+
+    /**
+     * 将“[id] say: 消息内容”直接编码为一个完整的文本帧，消息内容本身已经是UTF-8编码，因此只需要复制一次字节
+     */
+    public static ByteBuf encodeChatMessage(ByteBufAllocator alloc, ChannelId id, ByteBuf text) {
+        String shortId = id.asShortText();
+        int payloadLength = 1 + shortId.length() + SAY.length() + text.readableBytes();
 
-        this.group.writeAndFlush(msg.retain());
+        ByteBuf frame = alloc.directBuffer(WebSocketFrameEncoding.headerLength(payloadLength) + payloadLength);
+        WebSocketFrameEncoding.writeHeader(frame, WebSocketFrameEncoding.OPCODE_TEXT, payloadLength);
+        frame.writeByte('[');
+        ByteBufUtil.writeAscii(frame, shortId);
+        ByteBufUtil.writeAscii(frame, SAY);
+        frame.writeBytes(text, text.readerIndex(), text.readableBytes());
+        return frame;
     }
 }
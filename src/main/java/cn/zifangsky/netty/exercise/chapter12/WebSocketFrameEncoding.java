@@ -0,0 +1,65 @@
+package cn.zifangsky.netty.exercise.chapter12;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+
+/**
+ * 预先编码服务端发出的WebSocket帧（RFC 6455，服务端发出的帧不需要掩码）
+ * <p>编码后的帧是一个完整的{@link ByteBuf}，握手完成后写入Channel时会直接跳过WebSocket编码器，
+ * 因此广播时只需要编码一次，每个接收者只需要一个retainedDuplicate()</p>
+ *
+ * @author zifangsky
+ * @date 2020/11/6
+ * @since 1.0.0
+ */
+public final class WebSocketFrameEncoding {
+    public static final int OPCODE_TEXT = 0x1;
+    public static final int OPCODE_BINARY = 0x2;
+
+    private static final int FIN = 0x80;
+
+    private WebSocketFrameEncoding() {
+    }
+
+    /**
+     * 帧头长度
+     * @param payloadLength 负载长度
+     */
+    public static int headerLength(long payloadLength) {
+        if (payloadLength <= 125) {
+            return 2;
+        } else if (payloadLength <= 0xFFFF) {
+            return 4;
+        } else {
+            return 10;
+        }
+    }
+
+    /**
+     * 写入一个不带掩码的、FIN标志位为1的帧头
+     */
+    public static void writeHeader(ByteBuf out, int opcode, long payloadLength) {
+        out.writeByte(FIN | opcode);
+        if (payloadLength <= 125) {
+            out.writeByte((int) payloadLength);
+        } else if (payloadLength <= 0xFFFF) {
+            out.writeByte(126);
+            out.writeShort((int) payloadLength);
+        } else {
+            out.writeByte(127);
+            out.writeLong(payloadLength);
+        }
+    }
+
+    /**
+     * 将文本编码为一个完整的文本帧（使用池化的直接内存）
+     */
+    public static ByteBuf textFrame(ByteBufAllocator alloc, CharSequence text) {
+        int payloadLength = ByteBufUtil.utf8Bytes(text);
+        ByteBuf frame = alloc.directBuffer(headerLength(payloadLength) + payloadLength);
+        writeHeader(frame, OPCODE_TEXT, payloadLength);
+        ByteBufUtil.writeUtf8(frame, text);
+        return frame;
+    }
+}
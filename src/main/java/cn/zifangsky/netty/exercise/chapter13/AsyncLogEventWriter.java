@@ -0,0 +1,283 @@
+package cn.zifangsky.netty.exercise.chapter13;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.internal.PlatformDependent;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 异步批量输出日志消息
+ * <p>EventLoop只需要将LogEvent放入有界的MPSC环形队列，由单独的写线程批量格式化到一个可复用的直接内存缓冲区后一次性交给{@link LogEventSink}。
+ * 队列同时按照消息数和消息占用的字节数限制，已满时直接丢弃消息并计数，因此输出目标变慢时不会阻塞UDP数据的接收，也不会无限占用内存。
+ * 只占接收缓冲区一小部分的延迟解码消息在放入队列前会被复制出来（见{@link LogEvent#compact(ByteBufAllocator)}），
+ * 避免排队的消息占住整个接收缓冲区</p>
+ * <p>格式化或者写出时的任何异常都只会导致对应的消息被计为丢弃，写线程不会因此退出</p>
+ *
+ * @author zifangsky
+ * @date 2020/11/18
+ * @since 1.0.0
+ */
+@Slf4j
+public class AsyncLogEventWriter implements AutoCloseable {
+    /**
+     * 默认的队列容量
+     */
+    public static final int DEFAULT_CAPACITY = 64 * 1024;
+    /**
+     * 默认的批次大小（格式化后的字节数达到该值后写出一次）
+     */
+    public static final int DEFAULT_BATCH_BYTES = 64 * 1024;
+    /**
+     * 默认的队列中消息最多占用的字节数
+     */
+    public static final long DEFAULT_MAX_QUEUED_BYTES = 32 * 1024 * 1024;
+    /**
+     * 关闭时等待写线程写出剩余消息的最长时间
+     */
+    private static final long CLOSE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    private final LogEventSink sink;
+    private final int batchBytes;
+    private final long maxQueuedBytes;
+    private final Queue<LogEvent> queue;
+    /**
+     * 队列中的消息占用的字节数，见{@link LogEvent#retainedBytes()}
+     */
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private final Thread writerThread;
+    /**
+     * 写线程是否即将或者已经挂起
+     */
+    private final AtomicBoolean parked = new AtomicBoolean();
+    private volatile boolean running = true;
+
+    /**
+     * 因为队列已满、格式化或者写出失败而被丢弃的消息数
+     */
+    private final LongAdder dropped = new LongAdder();
+    /**
+     * 已写出的消息数
+     */
+    private final LongAdder written = new LongAdder();
+
+    public AsyncLogEventWriter(LogEventSink sink) {
+        this(sink, DEFAULT_CAPACITY, DEFAULT_BATCH_BYTES);
+    }
+
+    /**
+     * @param sink 输出目标
+     * @param capacity 队列容量
+     * @param batchBytes 每个批次的字节数
+     */
+    public AsyncLogEventWriter(LogEventSink sink, int capacity, int batchBytes) {
+        this(sink, capacity, batchBytes, DEFAULT_MAX_QUEUED_BYTES);
+    }
+
+    /**
+     * @param sink 输出目标
+     * @param capacity 队列容量
+     * @param batchBytes 每个批次的字节数
+     * @param maxQueuedBytes 队列中的消息最多占用的字节数
+     */
+    public AsyncLogEventWriter(LogEventSink sink, int capacity, int batchBytes, long maxQueuedBytes) {
+        if (batchBytes <= 0) {
+            throw new IllegalArgumentException("batchBytes must be a positive integer: " + batchBytes);
+        }
+        if (maxQueuedBytes <= 0) {
+            throw new IllegalArgumentException("maxQueuedBytes must be a positive integer: " + maxQueuedBytes);
+        }
+        this.sink = sink;
+        this.batchBytes = batchBytes;
+        this.maxQueuedBytes = maxQueuedBytes;
+        this.queue = PlatformDependent.newFixedMpscQueue(capacity);
+
+        this.writerThread = new Thread(this::run, "log-event-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * 提交一条日志消息（可以在任意线程中调用），消息的所有权转移给写线程，队列已满时直接释放并计数
+     * @return 是否成功放入队列
+     */
+    public boolean offer(LogEvent event) {
+        if (!running || queuedBytes.get() >= maxQueuedBytes) {
+            return this.drop(event);
+        }
+
+        try {
+            event = event.compact(PooledByteBufAllocator.DEFAULT);
+        } catch (RuntimeException e) {
+            log.error("Failed to copy log event", e);
+            return this.drop(event);
+        }
+        int size = event.retainedBytes();
+        if (queuedBytes.addAndGet(size) > maxQueuedBytes) {
+            queuedBytes.addAndGet(-size);
+            return this.drop(event);
+        }
+        if (!queue.offer(event)) {
+            queuedBytes.addAndGet(-size);
+            return this.drop(event);
+        }
+
+        if (parked.get() && parked.compareAndSet(true, false)) {
+            LockSupport.unpark(writerThread);
+        }
+        return true;
+    }
+
+    public long droppedCount() {
+        return dropped.sum();
+    }
+
+    public long writtenCount() {
+        return written.sum();
+    }
+
+    /**
+     * 队列中的消息当前占用的字节数
+     */
+    public long queuedBytes() {
+        return queuedBytes.get();
+    }
+
+    /**
+     * 停止写线程，写出队列中剩余的消息后关闭输出目标
+     * <p>MPSC队列只允许一个消费者，如果写线程在超时后仍未退出，则不会再从队列中取出消息，也不会关闭仍在使用中的输出目标</p>
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writerThread.isAlive()) {
+            log.warn("Log event writer did not stop within {} ms, leaving {} bytes of queued events",
+                    CLOSE_TIMEOUT_MILLIS, queuedBytes.get());
+            return;
+        }
+
+        //写线程已经退出，释放关闭过程中放入队列的消息
+        LogEvent event;
+        while ((event = queue.poll()) != null) {
+            queuedBytes.addAndGet(-event.retainedBytes());
+            this.drop(event);
+        }
+        sink.close();
+    }
+
+    private boolean drop(LogEvent event) {
+        dropped.increment();
+        event.release();
+        return false;
+    }
+
+    private void run() {
+        ByteBuf buf = PooledByteBufAllocator.DEFAULT.directBuffer(batchBytes * 2);
+        try {
+            for (;;) {
+                //1. 批量取出消息并格式化，达到批次大小后写出一次
+                int count = 0;
+                LogEvent event;
+                while ((event = queue.poll()) != null) {
+                    queuedBytes.addAndGet(-event.retainedBytes());
+                    int writerIndex = buf.writerIndex();
+                    try {
+                        format(buf, event);
+                        count++;
+                    } catch (Throwable e) {
+                        //丢弃格式化失败的消息已经写入的部分
+                        buf.writerIndex(writerIndex);
+                        dropped.increment();
+                        log.error("Failed to format log event", e);
+                    } finally {
+                        ReferenceCountUtil.safeRelease(event);
+                    }
+                    if (buf.readableBytes() >= batchBytes) {
+                        this.write(buf, count);
+                        count = 0;
+                    }
+                }
+                if (buf.isReadable()) {
+                    this.write(buf, count);
+                }
+                this.flush();
+
+                if (!running && queue.isEmpty()) {
+                    break;
+                }
+
+                //2. 队列为空时挂起，直到有新消息或者超时
+                parked.set(true);
+                if (queue.isEmpty() && running) {
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+                }
+                parked.set(false);
+            }
+        } finally {
+            buf.release();
+        }
+    }
+
+    private void write(ByteBuf buf, int count) {
+        try {
+            sink.write(buf);
+            written.add(count);
+        } catch (Throwable e) {
+            dropped.add(count);
+            log.error("Failed to write log events", e);
+        } finally {
+            buf.clear();
+        }
+    }
+
+    private void flush() {
+        try {
+            sink.flush();
+        } catch (Throwable e) {
+            log.error("Failed to flush log events", e);
+        }
+    }
+
+    /**
+     * 格式：接收时间 [来源地址] [文件名] : 消息内容
+     * <p>延迟解码的消息直接复制其UTF-8字节，不会创建字符串</p>
+     */
+    static void format(ByteBuf buf, LogEvent event) {
+        String receivedTime = event.getReceivedTime();
+        if (receivedTime != null) {
+            buf.writeCharSequence(receivedTime, CharsetUtil.US_ASCII);
+        }
+        buf.writeCharSequence(" [", CharsetUtil.US_ASCII);
+        buf.writeCharSequence(String.valueOf(event.getSourceAddress()), CharsetUtil.US_ASCII);
+        buf.writeCharSequence("] [", CharsetUtil.US_ASCII);
+        if (event.filePathBytes() != null) {
+            buf.writeBytes(event.filePathBytes(), event.filePathBytes().readerIndex(), event.filePathBytes().readableBytes());
+        } else {
+            ByteBufUtil.writeUtf8(buf, event.getFilePath());
+        }
+        buf.writeCharSequence("] : ", CharsetUtil.US_ASCII);
+        if (event.msgBytes() != null) {
+            buf.writeBytes(event.msgBytes(), event.msgBytes().readerIndex(), event.msgBytes().readableBytes());
+        } else {
+            ByteBufUtil.writeUtf8(buf, event.getMsg());
+        }
+        buf.writeByte('\n');
+    }
+}
@@ -0,0 +1,32 @@
+package cn.zifangsky.netty.exercise.chapter13;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * 输出到标准输出
+ * <p>直接写标准输出的文件描述符，不经过System.out的同步和字符编码</p>
+ *
+ * @author zifangsky
+ * @date 2020/11/18
+ * @since 1.0.0
+ */
+public class ConsoleLogEventSink implements LogEventSink {
+    private final FileChannel out = new FileOutputStream(FileDescriptor.out).getChannel();
+
+    @Override
+    public void write(ByteBuf buf) throws IOException {
+        while (buf.isReadable()) {
+            buf.readBytes(out, buf.readableBytes());
+        }
+    }
+
+    @Override
+    public void close() {
+        //不关闭标准输出
+    }
+}
@@ -0,0 +1,174 @@
+package cn.zifangsky.netty.exercise.chapter13;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 日志文件的读取检查点
+ * <p>按照文件的fileKey（Linux中为设备号和inode）而不是文件名保存已经发送到的位置，因此文件被轮转（重命名）后仍然能找到对应的检查点。
+ * inode可能在文件被删除后分配给新文件，因此检查点同时保存文件开头内容的哈希值（见{@link LogFileTailer#headHash(long)}），恢复时两者都一致才使用。
+ * 可以选择持久化到一个文本文件（每行一个检查点：fileKey、位置、开头内容的哈希值、文件名，以制表符分隔），保存时先写入临时文件再原子地替换，
+ * 重启后从检查点继续读取，既不会重复发送也不会跳过未发送的内容</p>
+ *
+ * @author zifangsky
+ * @date 2020/11/20
+ * @since 1.0.0
+ */
+@Slf4j
+public class LogCheckpointStore {
+    /**
+     * 没有检查点
+     */
+    public static final long NO_CHECKPOINT = -1;
+    /**
+     * 没有记录文件开头内容的哈希值（旧格式的检查点），恢复时不校验
+     */
+    public static final long NO_HEAD_HASH = -1;
+
+    /**
+     * 持久化的文件，为null时只保存在内存中
+     */
+    private final Path file;
+    private final Map<String, Checkpoint> checkpoints = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+
+    /**
+     * 只保存在内存中的检查点
+     */
+    public LogCheckpointStore() {
+        this.file = null;
+    }
+
+    /**
+     * @param file 持久化的文件，存在时加载其中的检查点
+     */
+    public LogCheckpointStore(Path file) throws IOException {
+        this.file = file;
+
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        for (String line : lines) {
+            String[] fields = line.split("\t", 4);
+            if (fields.length < 3) {
+                log.warn("Ignoring malformed checkpoint in {}: {}", file, line);
+                continue;
+            }
+            try {
+                //旧格式的检查点没有哈希值：fileKey、位置、文件名
+                checkpoints.put(fields[0], fields.length == 3
+                        ? new Checkpoint(Long.parseLong(fields[1]), NO_HEAD_HASH, fields[2])
+                        : new Checkpoint(Long.parseLong(fields[1]), Long.parseUnsignedLong(fields[2], 16), fields[3]));
+            } catch (NumberFormatException e) {
+                log.warn("Ignoring malformed checkpoint in {}: {}", file, line);
+            }
+        }
+    }
+
+    /**
+     * 文件的唯一标识，文件系统不支持fileKey时退化为文件的绝对路径
+     */
+    public static String keyOf(Path path, BasicFileAttributes attrs) {
+        Object fileKey = attrs.fileKey();
+        return fileKey != null ? fileKey.toString() : path.toAbsolutePath().toString();
+    }
+
+    /**
+     * @return 该文件已经发送到的位置，没有检查点时返回{@link #NO_CHECKPOINT}
+     */
+    public long get(String key) {
+        Checkpoint checkpoint = checkpoints.get(key);
+        return checkpoint != null ? checkpoint.offset : NO_CHECKPOINT;
+    }
+
+    /**
+     * @param headHash 当前文件开头内容的哈希值，长度按照检查点的位置计算
+     * @return 该检查点是否属于当前文件（没有检查点或者没有记录哈希值时返回true）
+     */
+    public boolean matches(String key, long headHash) {
+        Checkpoint checkpoint = checkpoints.get(key);
+        return checkpoint == null || checkpoint.headHash == NO_HEAD_HASH || checkpoint.headHash == headHash;
+    }
+
+    public boolean isEmpty() {
+        return checkpoints.isEmpty();
+    }
+
+    /**
+     * 记录该文件中offset之前的内容都已经发送
+     * @param headHash 文件开头内容的哈希值，见{@link LogFileTailer#headHash(long)}
+     */
+    public void commit(String key, Path path, long offset, long headHash) {
+        Checkpoint checkpoint = checkpoints.get(key);
+        if (checkpoint == null || checkpoint.offset != offset || checkpoint.headHash != headHash) {
+            checkpoints.put(key, new Checkpoint(offset, headHash, path.toString()));
+            dirty = true;
+        }
+    }
+
+    /**
+     * 只保留这些文件的检查点，删除已经不存在的文件的检查点
+     */
+    public void retainAll(Collection<String> keys) {
+        if (checkpoints.keySet().retainAll(keys)) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * 有变化时持久化到文件
+     */
+    public synchronized void save() throws IOException {
+        if (file == null || !dirty) {
+            return;
+        }
+        dirty = false;
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Checkpoint> entry : checkpoints.entrySet()) {
+                Checkpoint checkpoint = entry.getValue();
+                writer.write(entry.getKey() + '\t' + checkpoint.offset + '\t'
+                        + Long.toHexString(checkpoint.headHash) + '\t' + checkpoint.path);
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            dirty = true;
+            throw e;
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static final class Checkpoint {
+        private final long offset;
+        /**
+         * 文件开头内容的哈希值
+         */
+        private final long headHash;
+        /**
+         * 保存检查点时的文件名，只用于排查问题
+         */
+        private final String path;
+
+        private Checkpoint(long offset, long headHash, String path) {
+            this.offset = offset;
+            this.headHash = headHash;
+            this.path = path;
+        }
+    }
+}
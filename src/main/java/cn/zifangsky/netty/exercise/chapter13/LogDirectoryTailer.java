@@ -0,0 +1,442 @@
+package cn.zifangsky.netty.exercise.chapter13;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 同时跟踪一个目录中所有匹配glob模式的日志文件
+ * <p>每个文件对应一个{@link LogFileTailer}，由一个固定大小的读取线程池轮流读取（同一个文件同时只会在一个线程中读取），
+ * 调用线程负责扫描目录、监听文件变化以及定期保存检查点。每个批次处理完成后将该文件的检查点推进到批次的结束位置，
+ * 启动时按照fileKey从{@link LogCheckpointStore}中恢复读取位置，文件开头内容的哈希值不一致（inode被新文件复用）时从头读取</p>
+ * <p>文件被轮转时由LogFileTailer读完旧文件后切换到新文件；旧文件如果仍然匹配glob模式（例如“app.log*”），
+ * 会在旧文件读完之后按照它的检查点继续跟踪，不会重复读取。因此glob模式最好同时匹配轮转之后的文件名，
+ * 否则进程停止期间发生的轮转会丢失旧文件末尾还没有发送的内容</p>
+ *
+ * @author zifangsky
+ * @date 2020/11/20
+ * @since 1.0.0
+ */
+@Slf4j
+public class LogDirectoryTailer implements AutoCloseable {
+    /**
+     * 默认的读取线程数
+     */
+    public static final int DEFAULT_READER_THREADS = 2;
+    /**
+     * 默认的检查点保存间隔
+     */
+    public static final long DEFAULT_CHECKPOINT_INTERVAL_MILLIS = 1000;
+
+    private final Path directory;
+    private final PathMatcher matcher;
+    private final LogCheckpointStore checkpoints;
+    private final boolean watch;
+    private final int bufferSize;
+    private final long pollIntervalMillis;
+    private final ExecutorService readers;
+    /**
+     * 正在跟踪的文件
+     */
+    private final Map<Path, TailedFile> files = new ConcurrentHashMap<>();
+    /**
+     * 正在读取的文件的fileKey，避免轮转后的旧文件在读完之前又被另一个跟踪器读取
+     */
+    private final Set<String> activeKeys = ConcurrentHashMap.newKeySet();
+    private WatchService watchService;
+    private FileBatchListener listener;
+    private volatile boolean running = true;
+
+    /**
+     * @param directory 日志文件所在的目录
+     * @param glob 文件名的glob模式，例如“*.log”
+     * @param checkpoints 检查点
+     * @param readerThreads 读取线程数
+     * @param watch 是否使用WatchService监听文件变化
+     */
+    public LogDirectoryTailer(Path directory, String glob, LogCheckpointStore checkpoints, int readerThreads, boolean watch) {
+        this(directory, glob, checkpoints, readerThreads, watch,
+                LogFileTailer.DEFAULT_BUFFER_SIZE, LogFileTailer.DEFAULT_POLL_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param directory 日志文件所在的目录
+     * @param glob 文件名的glob模式，例如“*.log”
+     * @param checkpoints 检查点
+     * @param readerThreads 读取线程数
+     * @param watch 是否使用WatchService监听文件变化
+     * @param bufferSize 每个文件的读缓冲区大小
+     * @param pollIntervalMillis 轮询间隔（使用WatchService时作为等待事件的超时时间），同时也是重新扫描目录的间隔
+     */
+    public LogDirectoryTailer(Path directory, String glob, LogCheckpointStore checkpoints, int readerThreads,
+                              boolean watch, int bufferSize, long pollIntervalMillis) {
+        if (readerThreads <= 0) {
+            throw new IllegalArgumentException("readerThreads must be a positive integer: " + readerThreads);
+        }
+        this.directory = directory;
+        this.matcher = directory.getFileSystem().getPathMatcher("glob:" + glob);
+        this.checkpoints = checkpoints;
+        this.watch = watch;
+        this.bufferSize = bufferSize;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.readers = Executors.newFixedThreadPool(readerThreads, new DefaultThreadFactory("log-file-reader", true));
+    }
+
+    /**
+     * 只跟踪一个文件，检查点只保存在内存中
+     */
+    public static LogDirectoryTailer forFile(File file, boolean watch) {
+        File absolute = file.getAbsoluteFile();
+        return new LogDirectoryTailer(absolute.getParentFile().toPath(), escapeGlob(absolute.getName()),
+                new LogCheckpointStore(), 1, watch);
+    }
+
+    private static String escapeGlob(String name) {
+        StringBuilder glob = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if ("*?[]{}\\".indexOf(c) >= 0) {
+                glob.append('\\');
+            }
+            glob.append(c);
+        }
+        return glob.toString();
+    }
+
+    /**
+     * 开始跟踪，直到调用{@link #stop()}
+     * <p>没有检查点的文件：第一次启动（检查点为空）时已经存在的文件从末尾开始读取，其他情况下从头开始读取</p>
+     * @param listener 每个文件每次读取得到的所有完整行，会在多个读取线程中调用，但同一个文件的批次总是按顺序调用
+     */
+    public void run(FileBatchListener listener) throws IOException, InterruptedException {
+        this.listener = listener;
+        this.watchService = this.newWatchService();
+
+        this.scan(checkpoints.isEmpty());
+        long lastScan = System.nanoTime();
+        long lastSave = lastScan;
+        while (running) {
+            //1. 等待文件变化，只读取发生变化的文件，有新文件时重新扫描目录
+            boolean rescan = this.await();
+
+            //2. 即使没有收到事件，也定期重新扫描目录，以防漏掉事件
+            long now = System.nanoTime();
+            if (rescan || now - lastScan >= TimeUnit.MILLISECONDS.toNanos(pollIntervalMillis)) {
+                this.scan(false);
+                lastScan = now;
+            }
+
+            //3. 定期保存检查点
+            if (now - lastSave >= TimeUnit.MILLISECONDS.toNanos(DEFAULT_CHECKPOINT_INTERVAL_MILLIS)) {
+                this.saveCheckpoints();
+                lastSave = now;
+            }
+        }
+    }
+
+    private WatchService newWatchService() throws IOException {
+        if (!watch) {
+            return null;
+        }
+
+        WatchService service = null;
+        try {
+            service = FileSystems.getDefault().newWatchService();
+            directory.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            return service;
+        } catch (IOException | UnsupportedOperationException e) {
+            log.warn("WatchService is not available, falling back to polling " + directory, e);
+            if (service != null) {
+                service.close();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * @return 是否需要重新扫描目录
+     */
+    private boolean await() throws InterruptedException {
+        if (watchService == null) {
+            TimeUnit.MILLISECONDS.sleep(pollIntervalMillis);
+            return true;
+        }
+
+        WatchKey key = watchService.poll(pollIntervalMillis, TimeUnit.MILLISECONDS);
+        if (key == null) {
+            return true;
+        }
+        boolean rescan = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                rescan = true;
+                continue;
+            }
+            Path path = directory.resolve((Path) event.context());
+            if (!matcher.matches(path.getFileName())) {
+                continue;
+            }
+            TailedFile tailed = files.get(path);
+            if (event.kind() == StandardWatchEventKinds.ENTRY_MODIFY && tailed != null) {
+                this.schedule(tailed);
+            } else {
+                //新创建、被删除或者被轮转的文件
+                rescan = true;
+            }
+        }
+        key.reset();
+        return rescan;
+    }
+
+    /**
+     * 扫描目录：跟踪新出现的文件，读取所有文件的新增内容，不再存在的文件读完之后停止跟踪
+     * @param initial 是否从末尾开始读取没有检查点的文件
+     */
+    private void scan(boolean initial) throws IOException {
+        Set<Path> seen = new HashSet<>();
+        Set<String> keys = new HashSet<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, p -> matcher.matches(p.getFileName()))) {
+            for (Path path : stream) {
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                } catch (NoSuchFileException e) {
+                    continue;
+                }
+                if (!attrs.isRegularFile()) {
+                    continue;
+                }
+                seen.add(path);
+                keys.add(LogCheckpointStore.keyOf(path, attrs));
+
+                TailedFile tailed = files.get(path);
+                if (tailed == null) {
+                    try {
+                        tailed = this.track(path, initial);
+                    } catch (IOException e) {
+                        log.warn("Failed to open " + path, e);
+                    }
+                    if (tailed == null) {
+                        continue;
+                    }
+                    files.put(path, tailed);
+                }
+                this.schedule(tailed);
+            }
+        }
+
+        for (TailedFile tailed : files.values()) {
+            if (!seen.contains(tailed.path)) {
+                //文件已经被删除或者重命名，读完剩下的内容后停止跟踪
+                tailed.removed = true;
+                this.schedule(tailed);
+            }
+        }
+
+        //只保留仍然存在的文件的检查点
+        keys.addAll(activeKeys);
+        checkpoints.retainAll(keys);
+    }
+
+    /**
+     * @return 文件已经不存在或者正在被另一个跟踪器读取时返回null
+     */
+    private TailedFile track(Path path, boolean initial) throws IOException {
+        LogFileTailer tailer = new LogFileTailer(path, bufferSize, 0);
+        try {
+            if (!tailer.open() || !activeKeys.add(tailer.fileKey())) {
+                //轮转后的旧文件还没有被原来的跟踪器读完，下次扫描时再按照它的检查点开始跟踪
+                tailer.close();
+                return null;
+            }
+
+            String key = tailer.fileKey();
+            long size = tailer.size();
+            long offset = checkpoints.get(key);
+            if (offset == LogCheckpointStore.NO_CHECKPOINT) {
+                offset = initial ? size : 0;
+            } else if (offset > size || !checkpoints.matches(key, tailer.headHash(offset))) {
+                //文件在停止期间被截断，或者inode被新文件复用
+                log.info("Checkpoint {} does not belong to {}, reading from the beginning", offset, path);
+                offset = 0;
+            }
+            tailer.position(offset);
+            checkpoints.commit(key, path, offset, tailer.headHash(offset));
+            log.info("Tailing {} from offset {}", path, offset);
+            return new TailedFile(path, tailer, key);
+        } catch (IOException | RuntimeException e) {
+            tailer.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 提交一次读取任务，正在读取时只做标记，由当前的任务读完后再读一次
+     */
+    private void schedule(TailedFile tailed) {
+        tailed.pending = true;
+        if (running && tailed.scheduled.compareAndSet(false, true)) {
+            try {
+                readers.execute(() -> this.poll(tailed));
+            } catch (RejectedExecutionException e) {
+                tailed.scheduled.set(false);
+            }
+        }
+    }
+
+    private void poll(TailedFile tailed) {
+        LogFileTailer tailer = tailed.tailer;
+        do {
+            tailed.pending = false;
+            LogFileTailer.BatchListener batchListener = (offset, lines) -> {
+                listener.onBatch(tailed.path, offset, lines);
+                long checkpoint = tailer.checkpoint();
+                try {
+                    checkpoints.commit(tailer.fileKey(), tailed.path, checkpoint, tailer.headHash(checkpoint));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+            try {
+                tailer.poll(batchListener);
+                if (tailed.removed && running) {
+                    //文件已经不存在，不会再有新内容
+                    tailer.flush(batchListener);
+                }
+            } catch (IOException | RuntimeException e) {
+                log.error("Failed to read " + tailed.path, e);
+            }
+
+            //轮转之后释放旧文件，使它可以按照检查点被重新跟踪
+            String key = tailer.fileKey();
+            if (key != null && !key.equals(tailed.key)) {
+                activeKeys.add(key);
+                activeKeys.remove(tailed.key);
+                tailed.key = key;
+            }
+
+            if (tailed.removed) {
+                files.remove(tailed.path, tailed);
+                activeKeys.remove(tailed.key);
+                this.closeQuietly(tailed);
+                return;
+            }
+            tailed.scheduled.set(false);
+        } while (tailed.pending && running && tailed.scheduled.compareAndSet(false, true));
+    }
+
+    private void saveCheckpoints() {
+        try {
+            checkpoints.save();
+        } catch (IOException e) {
+            log.error("Failed to save checkpoints", e);
+        }
+    }
+
+    private void closeQuietly(TailedFile tailed) {
+        try {
+            tailed.tailer.close();
+        } catch (IOException e) {
+            log.warn("Failed to close " + tailed.path, e);
+        }
+    }
+
+    public void stop() {
+        running = false;
+        for (TailedFile tailed : files.values()) {
+            tailed.tailer.stop();
+        }
+    }
+
+    /**
+     * 等待正在读取的批次处理完成后释放所有文件，并保存最后的检查点，需要在{@link #run(FileBatchListener)}返回后调用
+     */
+    @Override
+    public void close() throws IOException {
+        this.stop();
+        readers.shutdown();
+        try {
+            if (!readers.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("Timed out waiting for log file readers to finish");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (TailedFile tailed : files.values()) {
+            this.closeQuietly(tailed);
+        }
+        files.clear();
+        if (watchService != null) {
+            watchService.close();
+        }
+        checkpoints.save();
+    }
+
+    /**
+     * 每个文件每次读取得到的一个批次的处理方法
+     */
+    @FunctionalInterface
+    public interface FileBatchListener {
+
+        /**
+         * 返回时认为该批次已经发送，文件的检查点会推进到该批次的结束位置
+         * @param file 日志文件
+         * @param offset 该批次在文件中的起始位置，从这里重新读取可以再次得到这些行
+         * @param lines 该批次中的所有完整行
+         */
+        void onBatch(Path file, long offset, List<String> lines);
+    }
+
+    private static final class TailedFile {
+        private final Path path;
+        private final LogFileTailer tailer;
+        /**
+         * 当前读取的文件的fileKey（只在读取线程中修改）
+         */
+        private volatile String key;
+        /**
+         * 是否已经提交了读取任务
+         */
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        /**
+         * 提交读取任务之后是否又有新的读取请求
+         */
+        private volatile boolean pending;
+        /**
+         * 文件是否已经不存在
+         */
+        private volatile boolean removed;
+
+        private TailedFile(Path path, LogFileTailer tailer, String key) {
+            this.path = path;
+            this.tailer = tailer;
+            this.key = key;
+        }
+    }
+}
@@ -1,35 +1,76 @@
 package cn.zifangsky.netty.exercise.chapter13;
 
+import cn.zifangsky.netty.exercise.utils.DateUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.CharsetUtil;
 import lombok.Getter;
 
 import java.net.InetSocketAddress;
 
 /**
  * 日志消息
+ * <p>延迟解码模式下（见{@link LogEventDecoder}），文件名和消息内容以数据包的retainedSlice()保存，接收时间以时间戳保存，
+ * 只有在第一次调用对应的getter方法时才会解码为字符串。该对象是引用计数的，释放时会同时释放持有的ByteBuf</p>
  *
  * @author zifangsky
  * @date 2020/10/27
  * @since 1.0.0
  */
-@Getter
-public final class LogEvent {
+public final class LogEvent extends AbstractReferenceCounted {
     public static final byte SEPARATOR = (byte) ':';
+    /**
+     * 批量数据包的第一个字节（单条消息的数据包以文件名开头，不会以该字节开头）
+     */
+    public static final byte BATCH_MARKER = 0;
+    /**
+     * 监听端发回的NACK数据包的第一个字节，见{@link LogEventSequenceTracker}
+     */
+    public static final byte NACK_MARKER = 1;
+    /**
+     * 没有序列号的消息（单条消息的数据包、不可靠模式下的批量数据包）
+     */
+    public static final long NO_SEQUENCE = -1;
     /**
      * 消息来源
      */
+    @Getter
     private final InetSocketAddress sourceAddress;
     /**
      * 日志文件名
      */
-    private final String filePath;
+    private String filePath;
+    private final ByteBuf filePathBytes;
     /**
      * 消息内容
      */
-    private final String msg;
+    private String msg;
+    private final ByteBuf msgBytes;
     /**
      * 接收消息的时间
      */
-    private final String receivedTime;
+    private String receivedTime;
+    /**
+     * 接收消息的时间戳（毫秒），为0时表示未知
+     */
+    @Getter
+    private final long receivedTimestamp;
+    /**
+     * 发送端的会话ID（每次启动时随机生成），与序列号一起标识一条消息
+     */
+    @Getter
+    private long sessionId;
+    /**
+     * 同一个会话中连续递增的序列号，为{@link #NO_SEQUENCE}时表示没有序列号
+     */
+    @Getter
+    private long sequence = NO_SEQUENCE;
+    /**
+     * 检查点：从日志文件的该位置重新读取可以再次得到这条消息（读取该消息时所在批次的起始位置）
+     */
+    @Getter
+    private long offset;
 
     public LogEvent(String filePath, String msg) {
         this(null, null, filePath, msg);
@@ -39,7 +80,157 @@ public final class LogEvent {
                     String filePath, String msg) {
         this.sourceAddress = sourceAddress;
         this.receivedTime = receivedTime;
+        this.receivedTimestamp = 0;
         this.filePath = filePath;
+        this.filePathBytes = null;
         this.msg = msg;
+        this.msgBytes = null;
+    }
+
+    /**
+     * 延迟解码的日志消息
+     * @param filePathBytes UTF-8编码的文件名，所有权转移给该对象
+     * @param msgBytes UTF-8编码的消息内容，所有权转移给该对象
+     */
+    public LogEvent(InetSocketAddress sourceAddress, long receivedTimestamp,
+                    ByteBuf filePathBytes, ByteBuf msgBytes) {
+        this.sourceAddress = sourceAddress;
+        this.receivedTimestamp = receivedTimestamp;
+        this.filePathBytes = filePathBytes;
+        this.msgBytes = msgBytes;
+    }
+
+    /**
+     * 设置序列号和检查点
+     */
+    LogEvent sequence(long sessionId, long sequence, long offset) {
+        this.sessionId = sessionId;
+        this.sequence = sequence;
+        this.offset = offset;
+        return this;
+    }
+
+    /**
+     * 延迟解码的消息持有的是接收缓冲区（例如一次recvmmsg读取的多个数据包）的切片，只要有一条消息还没有被释放，整个接收缓冲区就不能被回收。
+     * 如果内容只占底层缓冲区的一小部分，则复制到一个大小正好的缓冲区中
+     * @return 复制后的消息（原消息被释放），或者不需要复制时返回原消息
+     */
+    LogEvent compact(ByteBufAllocator alloc) {
+        if (filePathBytes == null || msgBytes == null) {
+            return this;
+        }
+        int pathLength = filePathBytes.readableBytes();
+        int msgLength = msgBytes.readableBytes();
+        int length = pathLength + msgLength;
+        if (Math.max(pinnedCapacity(filePathBytes), pinnedCapacity(msgBytes)) <= length * 2) {
+            return this;
+        }
+
+        ByteBuf copy = alloc.directBuffer(length, length);
+        try {
+            copy.writeBytes(filePathBytes, filePathBytes.readerIndex(), pathLength)
+                    .writeBytes(msgBytes, msgBytes.readerIndex(), msgLength);
+            LogEvent compacted = new LogEvent(sourceAddress, receivedTimestamp,
+                    copy.retainedSlice(0, pathLength), copy.retainedSlice(pathLength, msgLength));
+            compacted.sequence(sessionId, sequence, offset);
+            this.release();
+            return compacted;
+        } finally {
+            copy.release();
+        }
+    }
+
+    /**
+     * 该消息占用的内存字节数（延迟解码的消息按照持有的底层缓冲区的容量计算）
+     */
+    int retainedBytes() {
+        if (filePathBytes != null || msgBytes != null) {
+            return Math.max(pinnedCapacity(filePathBytes), pinnedCapacity(msgBytes));
+        }
+        return 2 * ((filePath != null ? filePath.length() : 0) + (msg != null ? msg.length() : 0));
+    }
+
+    private static int pinnedCapacity(ByteBuf buf) {
+        if (buf == null) {
+            return 0;
+        }
+        ByteBuf root = buf.unwrap();
+        return root != null ? root.capacity() : buf.capacity();
+    }
+
+    public boolean hasSequence() {
+        return sequence != NO_SEQUENCE;
+    }
+
+    public String getFilePath() {
+        if (filePath == null && filePathBytes != null) {
+            filePath = filePathBytes.toString(CharsetUtil.UTF_8);
+        }
+        return filePath;
+    }
+
+    public String getMsg() {
+        if (msg == null && msgBytes != null) {
+            msg = msgBytes.toString(CharsetUtil.UTF_8);
+        }
+        return msg;
+    }
+
+    public String getReceivedTime() {
+        if (receivedTime == null && receivedTimestamp != 0) {
+            //同一秒内接收的消息共享同一个字符串
+            receivedTime = DateUtils.formatMilliSecondTimestamp(receivedTimestamp);
+        }
+        return receivedTime;
+    }
+
+    /**
+     * UTF-8编码的文件名，不是延迟解码的消息时返回null
+     */
+    public ByteBuf filePathBytes() {
+        return filePathBytes;
+    }
+
+    /**
+     * UTF-8编码的消息内容，不是延迟解码的消息时返回null
+     */
+    public ByteBuf msgBytes() {
+        return msgBytes;
+    }
+
+    @Override
+    protected void deallocate() {
+        if (filePathBytes != null) {
+            filePathBytes.release();
+        }
+        if (msgBytes != null) {
+            msgBytes.release();
+        }
+    }
+
+    @Override
+    public LogEvent touch(Object hint) {
+        if (filePathBytes != null) {
+            filePathBytes.touch(hint);
+        }
+        if (msgBytes != null) {
+            msgBytes.touch(hint);
+        }
+        return this;
+    }
+
+    @Override
+    public LogEvent touch() {
+        return (LogEvent) super.touch();
+    }
+
+    @Override
+    public LogEvent retain() {
+        return (LogEvent) super.retain();
+    }
+
+    @Override
+    public LogEvent retain(int increment) {
+        return (LogEvent) super.retain(increment);
     }
-}
\ No newline at end of file
+}
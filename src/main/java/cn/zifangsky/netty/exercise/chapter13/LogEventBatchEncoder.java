@@ -0,0 +1,391 @@
+package cn.zifangsky.netty.exercise.chapter13;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.ChannelException;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.handler.codec.EncoderException;
+import io.netty.handler.codec.compression.Snappy;
+import io.netty.util.concurrent.PromiseCombiner;
+import io.netty.util.concurrent.PromiseNotifier;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 批量日志消息编码器
+ * <p>将多条日志消息打包到同一个DatagramPacket中，直到达到指定的数据包大小或者调用flush()。数据包格式为：</p>
+ * <pre>
+ * +------+-------+-----------+----------------------+--------+-----
+ * | 0x00 | flags | length(2) | filePath:msg (UTF-8) | length | ...
+ * +------+-------+-----------+----------------------+--------+-----
+ * </pre>
+ * <p>带序列号的消息（见{@link LogEventReplayHandler}）会设置flags中的{@link #FLAG_SEQUENCED}，
+ * 并在flags之后写入会话ID、第一条记录的序列号和检查点（各8字节），同一个数据包中的记录的序列号是连续的</p>
+ * <p>压缩模式下设置flags中的{@link #FLAG_COMPRESSED}，头部之后是Snappy压缩的数据块，解压后先是该批次的文件名字典，
+ * 然后是只引用字典下标的记录，因此重复的文件名只会出现一次。压缩后的大小事先未知，编码器根据之前的压缩率估计每个批次可以容纳的原始字节数，
+ * 压缩后超过数据包大小时将该批次拆分为多个数据包：</p>
+ * <pre>
+ * +-------+----------------+----------------+-----+-----------+---------+-----------+-----
+ * | count | pathLength(2)  | filePath       | ... | length(2) | pathIdx | msg       | ...
+ * +-------+----------------+----------------+-----+-----------+---------+-----------+-----
+ * </pre>
+ * <p>一次flush()产生的多个数据包在Epoll传输下会通过sendmmsg一次性发送</p>
+ *
+ * @author zifangsky
+ * @date 2020/11/13
+ * @since 1.0.0
+ */
+public class LogEventBatchEncoder extends ChannelOutboundHandlerAdapter {
+    /**
+     * 默认的数据包大小（以太网MTU 1500 - IPv4头部20 - UDP头部8）
+     */
+    public static final int DEFAULT_MAX_PACKET_SIZE = 1472;
+    /**
+     * 批量数据包头部的长度：标识 + flags
+     */
+    static final int HEADER_LENGTH = 2;
+    /**
+     * flags：数据包带有序列号头部
+     */
+    static final int FLAG_SEQUENCED = 0x01;
+    /**
+     * flags：头部之后的内容是Snappy压缩的字典和记录
+     */
+    static final int FLAG_COMPRESSED = 0x02;
+    /**
+     * 序列号头部的长度：会话ID + 第一条记录的序列号 + 检查点
+     */
+    static final int SEQUENCE_HEADER_LENGTH = 24;
+    /**
+     * 每条记录的长度字段的长度
+     */
+    static final int LENGTH_FIELD_LENGTH = 2;
+    /**
+     * 压缩模式下每个批次的字典中最多的文件名个数
+     */
+    static final int MAX_DICTIONARY_SIZE = 0xFF;
+    /**
+     * 压缩模式下每个数据包解压后（字典 + 记录）的最大长度，解码器会拒绝超过该长度的数据包。
+     * Netty的Snappy编码器的哈希表只保存16位的偏移量，超过该长度的数据块可能无法压缩
+     */
+    static final int MAX_DECOMPRESSED_LENGTH = Short.MAX_VALUE;
+    private static final int MAX_RECORD_LENGTH = 0xFFFF;
+    /**
+     * 压缩模式下每个批次最多累积的原始字节数（maxPacketSize的倍数，同时不超过{@link #MAX_DECOMPRESSED_LENGTH}）
+     */
+    private static final int MAX_RAW_BATCH_FACTOR = 16;
+
+    private final InetSocketAddress remoteAddress;
+    private final int maxPacketSize;
+    private final boolean compress;
+    /**
+     * 当前正在填充的数据包
+     */
+    private ByteBuf batch;
+    /**
+     * 当前数据包中的消息对应的ChannelPromise
+     */
+    private final List<ChannelPromise> promises = new ArrayList<>();
+    /**
+     * 当前数据包是否带有序列号，以及会话ID、第一条记录的序列号、下一条记录应有的序列号和检查点
+     */
+    private boolean batchSequenced;
+    private long batchSessionId;
+    private long batchFirstSequence;
+    private long batchNextSequence;
+    private long batchOffset;
+
+    /**
+     * 压缩模式下当前批次的所有记录（未压缩）、每条记录的结束位置以及文件名字典
+     */
+    private ByteBuf records;
+    private int[] recordEnds;
+    private int recordCount;
+    private final List<String> paths;
+    /**
+     * 字典中所有文件名写出后的字节数
+     */
+    private int dictionaryLength;
+    private final Snappy snappy;
+    /**
+     * 最近的压缩率（压缩后的字节数 / 原始字节数）
+     */
+    private double compressionRatio = 0.5;
+
+    public LogEventBatchEncoder(InetSocketAddress remoteAddress) {
+        this(remoteAddress, DEFAULT_MAX_PACKET_SIZE);
+    }
+
+    public LogEventBatchEncoder(InetSocketAddress remoteAddress, int maxPacketSize) {
+        this(remoteAddress, maxPacketSize, false);
+    }
+
+    /**
+     * @param remoteAddress 目标地址
+     * @param maxPacketSize 每个数据包的最大字节数（单条消息超过该大小时单独作为一个数据包发送）
+     * @param compress 是否使用文件名字典和Snappy压缩
+     */
+    public LogEventBatchEncoder(InetSocketAddress remoteAddress, int maxPacketSize, boolean compress) {
+        if (maxPacketSize <= HEADER_LENGTH + LENGTH_FIELD_LENGTH) {
+            throw new IllegalArgumentException("maxPacketSize is too small: " + maxPacketSize);
+        }
+        this.remoteAddress = remoteAddress;
+        this.maxPacketSize = maxPacketSize;
+        this.compress = compress;
+        this.recordEnds = compress ? new int[64] : null;
+        this.paths = compress ? new ArrayList<>() : null;
+        this.snappy = compress ? new Snappy() : null;
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (!(msg instanceof LogEvent)) {
+            ctx.write(msg, promise);
+            return;
+        }
+
+        LogEvent event = (LogEvent) msg;
+        try {
+            if (compress) {
+                this.encodeCompressed(ctx, event, promise);
+            } else {
+                this.encode(ctx, event, promise);
+            }
+        } finally {
+            event.release();
+        }
+    }
+
+    private void encode(ChannelHandlerContext ctx, LogEvent event, ChannelPromise promise) {
+        int pathLength = ByteBufUtil.utf8Bytes(event.getFilePath());
+        int msgLength = ByteBufUtil.utf8Bytes(event.getMsg());
+        int recordLength = pathLength + 1 + msgLength;
+        if (recordLength > MAX_RECORD_LENGTH) {
+            promise.setFailure(new EncoderException("Log event is too large: " + recordLength + " bytes"));
+            return;
+        }
+
+        //1. 当前数据包放不下这条消息，或者序列号不连续时先将其发送出去
+        if (batch != null && (batch.writableBytes() < LENGTH_FIELD_LENGTH + recordLength || !this.isContiguous(event))) {
+            this.writeBatch(ctx);
+        }
+        if (batch == null) {
+            int capacity = Math.max(maxPacketSize, this.headerLength(event.hasSequence()) + LENGTH_FIELD_LENGTH + recordLength);
+            batch = ctx.alloc().directBuffer(capacity, capacity);
+            this.startBatch(event);
+            this.writeHeader(batch, 0, 0);
+        }
+
+        //2. 写入一条记录（按照实际长度预留空间，数据包的容量是固定的）
+        batch.writeShort(recordLength);
+        ByteBufUtil.reserveAndWriteUtf8(batch, event.getFilePath(), pathLength);
+        batch.writeByte(LogEvent.SEPARATOR);
+        ByteBufUtil.reserveAndWriteUtf8(batch, event.getMsg(), msgLength);
+        this.addRecord(event, promise);
+    }
+
+    private void encodeCompressed(ChannelHandlerContext ctx, LogEvent event, ChannelPromise promise) {
+        String path = event.getFilePath();
+        int pathLength = ByteBufUtil.utf8Bytes(path);
+        int msgLength = ByteBufUtil.utf8Bytes(event.getMsg());
+        //只有这一条消息的批次也不能超过解压后的最大长度
+        if (1 + LENGTH_FIELD_LENGTH + pathLength + LENGTH_FIELD_LENGTH + 1 + msgLength > MAX_DECOMPRESSED_LENGTH) {
+            promise.setFailure(new EncoderException("Log event is too large: " + msgLength + " bytes"));
+            return;
+        }
+
+        //1. 达到估计的原始字节数、加入这条消息后解压长度会超过上限、字典已满，或者序列号不连续时先压缩并发送当前批次
+        int pathIndex = records == null ? -1 : paths.indexOf(path);
+        if (records != null) {
+            int rawLength = 1 + dictionaryLength + (pathIndex < 0 ? LENGTH_FIELD_LENGTH + pathLength : 0)
+                    + records.readableBytes() + LENGTH_FIELD_LENGTH + 1 + msgLength;
+            if (records.readableBytes() >= this.rawBatchBudget(event.hasSequence())
+                    || rawLength > MAX_DECOMPRESSED_LENGTH
+                    || (pathIndex < 0 && paths.size() == MAX_DICTIONARY_SIZE) || !this.isContiguous(event)) {
+                this.writeBatch(ctx);
+                pathIndex = -1;
+            }
+        }
+        if (records == null) {
+            records = ctx.alloc().buffer(maxPacketSize * 2);
+            this.startBatch(event);
+        }
+        if (pathIndex < 0) {
+            paths.add(path);
+            dictionaryLength += LENGTH_FIELD_LENGTH + pathLength;
+            pathIndex = paths.size() - 1;
+        }
+
+        //2. 写入一条引用字典下标的记录
+        records.writeShort(msgLength);
+        records.writeByte(pathIndex);
+        ByteBufUtil.reserveAndWriteUtf8(records, event.getMsg(), msgLength);
+        if (recordCount == recordEnds.length) {
+            recordEnds = Arrays.copyOf(recordEnds, recordCount << 1);
+        }
+        recordEnds[recordCount++] = records.writerIndex();
+        this.addRecord(event, promise);
+    }
+
+    private boolean isContiguous(LogEvent event) {
+        if (batchSequenced != event.hasSequence()) {
+            return false;
+        }
+        return !batchSequenced || (batchSessionId == event.getSessionId() && batchNextSequence == event.getSequence());
+    }
+
+    private void startBatch(LogEvent event) {
+        batchSequenced = event.hasSequence();
+        batchSessionId = event.getSessionId();
+        batchFirstSequence = event.getSequence();
+        batchOffset = event.getOffset();
+    }
+
+    private void addRecord(LogEvent event, ChannelPromise promise) {
+        batchNextSequence = event.getSequence() + 1;
+        if (!promise.isVoid()) {
+            promises.add(promise);
+        }
+    }
+
+    private int headerLength(boolean sequenced) {
+        return sequenced ? HEADER_LENGTH + SEQUENCE_HEADER_LENGTH : HEADER_LENGTH;
+    }
+
+    /**
+     * 写入数据包头部
+     * @param firstRecord 该数据包中的第一条记录在当前批次中的下标
+     */
+    private void writeHeader(ByteBuf packet, int flags, int firstRecord) {
+        packet.writeByte(LogEvent.BATCH_MARKER);
+        packet.writeByte(batchSequenced ? flags | FLAG_SEQUENCED : flags);
+        if (batchSequenced) {
+            packet.writeLong(batchSessionId);
+            packet.writeLong(batchFirstSequence + firstRecord);
+            packet.writeLong(batchOffset);
+        }
+    }
+
+    /**
+     * 根据之前的压缩率估计一个数据包可以容纳的原始字节数
+     */
+    private int rawBatchBudget(boolean sequenced) {
+        double budget = (maxPacketSize - this.headerLength(sequenced)) / compressionRatio;
+        return (int) Math.min(budget, Math.min((double) maxPacketSize * MAX_RAW_BATCH_FACTOR, MAX_DECOMPRESSED_LENGTH));
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        if (batch != null || records != null) {
+            this.writeBatch(ctx);
+        }
+        ctx.flush();
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        if (batch != null) {
+            batch.release();
+            batch = null;
+        }
+        if (records != null) {
+            records.release();
+            records = null;
+            recordCount = 0;
+            paths.clear();
+            dictionaryLength = 0;
+        }
+        if (!promises.isEmpty()) {
+            ChannelException cause = new ChannelException("Handler removed before the batch was flushed");
+            for (ChannelPromise promise : promises) {
+                promise.tryFailure(cause);
+            }
+            promises.clear();
+        }
+    }
+
+    private void writeBatch(ChannelHandlerContext ctx) {
+        ChannelPromise promise;
+        if (promises.isEmpty()) {
+            promise = ctx.voidPromise();
+        } else {
+            promise = ctx.newPromise();
+            promise.addListener(new PromiseNotifier<>(promises.toArray(new ChannelPromise[0])));
+            promises.clear();
+        }
+
+        if (!compress) {
+            DatagramPacket packet = new DatagramPacket(batch, remoteAddress);
+            batch = null;
+            ctx.write(packet, promise);
+            return;
+        }
+
+        try {
+            PromiseCombiner combiner = promise.isVoid() ? null : new PromiseCombiner(ctx.executor());
+            this.writeCompressed(ctx, 0, recordCount, combiner);
+            if (combiner != null) {
+                combiner.finish(promise);
+            }
+        } finally {
+            records.release();
+            records = null;
+            recordCount = 0;
+            paths.clear();
+            dictionaryLength = 0;
+        }
+    }
+
+    /**
+     * 压缩并写出当前批次中[from, to)之间的记录，压缩后超过数据包大小时拆分为两半
+     */
+    private void writeCompressed(ChannelHandlerContext ctx, int from, int to, PromiseCombiner combiner) {
+        int start = from == 0 ? 0 : recordEnds[from - 1];
+        int end = recordEnds[to - 1];
+
+        //1. 字典 + 记录
+        ByteBuf raw = ctx.alloc().buffer(end - start + paths.size() * 32);
+        ByteBuf packet;
+        int rawLength;
+        try {
+            raw.writeByte(paths.size());
+            for (String path : paths) {
+                int lengthIndex = raw.writerIndex();
+                raw.writeShort(0);
+                raw.setShort(lengthIndex, ByteBufUtil.writeUtf8(raw, path));
+            }
+            raw.writeBytes(records, start, end - start);
+            rawLength = raw.readableBytes();
+
+            //2. 头部（不压缩） + 压缩后的数据块，预留Snappy最坏情况下的大小
+            packet = ctx.alloc().directBuffer(this.headerLength(batchSequenced) + 32 + rawLength + rawLength / 6);
+            this.writeHeader(packet, FLAG_COMPRESSED, from);
+            snappy.encode(raw, packet, rawLength);
+        } finally {
+            raw.release();
+        }
+
+        int compressedLength = packet.readableBytes() - this.headerLength(batchSequenced);
+        compressionRatio = compressionRatio * 0.75 + (double) compressedLength / rawLength * 0.25;
+        if (packet.readableBytes() > maxPacketSize && to - from > 1) {
+            packet.release();
+            int mid = (from + to) >>> 1;
+            this.writeCompressed(ctx, from, mid, combiner);
+            this.writeCompressed(ctx, mid, to, combiner);
+            return;
+        }
+
+        DatagramPacket datagram = new DatagramPacket(packet, remoteAddress);
+        if (combiner == null) {
+            ctx.write(datagram, ctx.voidPromise());
+        } else {
+            combiner.add(ctx.write(datagram));
+        }
+    }
+}
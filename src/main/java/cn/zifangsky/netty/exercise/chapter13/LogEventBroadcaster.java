@@ -1,82 +1,180 @@
 package cn.zifangsky.netty.exercise.chapter13;
 
+import cn.zifangsky.netty.exercise.utils.TransportType;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPromise;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioDatagramChannel;
-import io.netty.util.CharsetUtil;
+import lombok.extern.slf4j.Slf4j;
 
 import java.io.File;
-import java.io.RandomAccessFile;
 import java.net.InetSocketAddress;
-import java.util.concurrent.TimeUnit;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
 
 /**
  * 引导服务端
+ * <p>可靠模式下（replayCapacity大于0）每条日志都带有序列号和检查点，监听端发现缺口后发回NACK，
+ * 由{@link LogEventReplayHandler}从有界的重传缓冲区中重新发送</p>
+ * <p>日志文件由{@link LogDirectoryTailer}在多个读取线程中读取，每个批次发送之后才推进该文件的检查点</p>
  *
  * @author zifangsky
  * @date 2020/10/27
  * @since 1.0.0
  */
+@Slf4j
 public class LogEventBroadcaster {
     private final EventLoopGroup group;
     private final Bootstrap bootstrap;
-    private final File file;
+    private final LogDirectoryTailer tailer;
+    /**
+     * 可靠模式下的重传处理器，否则为null
+     */
+    private final LogEventReplayHandler replayHandler;
 
     public LogEventBroadcaster(InetSocketAddress address, File file) {
-        this.group = new NioEventLoopGroup();
+        this(address, file, true, LogEventBatchEncoder.DEFAULT_MAX_PACKET_SIZE);
+    }
+
+    /**
+     * @param address 广播地址或者监听端的单播地址
+     * @param file 日志文件
+     * @param watch 是否使用WatchService监听文件变化
+     * @param maxPacketSize 批量数据包的最大字节数，为0时每条日志单独发送一个数据包
+     */
+    public LogEventBroadcaster(InetSocketAddress address, File file, boolean watch, int maxPacketSize) {
+        this(address, file, watch, maxPacketSize, 0);
+    }
+
+    /**
+     * @param address 广播地址或者监听端的单播地址
+     * @param file 日志文件
+     * @param watch 是否使用WatchService监听文件变化
+     * @param maxPacketSize 批量数据包的最大字节数，为0时每条日志单独发送一个数据包
+     * @param replayCapacity 重传缓冲区保存的日志条数，为0时不分配序列号也不重传
+     */
+    public LogEventBroadcaster(InetSocketAddress address, File file, boolean watch, int maxPacketSize, int replayCapacity) {
+        this(address, file, watch, maxPacketSize, replayCapacity, false);
+    }
+
+    /**
+     * @param address 广播地址或者监听端的单播地址
+     * @param file 日志文件
+     * @param watch 是否使用WatchService监听文件变化
+     * @param maxPacketSize 批量数据包的最大字节数，为0时每条日志单独发送一个数据包
+     * @param replayCapacity 重传缓冲区保存的日志条数，为0时不分配序列号也不重传
+     * @param compress 是否压缩批量数据包
+     */
+    public LogEventBroadcaster(InetSocketAddress address, File file, boolean watch, int maxPacketSize,
+                               int replayCapacity, boolean compress) {
+        this(address, LogDirectoryTailer.forFile(file, watch), maxPacketSize, replayCapacity, compress);
+    }
+
+    /**
+     * @param address 广播地址或者监听端的单播地址
+     * @param tailer 需要发送的日志文件，由广播端负责关闭
+     * @param maxPacketSize 批量数据包的最大字节数，为0时每条日志单独发送一个数据包
+     * @param replayCapacity 重传缓冲区保存的日志条数，为0时不分配序列号也不重传
+     * @param compress 是否压缩批量数据包
+     */
+    public LogEventBroadcaster(InetSocketAddress address, LogDirectoryTailer tailer, int maxPacketSize,
+                               int replayCapacity, boolean compress) {
+        if (compress && maxPacketSize <= 0) {
+            throw new IllegalArgumentException("Compression requires batch packets (maxPacketSize > 0)");
+        }
+        if (replayCapacity > 0 && maxPacketSize <= 0) {
+            throw new IllegalArgumentException("Sequence numbers require batch packets (maxPacketSize > 0)");
+        }
+        this.replayHandler = replayCapacity > 0 ? new LogEventReplayHandler(replayCapacity) : null;
+
+        TransportType transport = TransportType.preferred();
+        this.group = transport.newEventLoopGroup();
         this.bootstrap = new Bootstrap();
         this.bootstrap.group(this.group)
-                //引导该NioDatagramChannel（无连接的）
-                .channel(NioDatagramChannel.class)
+                //引导该DatagramChannel（无连接的）
+                .channel(transport.datagramChannelClass())
                 //设置SO_BROADCAST套接字选项
                 .option(ChannelOption.SO_BROADCAST, true)
-                .handler(new LogEventEncoder(address));
+                .handler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) throws Exception {
+                        ch.pipeline().addLast(maxPacketSize > 0
+                                ? new LogEventBatchEncoder(address, maxPacketSize, compress) : new LogEventEncoder(address));
+                        if (replayHandler != null) {
+                            //接收监听端发回的NACK，重传的消息经过前面的编码器写出
+                            ch.pipeline().addLast(replayHandler);
+                        }
+                    }
+                });
 
-        this.file = file;
+        this.tailer = tailer;
     }
 
     public void run() throws Exception {
         //绑定Channel
         Channel ch = bootstrap.bind(0).sync().channel();
 
-        long pointer = 0;
-        for (;;) {
-            long len = file.length();
-            if (len < pointer) {
-                // file was reset
-                pointer = len;
-            } else if (len > pointer) {
-                // Content was added
-                RandomAccessFile raf = new RandomAccessFile(file, "r");
-                raf.seek(pointer);
-                String line;
-                while ((line = raf.readLine()) != null) {
-                    ch.writeAndFlush(
-                            new LogEvent(null, null, file.getName(),
-                                    new String(line.getBytes(CharsetUtil.ISO_8859_1), CharsetUtil.UTF_8))
-                    );
+        try (LogDirectoryTailer tailer = this.tailer) {
+            tailer.run((file, offset, lines) -> this.send(ch, file.getFileName().toString(), offset, lines));
+        }
+    }
+
+    /**
+     * 在EventLoop中一次性写出一个批次的所有日志，最后只冲刷一次
+     * <p>等待该批次写出之后才返回（之后该文件的检查点才会推进），因此每个读取线程同时最多只有一个批次在发送中，
+     * 避免读取速度超过发送速度时任务队列无限增长</p>
+     */
+    private void send(Channel ch, String fileName, long offset, List<String> lines) {
+        ChannelPromise promise = ch.newPromise();
+        ch.eventLoop().execute(() -> {
+            for (String line : lines) {
+                LogEvent event = new LogEvent(fileName, line);
+                if (replayHandler != null) {
+                    replayHandler.record(event, offset);
                 }
-                pointer = raf.getFilePointer();
-                raf.close();
+                ch.write(event, ch.voidPromise());
             }
-
-            TimeUnit.SECONDS.sleep(5);
-        }
+            ch.flush();
+            promise.setSuccess();
+        });
+        promise.syncUninterruptibly();
     }
 
     public void stop() {
+        tailer.stop();
         group.shutdownGracefully();
+        if (replayHandler != null) {
+            log.info("retransmitted={}, unrecoverable={}",
+                    replayHandler.retransmittedCount(), replayHandler.unrecoverableCount());
+        }
     }
 
     public static void main(String[] args) throws Exception {
-        if (args.length != 2) {
-            throw new IllegalArgumentException();
+        if (args.length < 2 || args.length > 8) {
+            throw new IllegalArgumentException("Usage: LogEventBroadcaster [host:]<port> <file|glob> [watch] [maxPacketSize] "
+                    + "[replayCapacity] [compress] [checkpointFile] [readerThreads]");
         }
-        LogEventBroadcaster broadcaster = new LogEventBroadcaster(
-                new InetSocketAddress("255.255.255.255", Integer.parseInt(args[0])), new File(args[1]));
+        //默认发送到255.255.255.255；指定host时单播到监听端，监听端才可以使用多个SO_REUSEPORT接收Channel
+        int colon = args[0].lastIndexOf(':');
+        InetSocketAddress address = colon >= 0
+                ? new InetSocketAddress(args[0].substring(0, colon), Integer.parseInt(args[0].substring(colon + 1)))
+                : new InetSocketAddress("255.255.255.255", Integer.parseInt(args[0]));
+        //最后一级是文件名的glob模式，例如“/var/log/app/*.log*”
+        Path pattern = Paths.get(args[1]).toAbsolutePath();
+        boolean watch = args.length < 3 || Boolean.parseBoolean(args[2]);
+        int maxPacketSize = args.length >= 4 ? Integer.parseInt(args[3]) : LogEventBatchEncoder.DEFAULT_MAX_PACKET_SIZE;
+        int replayCapacity = args.length >= 5 ? Integer.parseInt(args[4]) : 0;
+        boolean compress = args.length >= 6 && Boolean.parseBoolean(args[5]);
+        LogCheckpointStore checkpoints = args.length >= 7
+                ? new LogCheckpointStore(Paths.get(args[6])) : new LogCheckpointStore();
+        int readerThreads = args.length == 8 ? Integer.parseInt(args[7]) : LogDirectoryTailer.DEFAULT_READER_THREADS;
+
+        LogDirectoryTailer tailer = new LogDirectoryTailer(pattern.getParent(), pattern.getFileName().toString(),
+                checkpoints, readerThreads, watch);
+        LogEventBroadcaster broadcaster = new LogEventBroadcaster(address, tailer, maxPacketSize, replayCapacity, compress);
 
         try {
             broadcaster.run();
@@ -4,35 +4,187 @@ import cn.zifangsky.netty.exercise.utils.DateUtils;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.socket.DatagramPacket;
+import io.netty.handler.codec.CorruptedFrameException;
 import io.netty.handler.codec.MessageToMessageDecoder;
+import io.netty.handler.codec.compression.DecompressionException;
+import io.netty.handler.codec.compression.Snappy;
 import io.netty.util.CharsetUtil;
 
 import java.util.List;
 
 /**
  * 日志消息解码器
+ * <p>同时支持单条消息的数据包和{@link LogEventBatchEncoder}产生的批量数据包</p>
+ * <p>延迟解码模式下，LogEvent只持有数据包的retainedSlice()和接收时间戳，不会为每条消息创建字符串</p>
+ * <p>压缩的批量数据包先解压到一个临时缓冲区中，同一个数据包中引用同一个文件名的消息共享字典中的文件名</p>
  *
  * @author zifangsky
  * @date 2020/10/27
  * @since 1.0.0
  */
 public class LogEventDecoder extends MessageToMessageDecoder<DatagramPacket> {
+    /**
+     * 是否延迟解码
+     */
+    private final boolean lazy;
+    private final Snappy snappy = new Snappy();
+
+    public LogEventDecoder() {
+        this(false);
+    }
+
+    public LogEventDecoder(boolean lazy) {
+        this.lazy = lazy;
+    }
 
     @Override
     protected void decode(ChannelHandlerContext ctx, DatagramPacket datagramPacket, List<Object> out) throws Exception {
         //获取对DatagramPacket中的数据（ByteBuf）的引用
         ByteBuf data = datagramPacket.content();
+        long receivedTimestamp = System.currentTimeMillis();
+        String receivedTime = lazy ? null : DateUtils.nowStr();
+
+        if (data.isReadable() && data.getByte(data.readerIndex()) == LogEvent.BATCH_MARKER) {
+            //批量数据包：跳过标识，读取flags和可选的序列号头部，然后依次读取每条带长度前缀的记录
+            data.skipBytes(1);
+            int flags = data.readUnsignedByte();
+            boolean sequenced = (flags & LogEventBatchEncoder.FLAG_SEQUENCED) != 0;
+            long sessionId = 0;
+            long sequence = LogEvent.NO_SEQUENCE;
+            long offset = 0;
+            if (sequenced) {
+                if (data.readableBytes() < LogEventBatchEncoder.SEQUENCE_HEADER_LENGTH) {
+                    throw new CorruptedFrameException("Truncated sequence header");
+                }
+                sessionId = data.readLong();
+                sequence = data.readLong();
+                offset = data.readLong();
+            }
+            if ((flags & LogEventBatchEncoder.FLAG_COMPRESSED) != 0) {
+                this.decodeCompressed(ctx, datagramPacket, receivedTimestamp, receivedTime,
+                        sequenced, sessionId, sequence, offset, out);
+                return;
+            }
+
+            while (data.readableBytes() >= LogEventBatchEncoder.LENGTH_FIELD_LENGTH) {
+                int length = data.readUnsignedShort();
+                if (length > data.readableBytes()) {
+                    throw new CorruptedFrameException("Record length " + length + " exceeds the remaining "
+                            + data.readableBytes() + " bytes");
+                }
+                LogEvent event = this.decodeRecord(datagramPacket, receivedTimestamp, receivedTime, data.readerIndex(), length);
+                if (sequenced) {
+                    event.sequence(sessionId, sequence++, offset);
+                }
+                out.add(event);
+                data.skipBytes(length);
+            }
+        } else {
+            out.add(this.decodeRecord(datagramPacket, receivedTimestamp, receivedTime, data.readerIndex(), data.readableBytes()));
+            data.skipBytes(data.readableBytes());
+        }
+    }
+
+    /**
+     * 解压并解析压缩的批量数据包：文件名字典 + 引用字典下标的记录
+     */
+    private void decodeCompressed(ChannelHandlerContext ctx, DatagramPacket datagramPacket, long receivedTimestamp,
+                                  String receivedTime, boolean sequenced, long sessionId, long sequence, long offset,
+                                  List<Object> out) {
+        ByteBuf data = datagramPacket.content();
+        int length = readPreamble(data);
+        if (length <= 0 || length > LogEventBatchEncoder.MAX_DECOMPRESSED_LENGTH) {
+            throw new CorruptedFrameException("Invalid decompressed length: " + length);
+        }
+
+        ByteBuf raw = ctx.alloc().buffer(length, length);
+        try {
+            snappy.reset();
+            snappy.decode(data, raw);
+            if (raw.readableBytes() != length) {
+                throw new CorruptedFrameException("Truncated compressed batch");
+            }
+
+            //1. 文件名字典：记录每个文件名的位置，立即解码模式下每个文件名只创建一次字符串
+            int count = raw.readUnsignedByte();
+            int[] pathIndexes = new int[count];
+            int[] pathLengths = new int[count];
+            String[] pathStrings = lazy ? null : new String[count];
+            for (int i = 0; i < count; i++) {
+                pathLengths[i] = raw.readUnsignedShort();
+                pathIndexes[i] = raw.readerIndex();
+                if (!lazy) {
+                    pathStrings[i] = raw.toString(pathIndexes[i], pathLengths[i], CharsetUtil.UTF_8);
+                }
+                raw.skipBytes(pathLengths[i]);
+            }
+
+            //2. 记录：length(2) + 文件名下标(1) + 消息内容
+            while (raw.readableBytes() >= LogEventBatchEncoder.LENGTH_FIELD_LENGTH + 1) {
+                int msgLength = raw.readUnsignedShort();
+                int pathIndex = raw.readUnsignedByte();
+                if (pathIndex >= count || msgLength > raw.readableBytes()) {
+                    throw new CorruptedFrameException("Invalid compressed record");
+                }
+                LogEvent event;
+                if (lazy) {
+                    event = new LogEvent(datagramPacket.sender(), receivedTimestamp,
+                            raw.retainedSlice(pathIndexes[pathIndex], pathLengths[pathIndex]),
+                            raw.retainedSlice(raw.readerIndex(), msgLength));
+                } else {
+                    event = new LogEvent(datagramPacket.sender(), receivedTime, pathStrings[pathIndex],
+                            raw.toString(raw.readerIndex(), msgLength, CharsetUtil.UTF_8));
+                }
+                if (sequenced) {
+                    event.sequence(sessionId, sequence++, offset);
+                }
+                out.add(event);
+                raw.skipBytes(msgLength);
+            }
+        } catch (DecompressionException | IndexOutOfBoundsException e) {
+            throw new CorruptedFrameException("Invalid compressed batch", e);
+        } finally {
+            raw.release();
+        }
+    }
+
+    /**
+     * 读取（但不消费）Snappy数据块开头的varint格式的原始长度
+     */
+    private static int readPreamble(ByteBuf data) {
+        int length = 0;
+        for (int i = 0; i < 5 && data.readableBytes() > i; i++) {
+            int b = data.getUnsignedByte(data.readerIndex() + i);
+            length |= (b & 0x7F) << (7 * i);
+            if ((b & 0x80) == 0) {
+                return length;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 解析一条“filePath:msg”格式的记录
+     */
+    private LogEvent decodeRecord(DatagramPacket datagramPacket, long receivedTimestamp, String receivedTime,
+                                  int index, int length) {
+        ByteBuf data = datagramPacket.content();
         //获取SEPARATOR的索引位置
-        int idx = data.indexOf(0, data.readableBytes(), LogEvent.SEPARATOR);
+        int idx = data.indexOf(index, index + length, LogEvent.SEPARATOR);
+        if (idx < 0) {
+            throw new CorruptedFrameException("Missing separator in log record");
+        }
+        if (lazy) {
+            return new LogEvent(datagramPacket.sender(), receivedTimestamp,
+                    data.retainedSlice(index, idx - index), data.retainedSlice(idx + 1, index + length - idx - 1));
+        }
+
         //获取文件路径
-        String filePath = data.slice(0, idx).toString(CharsetUtil.UTF_8);
-        //重新设置readerIndex
-        data.readerIndex(idx + 1);
+        String filePath = data.toString(index, idx - index, CharsetUtil.UTF_8);
         //获取日志信息
-        String logMsg = data.slice(idx + 1, data.readableBytes()).toString(CharsetUtil.UTF_8);
+        String logMsg = data.toString(idx + 1, index + length - idx - 1, CharsetUtil.UTF_8);
 
         //创建一个新的LogEvent
-        LogEvent logEvent = new LogEvent(datagramPacket.sender(), DateUtils.nowStr(), filePath, logMsg);
-        out.add(logEvent);
+        return new LogEvent(datagramPacket.sender(), receivedTime, filePath, logMsg);
     }
-}
\ No newline at end of file
+}
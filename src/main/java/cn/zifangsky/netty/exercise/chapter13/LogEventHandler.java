@@ -1,30 +1,31 @@
 package cn.zifangsky.netty.exercise.chapter13;
 
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * 对解析后的日志信息的处理
+ * <p>EventLoop中只将消息交给{@link AsyncLogEventWriter}，格式化和输出都在写线程中完成</p>
  *
  * @author zifangsky
  * @date 2020/10/27
  * @since 1.0.0
  */
 @Slf4j
+@ChannelHandler.Sharable
 public class LogEventHandler extends SimpleChannelInboundHandler<LogEvent> {
+    private final AsyncLogEventWriter writer;
+
+    public LogEventHandler(AsyncLogEventWriter writer) {
+        this.writer = writer;
+    }
 
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, LogEvent event) throws Exception {
-        StringBuilder builder = new StringBuilder();
-        builder.append(event.getReceivedTime());
-        builder.append(" [");
-        builder.append(event.getSourceAddress().toString());
-        builder.append("] [");
-        builder.append(event.getFilePath());
-        builder.append("] : ");
-        builder.append(event.getMsg());
-        System.out.println(builder.toString());
+        //SimpleChannelInboundHandler会在返回后释放消息，因此需要为写线程增加一次引用
+        writer.offer(event.retain());
     }
 
     @Override
@@ -1,65 +1,237 @@
 package cn.zifangsky.netty.exercise.chapter13;
 
+import cn.zifangsky.netty.exercise.utils.TransportType;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.util.NettyRuntime;
+import lombok.extern.slf4j.Slf4j;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 日志消息监听器
+ * <p>使用Epoll传输时可以通过SO_REUSEPORT将多个DatagramChannel绑定到同一个端口（每个EventLoop一个），
+ * 由内核按照来源地址将数据包分散到各个Channel上，每个Channel有自己的解码器，从而利用多个CPU核心接收数据。
+ * 同时Epoll传输会通过recvmmsg一次读取多个数据包</p>
+ * <p>注意：内核会把广播数据包复制给SO_REUSEPORT组中的每一个Socket，因此只有发送端以单播方式发送到本机时（见{@link LogEventBroadcaster#main(String[])}中的host参数），
+ * 才能使用多个接收Channel，否则每条日志都会被接收多次。没有声明单播时只会绑定一个Channel</p>
+ * <p>带序列号的消息经过{@link LogEventSequenceTracker}去重和检测缺口，并定时向发送端请求重传缺失的消息</p>
  *
  * @author zifangsky
  * @date 2020/10/27
  * @since 1.0.0
  */
+@Slf4j
 public class LogEventMonitor {
+    /**
+     * 默认的Socket接收缓冲区大小（实际大小受限于内核参数net.core.rmem_max）
+     */
+    public static final int DEFAULT_RECEIVE_BUFFER_SIZE = 4 * 1024 * 1024;
+    /**
+     * 单个数据包的最大长度，需要大于发送端的maxPacketSize
+     */
+    public static final int MAX_DATAGRAM_SIZE = 2048;
+    /**
+     * 每次读取的数据包个数（Epoll传输下为一次recvmmsg读取的数据包个数）
+     */
+    public static final int DATAGRAMS_PER_READ = 16;
+
+    private final TransportType transport;
+    private final int receivers;
     private final EventLoopGroup group;
     private final Bootstrap bootstrap;
+    private final AsyncLogEventWriter writer;
+    private final LogEventSequenceTracker tracker = new LogEventSequenceTracker();
 
     public LogEventMonitor(InetSocketAddress address) {
-        this.group = new NioEventLoopGroup();
+        this(address, new ConsoleLogEventSink());
+    }
+
+    public LogEventMonitor(InetSocketAddress address, LogEventSink sink) {
+        this(address, sink, 1);
+    }
+
+    /**
+     * @param address 监听地址
+     * @param sink 日志的输出目标
+     * @param receivers 绑定到同一个端口的Channel个数，为0时使用CPU核数，大于1时需要Epoll传输
+     */
+    public LogEventMonitor(InetSocketAddress address, LogEventSink sink, int receivers) {
+        this(address, sink, receivers, DEFAULT_RECEIVE_BUFFER_SIZE);
+    }
+
+    /**
+     * @param address 监听地址
+     * @param sink 日志的输出目标
+     * @param receivers 绑定到同一个端口的Channel个数，为0时使用CPU核数，大于1时需要Epoll传输
+     * @param receiveBufferSize 每个Channel的SO_RCVBUF
+     */
+    public LogEventMonitor(InetSocketAddress address, LogEventSink sink, int receivers, int receiveBufferSize) {
+        this(address, sink, receivers, receiveBufferSize, false);
+    }
+
+    /**
+     * @param address 监听地址
+     * @param sink 日志的输出目标
+     * @param receivers 绑定到同一个端口的Channel个数，为0时使用CPU核数，大于1时需要Epoll传输并且unicast为true
+     * @param receiveBufferSize 每个Channel的SO_RCVBUF
+     * @param unicast 发送端是否以单播方式发送，为false时（广播）只绑定一个Channel
+     */
+    public LogEventMonitor(InetSocketAddress address, LogEventSink sink, int receivers, int receiveBufferSize,
+                           boolean unicast) {
+        this(address, new AsyncLogEventWriter(sink), receivers, receiveBufferSize, unicast);
+    }
+
+    private LogEventMonitor(InetSocketAddress address, AsyncLogEventWriter writer, int receivers,
+                            int receiveBufferSize, boolean unicast) {
+        this(TransportType.preferred(), address, writer, new LogEventHandler(writer), receivers, receiveBufferSize, unicast);
+    }
+
+    /**
+     * @param writer 异步写出器，为null时由handler自行处理消息
+     * @param handler 解码器之后的处理器，需要是可共享的
+     */
+    LogEventMonitor(TransportType transport, InetSocketAddress address, AsyncLogEventWriter writer,
+                    ChannelHandler handler, int receivers, int receiveBufferSize, boolean unicast) {
+        if (receivers < 0) {
+            throw new IllegalArgumentException("receivers must not be negative: " + receivers);
+        }
+        if (receivers == 0) {
+            receivers = NettyRuntime.availableProcessors();
+        }
+        if (receivers > 1 && !unicast) {
+            //SO_REUSEPORT组中的每个Socket都会收到一份广播数据包
+            log.warn("Broadcast datagrams are delivered to every SO_REUSEPORT socket, binding a single channel "
+                    + "(multiple receivers require a unicast sender)");
+            receivers = 1;
+        }
+        if (receivers > 1 && transport != TransportType.EPOLL) {
+            log.warn("SO_REUSEPORT requires the EPOLL transport, binding a single {} channel", transport);
+            receivers = 1;
+        }
+        this.transport = transport;
+        this.receivers = receivers;
+        this.writer = writer;
+        this.group = transport.newEventLoopGroup(receivers);
         this.bootstrap = new Bootstrap();
 
         this.bootstrap.group(this.group)
-                .channel(NioDatagramChannel.class)
+                .channel(transport.datagramChannelClass())
                 .option(ChannelOption.SO_BROADCAST, true)
-                .handler(new LogEventInitializer())
+                .option(ChannelOption.SO_RCVBUF, receiveBufferSize)
+                .handler(new LogEventInitializer(tracker, handler))
                 .localAddress(address);
+
+        if (transport == TransportType.EPOLL) {
+            //每次分配可以容纳多个数据包的缓冲区，通过recvmmsg一次读满
+            this.bootstrap.option(EpollChannelOption.SO_REUSEPORT, receivers > 1)
+                    .option(EpollChannelOption.MAX_DATAGRAM_PAYLOAD_SIZE, MAX_DATAGRAM_SIZE)
+                    .option(ChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(MAX_DATAGRAM_SIZE * DATAGRAMS_PER_READ));
+        } else {
+            this.bootstrap.option(ChannelOption.RCVBUF_ALLOCATOR,
+                    new FixedRecvByteBufAllocator(MAX_DATAGRAM_SIZE).maxMessagesPerRead(DATAGRAMS_PER_READ));
+        }
+    }
+
+    /**
+     * 绑定所有的Channel，每次bind()都会注册到EventLoopGroup中的下一个EventLoop上
+     */
+    public List<Channel> bind() {
+        List<Channel> channels = new ArrayList<>(receivers);
+        for (int i = 0; i < receivers; i++) {
+            Channel channel = bootstrap.bind().syncUninterruptibly().channel();
+            channels.add(channel);
+        }
+        log.info("Bound {} {} channel(s) to {}, SO_RCVBUF={}", receivers, transport,
+                channels.get(0).localAddress(), channels.get(0).config().getOption(ChannelOption.SO_RCVBUF));
+
+        //定时检查序列号中的缺口并请求重传
+        long interval = LogEventSequenceTracker.DEFAULT_NACK_INTERVAL_MILLIS;
+        this.group.scheduleAtFixedRate(tracker::checkGaps, interval, interval, TimeUnit.MILLISECONDS);
+        //定时输出写出/丢弃/丢失的消息数
+        this.group.scheduleAtFixedRate(this::logStatistics, 1, 1, TimeUnit.MINUTES);
+        return channels;
+    }
+
+    private void logStatistics() {
+        if (writer != null) {
+            log.info("written={}, dropped={}", writer.writtenCount(), writer.droppedCount());
+        }
+        if (tracker.receivedCount() > 0) {
+            log.info("sequenced: received={}, recovered={}, duplicates={}, lost={}, lossRate={}%",
+                    tracker.receivedCount(), tracker.recoveredCount(), tracker.duplicateCount(), tracker.lostCount(),
+                    String.format("%.4f", tracker.lossRate() * 100));
+        }
+    }
+
+    public AsyncLogEventWriter getWriter() {
+        return writer;
     }
 
-    public Channel bind() {
-        return bootstrap.bind().syncUninterruptibly().channel();
+    public LogEventSequenceTracker getTracker() {
+        return tracker;
     }
 
     public void stop() {
-        group.shutdownGracefully();
+        group.shutdownGracefully().syncUninterruptibly();
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                log.error("Failed to close log event writer", e);
+            }
+        }
+        this.logStatistics();
     }
 
     public static void main(String[] args) throws Exception {
-        if (args.length != 1) {
-            throw new IllegalArgumentException("Usage: LogEventMonitor <port>");
+        if (args.length < 1 || args.length > 5) {
+            throw new IllegalArgumentException("Usage: LogEventMonitor <port> [receivers] [outputFile] [mmap] [unicast]");
         }
-        LogEventMonitor monitor = new LogEventMonitor(new InetSocketAddress(Integer.parseInt(args[0])));
+        int receivers = args.length >= 2 ? Integer.parseInt(args[1]) : 1;
+        LogEventSink sink = args.length >= 3
+                ? new RollingFileLogEventSink(new File(args[2]), RollingFileLogEventSink.DEFAULT_MAX_FILE_SIZE,
+                        args.length >= 4 && Boolean.parseBoolean(args[3]))
+                : new ConsoleLogEventSink();
+        //只有发送端单播到本机时才能使用多个接收Channel
+        boolean unicast = args.length == 5 && Boolean.parseBoolean(args[4]);
+        LogEventMonitor monitor = new LogEventMonitor(new InetSocketAddress(Integer.parseInt(args[0])), sink, receivers,
+                DEFAULT_RECEIVE_BUFFER_SIZE, unicast);
 
         try {
-            Channel channel = monitor.bind();
+            List<Channel> channels = monitor.bind();
             System.out.println("LogEventMonitor running");
-            channel.closeFuture().sync();
+            for (Channel channel : channels) {
+                channel.closeFuture().sync();
+            }
         } finally {
             monitor.stop();
         }
     }
 
     final static class LogEventInitializer extends ChannelInitializer<Channel> {
+        private final LogEventSequenceTracker tracker;
+        private final ChannelHandler handler;
+
+        LogEventInitializer(LogEventSequenceTracker tracker, ChannelHandler handler) {
+            this.tracker = tracker;
+            this.handler = handler;
+        }
 
         @Override
         protected void initChannel(Channel ch) throws Exception {
             ChannelPipeline pipeline = ch.pipeline();
 
-            pipeline.addLast(new LogEventDecoder());
-            pipeline.addLast(new LogEventHandler());
+            //每个Channel单独创建解码器；序列号跟踪器按照会话加锁，LogEventHandler只负责放入写线程的MPSC队列，都可以共享
+            pipeline.addLast(new LogEventDecoder(true));
+            pipeline.addLast(tracker);
+            pipeline.addLast(handler);
         }
     }
 }
@@ -0,0 +1,137 @@
+package cn.zifangsky.netty.exercise.chapter13;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.DatagramPacket;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 发送端的重传处理器
+ * <p>为发送的每条消息分配连续的序列号，并在一个有界的环形缓冲区中保存最近发送的消息。
+ * 收到{@link LogEventSequenceTracker}发回的NACK数据包后，重新写出其中仍然保存着的消息（超出缓冲区范围的消息无法恢复）。
+ * 需要添加在{@link LogEventBatchEncoder}之后，并且{@link #record(LogEvent, long)}只能在EventLoop中调用</p>
+ *
+ * @author zifangsky
+ * @date 2020/11/20
+ * @since 1.0.0
+ */
+@Slf4j
+public class LogEventReplayHandler extends SimpleChannelInboundHandler<DatagramPacket> {
+    /**
+     * 默认保存的消息条数
+     */
+    public static final int DEFAULT_CAPACITY = 64 * 1024;
+
+    private final long sessionId;
+    private final LogEvent[] ring;
+    private long nextSequence;
+
+    /**
+     * 重传的消息数
+     */
+    private final LongAdder retransmitted = new LongAdder();
+    /**
+     * 已经不在缓冲区中、无法重传的消息数
+     */
+    private final LongAdder unrecoverable = new LongAdder();
+
+    public LogEventReplayHandler() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity 保存的消息条数
+     */
+    public LogEventReplayHandler(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be a positive integer: " + capacity);
+        }
+        this.sessionId = ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE;
+        this.ring = new LogEvent[capacity];
+    }
+
+    /**
+     * 为消息分配序列号并保存到缓冲区中，被挤出缓冲区的最早的消息会被释放
+     * @param event 将要写出的消息
+     * @param offset 检查点，见{@link LogEvent#getOffset()}
+     * @return 传入的消息
+     */
+    public LogEvent record(LogEvent event, long offset) {
+        long sequence = nextSequence++;
+        event.sequence(sessionId, sequence, offset);
+
+        int index = (int) (sequence % ring.length);
+        if (ring[index] != null) {
+            ring[index].release();
+        }
+        //编码器写出后会释放一次，缓冲区单独持有一次引用
+        ring[index] = event.retain();
+        return event;
+    }
+
+    public long getSessionId() {
+        return sessionId;
+    }
+
+    public long retransmittedCount() {
+        return retransmitted.sum();
+    }
+
+    public long unrecoverableCount() {
+        return unrecoverable.sum();
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket packet) throws Exception {
+        ByteBuf data = packet.content();
+        if (data.readableBytes() < LogEventSequenceTracker.NACK_HEADER_LENGTH
+                || data.getByte(data.readerIndex()) != LogEvent.NACK_MARKER) {
+            return;
+        }
+        data.skipBytes(1);
+        if (data.readLong() != sessionId) {
+            //其他发送端（或者之前的会话）的NACK
+            return;
+        }
+
+        //只重传仍然保存在缓冲区中的消息
+        long oldest = Math.max(0, nextSequence - ring.length);
+        int count = data.readUnsignedShort();
+        int written = 0;
+        for (int i = 0; i < count && data.readableBytes() >= LogEventSequenceTracker.NACK_RANGE_LENGTH; i++) {
+            long start = data.readLong();
+            long end = Math.min(data.readLong(), nextSequence);
+            if (start >= end) {
+                continue;
+            }
+            if (start < oldest) {
+                unrecoverable.add(Math.min(end, oldest) - start);
+                start = oldest;
+            }
+            for (long sequence = start; sequence < end; sequence++) {
+                ctx.write(ring[(int) (sequence % ring.length)].retain(), ctx.voidPromise());
+                written++;
+            }
+        }
+
+        if (written > 0) {
+            retransmitted.add(written);
+            ctx.flush();
+            log.debug("Retransmitted {} log events to {}", written, packet.sender());
+        }
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        for (int i = 0; i < ring.length; i++) {
+            if (ring[i] != null) {
+                ring[i].release();
+                ring[i] = null;
+            }
+        }
+    }
+}
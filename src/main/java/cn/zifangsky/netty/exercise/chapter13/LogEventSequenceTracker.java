@@ -0,0 +1,541 @@
+package cn.zifangsky.netty.exercise.chapter13;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.util.internal.MathUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 监听端的序列号跟踪器
+ * <p>按照发送端的会话ID跟踪带序列号的消息：丢弃重复的消息，记录序列号中的缺口，
+ * 并由{@link #checkGaps()}定时向发送端发回NACK数据包请求重传（见{@link LogEventReplayHandler}）。
+ * 同一个缺口的NACK间隔按照指数退避，避免在监听端过载时重复请求仍在传输中的消息，多次请求后仍未补齐的缺口计为丢失。</p>
+ * <p>存在缺口时，之后到达的消息会暂存在一个有界的缓冲区中，直到缺口被补齐或者计为丢失，因此同一个发送端的消息按照序列号的顺序传递给下一个处理器。
+ * 暂存的消息超过上限时优先保证不丢失：最早的缺口不再阻塞之后的消息，但仍然会请求重传，重传补齐的消息在到达时直接传递。
+ * 没有序列号的消息直接传递给下一个处理器。</p>
+ * <p>超过空闲时间没有收到消息、并且没有未决缺口和暂存消息的会话（例如已经重启的发送端之前的会话）会被移除，
+ * 之后再收到该会话的消息时重新开始跟踪。NACK数据包的格式为：</p>
+ * <pre>
+ * +------+--------------+----------+----------+--------+-----
+ * | 0x01 | sessionId(8) | count(2) | start(8) | end(8) | ...
+ * +------+--------------+----------+----------+--------+-----
+ * </pre>
+ *
+ * @author zifangsky
+ * @date 2020/11/20
+ * @since 1.0.0
+ */
+@Slf4j
+@ChannelHandler.Sharable
+public class LogEventSequenceTracker extends ChannelInboundHandlerAdapter {
+    /**
+     * 默认的NACK间隔（同时也是发现缺口后等待乱序到达的时间），之后每次NACK的间隔加倍
+     */
+    public static final long DEFAULT_NACK_INTERVAL_MILLIS = 100;
+    /**
+     * 默认的NACK次数，超过后缺口计为丢失（默认的间隔下约3秒）
+     */
+    public static final int DEFAULT_MAX_NACK_ATTEMPTS = 5;
+    /**
+     * 默认每个发送端最多暂存的消息数，超过后最早的缺口不再保证顺序
+     */
+    public static final int DEFAULT_MAX_HELD_EVENTS = 64 * 1024;
+    /**
+     * 默认的会话空闲时间，超过后移除该会话的状态
+     */
+    public static final long DEFAULT_SESSION_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    /**
+     * 每个发送端最多记录的缺口个数，超过后最早的缺口直接计为丢失
+     */
+    static final int MAX_PENDING_GAPS = 1024;
+    /**
+     * NACK数据包头部的长度：标识 + 会话ID + 区间个数
+     */
+    static final int NACK_HEADER_LENGTH = 11;
+    /**
+     * 每个区间的长度：起始序列号 + 结束序列号（不包含）
+     */
+    static final int NACK_RANGE_LENGTH = 16;
+    /**
+     * 每个NACK数据包中的最大区间个数（保证数据包不超过1472字节）
+     */
+    private static final int MAX_RANGES_PER_NACK = 64;
+
+    private final int maxNackAttempts;
+    private final long nackIntervalNanos;
+    private final int maxHeldEvents;
+    private final long sessionIdleNanos;
+    private final ConcurrentMap<Long, Source> sources = new ConcurrentHashMap<>();
+
+    private final LongAdder received = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder recovered = new LongAdder();
+    private final LongAdder lost = new LongAdder();
+
+    public LogEventSequenceTracker() {
+        this(DEFAULT_MAX_NACK_ATTEMPTS, DEFAULT_NACK_INTERVAL_MILLIS, DEFAULT_MAX_HELD_EVENTS);
+    }
+
+    /**
+     * @param maxNackAttempts 每个缺口的NACK次数，为0时不请求重传，只统计丢失的消息
+     * @param nackIntervalMillis 第一次NACK之前的等待时间
+     * @param maxHeldEvents 每个发送端最多暂存的消息数（向上取整为2的幂）
+     */
+    public LogEventSequenceTracker(int maxNackAttempts, long nackIntervalMillis, int maxHeldEvents) {
+        this(maxNackAttempts, nackIntervalMillis, maxHeldEvents, DEFAULT_SESSION_IDLE_MILLIS);
+    }
+
+    /**
+     * @param maxNackAttempts 每个缺口的NACK次数，为0时不请求重传，只统计丢失的消息
+     * @param nackIntervalMillis 第一次NACK之前的等待时间
+     * @param maxHeldEvents 每个发送端最多暂存的消息数（向上取整为2的幂）
+     * @param sessionIdleMillis 会话的空闲时间，超过后移除该会话的状态
+     */
+    public LogEventSequenceTracker(int maxNackAttempts, long nackIntervalMillis, int maxHeldEvents,
+                                   long sessionIdleMillis) {
+        if (maxNackAttempts < 0 || maxNackAttempts > 16) {
+            throw new IllegalArgumentException("maxNackAttempts must be between 0 and 16: " + maxNackAttempts);
+        }
+        if (nackIntervalMillis <= 0) {
+            throw new IllegalArgumentException("nackIntervalMillis must be a positive integer: " + nackIntervalMillis);
+        }
+        if (maxHeldEvents <= 0) {
+            throw new IllegalArgumentException("maxHeldEvents must be a positive integer: " + maxHeldEvents);
+        }
+        if (sessionIdleMillis <= 0) {
+            throw new IllegalArgumentException("sessionIdleMillis must be a positive integer: " + sessionIdleMillis);
+        }
+        this.maxNackAttempts = maxNackAttempts;
+        this.nackIntervalNanos = TimeUnit.MILLISECONDS.toNanos(nackIntervalMillis);
+        this.maxHeldEvents = MathUtil.safeFindNextPositivePowerOfTwo(maxHeldEvents);
+        this.sessionIdleNanos = TimeUnit.MILLISECONDS.toNanos(sessionIdleMillis);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (!(msg instanceof LogEvent) || !((LogEvent) msg).hasSequence()) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+
+        LogEvent event = (LogEvent) msg;
+        Source source;
+        Disposition disposition = null;
+        do {
+            source = sources.computeIfAbsent(event.getSessionId(), Source::new);
+            //同一个发送端的数据包总是到达同一个Channel（SO_REUSEPORT按照来源地址分配），这里的锁基本没有竞争
+            synchronized (source) {
+                //已经因为空闲被移除的会话需要重新创建
+                if (!source.expired) {
+                    source.ctx = ctx;
+                    source.address = event.getSourceAddress();
+                    disposition = source.accept(event);
+                }
+            }
+        } while (disposition == null);
+
+        switch (disposition) {
+            case DELIVER:
+                received.increment();
+                ctx.fireChannelRead(event);
+                break;
+            case HOLD:
+                received.increment();
+                this.drain(source, ctx);
+                break;
+            default:
+                duplicates.increment();
+                event.release();
+                break;
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        for (Source source : sources.values()) {
+            synchronized (source) {
+                if (source.ctx == ctx) {
+                    source.releaseHeld();
+                }
+            }
+        }
+        ctx.fireChannelInactive();
+    }
+
+    /**
+     * 为所有到期的缺口发送NACK，超过NACK次数的缺口计为丢失，并移除空闲的会话，需要按照不大于NACK间隔的固定间隔调用
+     */
+    public void checkGaps() {
+        this.checkGaps(System.nanoTime());
+    }
+
+    void checkGaps(long now) {
+        for (Source source : sources.values()) {
+            List<long[]> ranges;
+            ChannelHandlerContext ctx;
+            InetSocketAddress address;
+            boolean drainNeeded;
+            synchronized (source) {
+                if (source.isIdle(now)) {
+                    source.expired = true;
+                    sources.remove(source.sessionId, source);
+                    continue;
+                }
+                ranges = source.check(now);
+                drainNeeded = source.gaveUp && source.heldCount > 0;
+                source.gaveUp = false;
+                ctx = source.ctx;
+                address = source.address;
+            }
+            if (ctx == null || !ctx.channel().isActive()) {
+                continue;
+            }
+            if (!ranges.isEmpty() && address != null) {
+                this.sendNack(ctx.channel(), address, source.sessionId, ranges);
+            }
+            if (drainNeeded) {
+                //计为丢失的缺口之后的消息可以继续传递，需要在该Channel的EventLoop中进行
+                ctx.executor().execute(() -> this.drain(source, ctx));
+            }
+        }
+    }
+
+    /**
+     * 按照顺序传递所有之前没有缺口的暂存消息
+     */
+    private void drain(Source source, ChannelHandlerContext ctx) {
+        List<LogEvent> ready;
+        synchronized (source) {
+            source.pollReady(Long.MAX_VALUE);
+            if (source.ready.isEmpty()) {
+                return;
+            }
+            ready = new ArrayList<>(source.ready);
+            source.ready.clear();
+        }
+        for (LogEvent event : ready) {
+            ctx.fireChannelRead(event);
+        }
+    }
+
+    private void sendNack(Channel channel, InetSocketAddress address, long sessionId, List<long[]> ranges) {
+        for (int from = 0; from < ranges.size(); from += MAX_RANGES_PER_NACK) {
+            int count = Math.min(MAX_RANGES_PER_NACK, ranges.size() - from);
+            ByteBuf buf = channel.alloc().directBuffer(NACK_HEADER_LENGTH + count * NACK_RANGE_LENGTH);
+            buf.writeByte(LogEvent.NACK_MARKER);
+            buf.writeLong(sessionId);
+            buf.writeShort(count);
+            for (int i = from; i < from + count; i++) {
+                buf.writeLong(ranges.get(i)[0]);
+                buf.writeLong(ranges.get(i)[1]);
+            }
+            channel.writeAndFlush(new DatagramPacket(buf, address), channel.voidPromise());
+        }
+    }
+
+    /**
+     * 去重后接收到的消息数（包括重传补齐的消息）
+     */
+    public long receivedCount() {
+        return received.sum();
+    }
+
+    public long duplicateCount() {
+        return duplicates.sum();
+    }
+
+    /**
+     * 通过重传补齐的消息数
+     */
+    public long recoveredCount() {
+        return recovered.sum();
+    }
+
+    public long lostCount() {
+        return lost.sum();
+    }
+
+    /**
+     * 当前跟踪的会话个数
+     */
+    public int sessionCount() {
+        return sources.size();
+    }
+
+    /**
+     * 丢失率：丢失的消息数 / (接收的消息数 + 丢失的消息数)
+     */
+    public double lossRate() {
+        long lostCount = lost.sum();
+        long total = received.sum() + lostCount;
+        return total == 0 ? 0 : (double) lostCount / total;
+    }
+
+    /**
+     * 对一条消息的处理方式
+     */
+    private enum Disposition {
+        /**
+         * 按顺序到达，直接传递
+         */
+        DELIVER,
+        /**
+         * 前面有缺口，先暂存
+         */
+        HOLD,
+        /**
+         * 重复的消息
+         */
+        DUPLICATE
+    }
+
+    /**
+     * 序列号中的一个缺口：[start, end)
+     */
+    private static final class Gap {
+        long start;
+        long end;
+        /**
+         * 发现缺口时最后一条已接收消息所属的文件及其检查点。发送端同时跟踪多个文件时，缺失的消息可能属于其他文件，
+         * 这时只能从该位置以及其他文件的检查点重新读取
+         */
+        final String filePath;
+        final long offset;
+        int attempts;
+        /**
+         * 下一次发送NACK（或者计为丢失）的时间
+         */
+        long deadline;
+
+        Gap(long start, long end, String filePath, long offset, long deadline) {
+            this.start = start;
+            this.end = end;
+            this.filePath = filePath;
+            this.offset = offset;
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * 一个发送端（会话）的状态，需要在持有该对象的锁时访问
+     */
+    private final class Source {
+        final long sessionId;
+        ChannelHandlerContext ctx;
+        InetSocketAddress address;
+        /**
+         * 期望收到的下一个序列号，为-1时表示还没有收到过消息
+         */
+        long nextSequence = -1;
+        /**
+         * 下一个按顺序传递的序列号，之前的消息都已经传递、计为丢失或者在不再阻塞的缺口中
+         */
+        long deliverNext;
+        /**
+         * 最后一条按序列号递增到达的消息所属的文件及其检查点
+         */
+        String lastFilePath;
+        long lastOffset;
+        final TreeMap<Long, Gap> gaps = new TreeMap<>();
+        /**
+         * 该序列号之前的缺口不再阻塞之后的消息（因为暂存的消息过多）
+         */
+        long unorderedBefore;
+        /**
+         * 暂存的消息，序列号在[deliverNext, deliverNext + 容量)之间，按照序列号映射到环形数组中
+         */
+        LogEvent[] held;
+        int heldCount;
+        /**
+         * 可以按顺序传递的消息
+         */
+        final List<LogEvent> ready = new ArrayList<>();
+        /**
+         * 是否有缺口被计为丢失（之后的暂存消息可能可以传递了）
+         */
+        boolean gaveUp;
+        /**
+         * 最后一次收到消息的时间
+         */
+        long lastActive = System.nanoTime();
+        /**
+         * 是否已经因为空闲被移除
+         */
+        boolean expired;
+
+        Source(long sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        Disposition accept(LogEvent event) {
+            long sequence = event.getSequence();
+            lastActive = System.nanoTime();
+
+            //1. 第一次收到该发送端的消息（监听端可能晚于发送端启动），从这里开始跟踪；或者没有缺口时按顺序到达
+            if (nextSequence < 0 || (sequence == nextSequence && deliverNext == nextSequence)) {
+                nextSequence = sequence + 1;
+                deliverNext = nextSequence;
+                lastFilePath = event.getFilePath();
+                lastOffset = event.getOffset();
+                return Disposition.DELIVER;
+            }
+
+            if (sequence >= nextSequence) {
+                //2. 出现新的缺口
+                if (sequence > nextSequence) {
+                    gaps.put(nextSequence, new Gap(nextSequence, sequence, lastFilePath, lastOffset, System.nanoTime() + nackIntervalNanos));
+                    if (gaps.size() > MAX_PENDING_GAPS) {
+                        this.giveUp(gaps.pollFirstEntry().getValue());
+                    }
+                }
+                nextSequence = sequence + 1;
+                lastFilePath = event.getFilePath();
+                lastOffset = event.getOffset();
+            } else if (this.fill(sequence)) {
+                //3. 乱序到达或者重传的消息，补齐对应的缺口
+                recovered.increment();
+                if (sequence < deliverNext) {
+                    return Disposition.DELIVER;
+                }
+            } else {
+                return Disposition.DUPLICATE;
+            }
+
+            //4. 暂存的消息过多时，最早的缺口不再阻塞之后的消息
+            if (held == null) {
+                held = new LogEvent[maxHeldEvents];
+            }
+            Long blocking;
+            while (sequence - deliverNext >= held.length && (blocking = gaps.ceilingKey(unorderedBefore)) != null) {
+                unorderedBefore = gaps.get(blocking).end;
+                this.pollReady(sequence);
+            }
+            if (sequence - deliverNext >= held.length) {
+                this.pollReady(sequence);
+            }
+            held[(int) sequence & (held.length - 1)] = event;
+            heldCount++;
+            return Disposition.HOLD;
+        }
+
+        /**
+         * 从缺口中移除一个序列号
+         * @return 该序列号是否在某个缺口中
+         */
+        private boolean fill(long sequence) {
+            Map.Entry<Long, Gap> entry = gaps.floorEntry(sequence);
+            if (entry == null || sequence >= entry.getValue().end) {
+                return false;
+            }
+            Gap gap = entry.getValue();
+            if (gap.start == sequence) {
+                gaps.remove(sequence);
+                if (++gap.start < gap.end) {
+                    gaps.put(gap.start, gap);
+                }
+            } else if (sequence == gap.end - 1) {
+                gap.end--;
+            } else {
+                Gap tail = new Gap(sequence + 1, gap.end, gap.filePath, gap.offset, gap.deadline);
+                tail.attempts = gap.attempts;
+                gap.end = sequence;
+                gaps.put(tail.start, tail);
+            }
+            return true;
+        }
+
+        /**
+         * 将第一个阻塞的缺口（最多到maxSequence）之前的所有暂存消息按照序列号的顺序移动到ready中
+         */
+        void pollReady(long maxSequence) {
+            Long blocking = gaps.ceilingKey(unorderedBefore);
+            long limit = Math.min(blocking == null ? nextSequence : blocking, maxSequence);
+            if (heldCount == 0) {
+                deliverNext = Math.max(deliverNext, limit);
+                return;
+            }
+            int mask = held.length - 1;
+            for (; deliverNext < limit && heldCount > 0; deliverNext++) {
+                int index = (int) deliverNext & mask;
+                if (held[index] != null) {
+                    ready.add(held[index]);
+                    held[index] = null;
+                    heldCount--;
+                }
+            }
+            deliverNext = Math.max(deliverNext, limit);
+        }
+
+        /**
+         * 超过空闲时间，并且没有未决的缺口和暂存的消息
+         */
+        boolean isIdle(long now) {
+            return now - lastActive >= sessionIdleNanos && gaps.isEmpty() && heldCount == 0 && ready.isEmpty();
+        }
+
+        /**
+         * @return 需要请求重传的区间
+         */
+        List<long[]> check(long now) {
+            List<long[]> ranges = new ArrayList<>();
+            Iterator<Gap> iterator = gaps.values().iterator();
+            while (iterator.hasNext()) {
+                Gap gap = iterator.next();
+                if (now - gap.deadline < 0) {
+                    continue;
+                }
+                if (gap.attempts >= maxNackAttempts) {
+                    iterator.remove();
+                    this.giveUp(gap);
+                } else {
+                    gap.attempts++;
+                    gap.deadline = now + (nackIntervalNanos << gap.attempts);
+                    ranges.add(new long[]{gap.start, gap.end});
+                }
+            }
+            if (gaps.isEmpty() && heldCount == 0) {
+                //没有缺口时不再需要暂存消息，释放最多maxHeldEvents个槽位的数组
+                held = null;
+            }
+            return ranges;
+        }
+
+        void releaseHeld() {
+            for (LogEvent event : ready) {
+                event.release();
+            }
+            ready.clear();
+            if (held != null) {
+                for (int i = 0; i < held.length; i++) {
+                    if (held[i] != null) {
+                        held[i].release();
+                        held[i] = null;
+                    }
+                }
+            }
+            heldCount = 0;
+        }
+
+        private void giveUp(Gap gap) {
+            gaveUp = true;
+            lost.add(gap.end - gap.start);
+            log.warn("Lost {} log events from {} (session {}): sequence [{}, {}), last received before the gap: {} at offset {}",
+                    gap.end - gap.start, address, sessionId, gap.start, gap.end, gap.filePath, gap.offset);
+        }
+    }
+}
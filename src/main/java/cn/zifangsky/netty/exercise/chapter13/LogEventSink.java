@@ -0,0 +1,28 @@
+package cn.zifangsky.netty.exercise.chapter13;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * 日志消息的输出目标
+ * <p>只会在{@link AsyncLogEventWriter}的写线程中被调用，因此实现类不需要考虑线程安全</p>
+ *
+ * @author zifangsky
+ * @date 2020/11/18
+ * @since 1.0.0
+ */
+public interface LogEventSink extends Closeable {
+
+    /**
+     * 写出一个批次中所有已格式化的日志（buf中的全部可读字节）
+     */
+    void write(ByteBuf buf) throws IOException;
+
+    /**
+     * 当前没有更多待写出的日志，可以将缓冲的数据刷新到底层存储
+     */
+    default void flush() throws IOException {
+    }
+}
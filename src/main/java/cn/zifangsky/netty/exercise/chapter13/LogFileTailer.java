@@ -0,0 +1,388 @@
+package cn.zifangsky.netty.exercise.chapter13;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.util.ByteProcessor;
+import io.netty.util.CharsetUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * 基于{@link FileChannel}的日志文件跟踪器
+ * <p>文件保持打开状态，每次将新增的内容批量读入一个可复用的直接内存缓冲区，批量查找换行符后按照UTF-8解码成行，
+ * 一次读取得到的所有行作为一个批次交给调用方处理。可以选择使用{@link WatchService}监听文件变化，否则按照固定间隔轮询</p>
+ * <p>文件被轮转（重命名后创建同名的新文件）时通过fileKey（inode）的变化检测，先读完旧文件（包括最后不完整的行）再从头读取新文件；
+ * 文件被截断（copytruncate）时从头读取</p>
+ *
+ * @author zifangsky
+ * @date 2020/11/12
+ * @since 1.0.0
+ */
+@Slf4j
+public class LogFileTailer implements AutoCloseable {
+    /**
+     * 默认的读缓冲区大小
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    /**
+     * 默认的轮询间隔（使用WatchService时作为等待事件的超时时间）
+     */
+    public static final long DEFAULT_POLL_INTERVAL_MILLIS = 1000;
+    /**
+     * 计算哈希值的文件开头内容的最大长度，见{@link #headHash(long)}
+     */
+    static final int HEAD_LENGTH = 1024;
+
+    private final Path path;
+    private final long pollIntervalMillis;
+    private final ByteBuf buffer;
+    private final WatchService watchService;
+    private FileChannel channel;
+    /**
+     * 当前打开的文件的fileKey
+     */
+    private String fileKey;
+    private long position;
+    /**
+     * 最近一次读取的批次在文件中的起始位置（包括上次读取剩下的不完整的行）
+     */
+    private long batchOffset;
+    /**
+     * 最近一次计算的开头内容的长度和哈希值，长度达到{@link #HEAD_LENGTH}之后不再变化
+     */
+    private int headLength = -1;
+    private long headHash;
+    private volatile boolean running = true;
+
+    public LogFileTailer(File file, boolean watch) throws IOException {
+        this(file, DEFAULT_BUFFER_SIZE, watch, DEFAULT_POLL_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param file 日志文件
+     * @param bufferSize 读缓冲区大小，超过该长度的行会被拆分
+     * @param watch 是否使用WatchService监听文件变化
+     * @param pollIntervalMillis 轮询间隔
+     */
+    public LogFileTailer(File file, int bufferSize, boolean watch, long pollIntervalMillis) throws IOException {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize must be a positive integer: " + bufferSize);
+        }
+        this.path = file.toPath();
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.buffer = PooledByteBufAllocator.DEFAULT.directBuffer(bufferSize, bufferSize);
+        this.position = file.length();
+
+        WatchService service = null;
+        if (watch) {
+            Path dir = file.getAbsoluteFile().getParentFile().toPath();
+            try {
+                service = FileSystems.getDefault().newWatchService();
+                dir.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            } catch (IOException | UnsupportedOperationException e) {
+                log.warn("WatchService is not available, falling back to polling " + dir, e);
+                if (service != null) {
+                    service.close();
+                }
+                service = null;
+            }
+        }
+        this.watchService = service;
+    }
+
+    /**
+     * 由调用方通过{@link #poll(BatchListener)}驱动读取的跟踪器，不监听文件变化
+     * @param path 日志文件
+     * @param bufferSize 读缓冲区大小，超过该长度的行会被拆分
+     * @param position 开始读取的位置
+     */
+    LogFileTailer(Path path, int bufferSize, long position) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize must be a positive integer: " + bufferSize);
+        }
+        this.path = path;
+        this.pollIntervalMillis = DEFAULT_POLL_INTERVAL_MILLIS;
+        this.buffer = PooledByteBufAllocator.DEFAULT.directBuffer(bufferSize, bufferSize);
+        this.watchService = null;
+        this.position = position;
+    }
+
+    /**
+     * 从创建跟踪器时文件的末尾开始跟踪，直到调用{@link #stop()}
+     * @param batchConsumer 每次读取得到的所有完整行
+     */
+    public void run(Consumer<List<String>> batchConsumer) throws IOException, InterruptedException {
+        this.run((offset, lines) -> batchConsumer.accept(lines));
+    }
+
+    /**
+     * 从创建跟踪器时文件的末尾开始跟踪，直到调用{@link #stop()}
+     * @param listener 每次读取得到的所有完整行，以及它们在文件中的起始位置
+     */
+    public void run(BatchListener listener) throws IOException, InterruptedException {
+        while (running) {
+            //1. 读取所有新增的内容
+            this.poll(listener);
+
+            //2. 等待文件变化
+            this.await();
+        }
+    }
+
+    /**
+     * 读取所有新增的内容，文件被轮转时先读完旧文件再切换到新文件
+     * <p>同一个跟踪器同时只能在一个线程中调用</p>
+     * @return 是否读取到了新内容
+     */
+    public boolean poll(BatchListener listener) throws IOException {
+        boolean read = this.drain(listener);
+        while (running && this.isRotated()) {
+            //确认轮转之后再读一次，读取旧文件在重命名之前写入的内容
+            read |= this.drain(listener);
+
+            //旧文件不会再有新内容，剩下的不完整的行也作为一行输出
+            this.flush(listener);
+
+            log.info("{} was rotated, switching to the new file", path);
+            channel.close();
+            channel = null;
+            fileKey = null;
+            headLength = -1;
+            position = 0;
+            read |= this.drain(listener);
+        }
+        return read;
+    }
+
+    /**
+     * 将缓冲区中剩下的不完整的行作为一行输出，用于文件不会再有新内容时（被轮转或者删除）
+     */
+    void flush(BatchListener listener) {
+        if (buffer.isReadable()) {
+            batchOffset = position - buffer.readableBytes();
+            List<String> lines = new ArrayList<>(1);
+            lines.add(buffer.toString(CharsetUtil.UTF_8));
+            buffer.clear();
+            listener.onBatch(batchOffset, lines);
+        }
+    }
+
+    private boolean drain(BatchListener listener) throws IOException {
+        boolean read = false;
+        List<String> lines = new ArrayList<>();
+        while (running && this.readBatch(lines)) {
+            read = true;
+            if (!lines.isEmpty()) {
+                listener.onBatch(batchOffset, lines);
+                lines = new ArrayList<>();
+            }
+        }
+        return read;
+    }
+
+    /**
+     * 文件名是否已经指向另一个文件（旧文件被重命名后又创建了同名的新文件）
+     */
+    private boolean isRotated() throws IOException {
+        if (channel == null) {
+            return false;
+        }
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            return !LogCheckpointStore.keyOf(path, attrs).equals(fileKey);
+        } catch (NoSuchFileException e) {
+            //旧文件已经被重命名，新文件还没有创建
+            return false;
+        }
+    }
+
+    /**
+     * 打开文件并记录它的fileKey
+     * <p>打开前后各读取一次fileKey，两次不一致说明打开的过程中文件被轮转了，需要重新打开</p>
+     * @return 文件不存在时返回false
+     */
+    boolean open() throws IOException {
+        while (channel == null) {
+            FileChannel opened = null;
+            try {
+                String before = LogCheckpointStore.keyOf(path, Files.readAttributes(path, BasicFileAttributes.class));
+                opened = FileChannel.open(path, StandardOpenOption.READ);
+                String after = LogCheckpointStore.keyOf(path, Files.readAttributes(path, BasicFileAttributes.class));
+                if (before.equals(after)) {
+                    channel = opened;
+                    fileKey = after;
+                    opened = null;
+                }
+            } catch (NoSuchFileException e) {
+                return false;
+            } finally {
+                if (opened != null) {
+                    opened.close();
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 当前打开的文件的fileKey，还没有打开时返回null
+     */
+    String fileKey() {
+        return fileKey;
+    }
+
+    /**
+     * 当前打开的文件的大小
+     */
+    long size() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * 当前打开的文件开头min(offset, {@link #HEAD_LENGTH})个字节的CRC32，同一个文件的内容只会追加，因此该值不随文件增长而变化。
+     * 与检查点一起保存，用于识别inode被复用的新文件
+     * @param offset 检查点的位置
+     */
+    long headHash(long offset) throws IOException {
+        int length = (int) Math.min(offset, HEAD_LENGTH);
+        if (length != headLength) {
+            ByteBuffer head = ByteBuffer.allocate(length);
+            while (head.hasRemaining() && channel.read(head, head.position()) > 0) {
+                //文件比检查点短时只计算实际读取的内容，哈希值不会一致
+            }
+            head.flip();
+            CRC32 crc = new CRC32();
+            crc.update(head);
+            headHash = crc.getValue();
+            headLength = length;
+        }
+        return headHash;
+    }
+
+    /**
+     * 修改下一次读取的位置，只能在开始读取之前调用
+     */
+    void position(long position) {
+        this.position = position;
+    }
+
+    /**
+     * 已经交给调用方的内容在文件中的结束位置（不包括缓冲区中不完整的行），从这里继续读取不会重复也不会遗漏
+     */
+    long checkpoint() {
+        return position - buffer.readableBytes();
+    }
+
+    /**
+     * 读取一次新增的内容，并将其中的完整行添加到lines中
+     * @return 是否读取到了新内容
+     */
+    boolean readBatch(List<String> lines) throws IOException {
+        if (channel == null && !this.open()) {
+            return false;
+        }
+
+        long size = channel.size();
+        if (size < position) {
+            //文件被截断，从头开始读取
+            log.info("{} was truncated, reading from the beginning", path);
+            position = 0;
+            headLength = -1;
+            buffer.clear();
+        }
+        if (size == position) {
+            return false;
+        }
+        batchOffset = position - buffer.readableBytes();
+
+        int read = buffer.writeBytes(channel, position, (int) Math.min(buffer.writableBytes(), size - position));
+        if (read <= 0) {
+            return false;
+        }
+        position += read;
+
+        //批量查找换行符，将完整的行解码为字符串
+        int lineStart = buffer.readerIndex();
+        int lf;
+        while ((lf = buffer.forEachByte(lineStart, buffer.writerIndex() - lineStart, ByteProcessor.FIND_LF)) >= 0) {
+            int lineEnd = lf > lineStart && buffer.getByte(lf - 1) == '\r' ? lf - 1 : lf;
+            lines.add(buffer.toString(lineStart, lineEnd - lineStart, CharsetUtil.UTF_8));
+            lineStart = lf + 1;
+        }
+        buffer.readerIndex(lineStart);
+
+        if (!buffer.isWritable() && buffer.isReadable() && lineStart == 0) {
+            //缓冲区中只有一个不完整的超长行，直接作为一行输出
+            lines.add(buffer.toString(CharsetUtil.UTF_8));
+            buffer.clear();
+        } else {
+            //将不完整的行移动到缓冲区开头
+            buffer.discardReadBytes();
+        }
+        return true;
+    }
+
+    private void await() throws InterruptedException {
+        if (watchService == null) {
+            TimeUnit.MILLISECONDS.sleep(pollIntervalMillis);
+            return;
+        }
+
+        //即使没有收到事件也会在超时后检查一次，以防漏掉事件
+        WatchKey key = watchService.poll(pollIntervalMillis, TimeUnit.MILLISECONDS);
+        if (key != null) {
+            key.pollEvents();
+            key.reset();
+        }
+    }
+
+    /**
+     * 每次读取得到的一个批次的处理方法
+     */
+    @FunctionalInterface
+    public interface BatchListener {
+
+        /**
+         * @param offset 该批次在文件中的起始位置，从这里重新读取可以再次得到这些行
+         * @param lines 该批次中的所有完整行
+         */
+        void onBatch(long offset, List<String> lines);
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * 释放文件和缓冲区，需要在{@link #run(Consumer)}返回后调用
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        if (watchService != null) {
+            watchService.close();
+        }
+        if (channel != null) {
+            channel.close();
+        }
+        buffer.release();
+    }
+}
@@ -0,0 +1,170 @@
+package cn.zifangsky.netty.exercise.chapter13;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.internal.PlatformDependent;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 输出到文件，文件超过指定大小后滚动
+ * <p>当前文件始终为指定的文件名，滚动时将其重命名为“文件名.时间戳”后重新创建。
+ * 使用内存映射时，每个文件一次性映射maxFileSize大小的区域，写入只是内存复制，滚动或者关闭时再截断到实际长度。
+ * 进程异常退出时文件末尾会留下映射预留的0，下次打开时从末尾向前查找实际的数据长度并截断</p>
+ *
+ * @author zifangsky
+ * @date 2020/11/18
+ * @since 1.0.0
+ */
+@Slf4j
+public class RollingFileLogEventSink implements LogEventSink {
+    /**
+     * 默认的单个文件大小
+     */
+    public static final long DEFAULT_MAX_FILE_SIZE = 64L * 1024 * 1024;
+    /**
+     * 查找实际数据长度时每次读取的字节数
+     */
+    private static final int SCAN_BLOCK_SIZE = 8192;
+
+    private final Path file;
+    private final long maxFileSize;
+    private final boolean mmap;
+    /**
+     * 为null时表示上一次滚动失败，下一次写入时重新打开当前文件
+     */
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+    /**
+     * 当前文件已写入的字节数
+     */
+    private long size;
+
+    public RollingFileLogEventSink(File file) throws IOException {
+        this(file, DEFAULT_MAX_FILE_SIZE, false);
+    }
+
+    /**
+     * @param file 当前日志文件
+     * @param maxFileSize 单个文件的最大字节数
+     * @param mmap 是否使用内存映射的方式写入
+     */
+    public RollingFileLogEventSink(File file, long maxFileSize, boolean mmap) throws IOException {
+        if (maxFileSize <= 0 || (mmap && maxFileSize > Integer.MAX_VALUE)) {
+            throw new IllegalArgumentException("Invalid maxFileSize: " + maxFileSize);
+        }
+        this.file = file.toPath();
+        this.maxFileSize = maxFileSize;
+        this.mmap = mmap;
+        this.open();
+    }
+
+    @Override
+    public void write(ByteBuf buf) throws IOException {
+        if (channel == null) {
+            this.open();
+        }
+        while (buf.isReadable()) {
+            if (size >= maxFileSize) {
+                this.roll();
+            }
+
+            int length = (int) Math.min(buf.readableBytes(), maxFileSize - size);
+            if (mmap) {
+                mapped.position((int) size);
+                buf.readBytes(mapped.slice().limit(length));
+                size += length;
+            } else {
+                size += buf.readBytes(channel, size, length);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.closeCurrent();
+    }
+
+    private void open() throws IOException {
+        FileChannel opened = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long length = dataLength(opened);
+            if (length < opened.size()) {
+                log.warn("Truncating {} zero bytes left at the end of {}", opened.size() - length, file);
+                opened.truncate(length);
+            }
+            if (mmap) {
+                mapped = opened.map(FileChannel.MapMode.READ_WRITE, 0, maxFileSize);
+            }
+            size = length;
+            channel = opened;
+        } catch (IOException | RuntimeException e) {
+            opened.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 从文件末尾向前查找最后一个非0字节，得到实际的数据长度（日志以换行符结尾，不会以0结尾）
+     */
+    private static long dataLength(FileChannel channel) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(SCAN_BLOCK_SIZE);
+        long end = channel.size();
+        while (end > 0) {
+            long start = Math.max(0, end - SCAN_BLOCK_SIZE);
+            block.clear().limit((int) (end - start));
+            while (block.hasRemaining()) {
+                if (channel.read(block, start + block.position()) < 0) {
+                    break;
+                }
+            }
+            for (int i = block.position() - 1; i >= 0; i--) {
+                if (block.get(i) != 0) {
+                    return start + i + 1;
+                }
+            }
+            end = start;
+        }
+        return 0;
+    }
+
+    /**
+     * 滚动失败时当前文件已经关闭，下一次写入时重新打开并再次尝试滚动
+     */
+    private void roll() throws IOException {
+        this.closeCurrent();
+        String prefix = file.getFileName() + "." + System.currentTimeMillis();
+        Path rolled = file.resolveSibling(prefix);
+        for (int i = 1; Files.exists(rolled); i++) {
+            rolled = file.resolveSibling(prefix + "-" + i);
+        }
+        Files.move(file, rolled, StandardCopyOption.ATOMIC_MOVE);
+        log.info("Rolled {} to {}", file, rolled);
+        this.open();
+    }
+
+    private void closeCurrent() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        try {
+            if (mapped != null) {
+                //先解除映射，再截断映射时预留的空间
+                PlatformDependent.freeDirectBuffer(mapped);
+                mapped = null;
+                channel.truncate(size);
+            }
+        } finally {
+            channel.close();
+            channel = null;
+        }
+    }
+}
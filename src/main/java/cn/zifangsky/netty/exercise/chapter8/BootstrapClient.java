@@ -1,13 +1,12 @@
 package cn.zifangsky.netty.exercise.chapter8;
 
+import cn.zifangsky.netty.exercise.utils.TransportType;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.SimpleChannelInboundHandler;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.util.CharsetUtil;
 
 import java.net.InetSocketAddress;
@@ -30,12 +29,12 @@ public class BootstrapClient {
      * Bootstrapping a client
      */
     public void bootstrap() throws InterruptedException {
-        EventLoopGroup group = new NioEventLoopGroup();
+        EventLoopGroup group = TransportType.preferred().newEventLoopGroup();
 
         try {
             Bootstrap bootstrap = new Bootstrap();
             bootstrap.group(group)
-                    .channel(NioSocketChannel.class)
+                    .channel(TransportType.preferred().socketChannelClass())
                     .remoteAddress(new InetSocketAddress("127.0.0.1", 8080))
                     .handler(new SimpleChannelInboundHandler<ByteBuf>() {
                         @Override
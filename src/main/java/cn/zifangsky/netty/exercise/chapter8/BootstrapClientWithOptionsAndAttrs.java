@@ -1,12 +1,11 @@
 package cn.zifangsky.netty.exercise.chapter8;
 
+import cn.zifangsky.netty.exercise.utils.TransportType;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.SimpleChannelInboundHandler;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.util.AttributeKey;
 import io.netty.util.CharsetUtil;
 
@@ -34,8 +33,8 @@ public class BootstrapClientWithOptionsAndAttrs {
         final AttributeKey<Integer> id = AttributeKey.newInstance("ID");
 
         Bootstrap bootstrap = new Bootstrap();
-        bootstrap.group(new NioEventLoopGroup())
-                .channel(NioSocketChannel.class)
+        bootstrap.group(TransportType.preferred().newEventLoopGroup())
+                .channel(TransportType.preferred().socketChannelClass())
                 .remoteAddress(new InetSocketAddress("127.0.0.1", 8080))
                 .handler(new SimpleChannelInboundHandler<ByteBuf>() {
 
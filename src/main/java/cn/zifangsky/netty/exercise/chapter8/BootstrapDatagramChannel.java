@@ -1,12 +1,11 @@
 package cn.zifangsky.netty.exercise.chapter8;
 
+import cn.zifangsky.netty.exercise.utils.TransportType;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.DatagramPacket;
-import io.netty.channel.socket.nio.NioDatagramChannel;
 
 import java.net.InetSocketAddress;
 
@@ -29,9 +28,9 @@ public class BootstrapDatagramChannel {
      */
     public void bootstrap() throws InterruptedException {
         Bootstrap bootstrap = new Bootstrap();
-        bootstrap.group(new NioEventLoopGroup())
+        bootstrap.group(TransportType.preferred().newEventLoopGroup())
                 //指定Channel的实现
-                .channel(NioDatagramChannel.class)
+                .channel(TransportType.preferred().datagramChannelClass())
                 .handler(new SimpleChannelInboundHandler<DatagramPacket>() {
 
                     @Override
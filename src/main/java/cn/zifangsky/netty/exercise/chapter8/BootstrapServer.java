@@ -1,13 +1,12 @@
 package cn.zifangsky.netty.exercise.chapter8;
 
+import cn.zifangsky.netty.exercise.utils.TransportType;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.SimpleChannelInboundHandler;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.util.CharsetUtil;
 
 import java.net.InetSocketAddress;
@@ -30,12 +29,12 @@ public class BootstrapServer {
      * Bootstrapping a server
      */
     public void bootstrap() throws InterruptedException {
-        EventLoopGroup group = new NioEventLoopGroup();
+        EventLoopGroup group = TransportType.preferred().newEventLoopGroup();
 
         try {
             ServerBootstrap bootstrap = new ServerBootstrap();
             bootstrap.group(group)
-                    .channel(NioServerSocketChannel.class)
+                    .channel(TransportType.preferred().serverSocketChannelClass())
                     .localAddress(new InetSocketAddress(8080))
                     .childHandler(new SimpleChannelInboundHandler<ByteBuf>(){
 
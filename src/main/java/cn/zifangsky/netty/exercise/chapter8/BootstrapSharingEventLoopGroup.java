@@ -1,14 +1,12 @@
 package cn.zifangsky.netty.exercise.chapter8;
 
+import cn.zifangsky.netty.exercise.utils.TransportType;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.util.CharsetUtil;
 
 import java.net.InetSocketAddress;
@@ -31,9 +29,10 @@ public class BootstrapSharingEventLoopGroup {
      * Bootstrapping a server
      */
     public void bootstrap() throws InterruptedException {
+        TransportType transport = TransportType.preferred();
         ServerBootstrap bootstrap = new ServerBootstrap();
-        bootstrap.group(new NioEventLoopGroup(), new NioEventLoopGroup())
-                .channel(NioServerSocketChannel.class)
+        bootstrap.group(transport.newEventLoopGroup(), transport.newEventLoopGroup())
+                .channel(transport.serverSocketChannelClass())
                 .localAddress(new InetSocketAddress(8080))
                 .childHandler(new SimpleChannelInboundHandler<ByteBuf>(){
                     ChannelFuture connectFuture;
@@ -45,7 +44,7 @@ public class BootstrapSharingEventLoopGroup {
 
                         //使用与分配给已被接受的子Channel相同的EventLoop
                         bootstrap.group(ctx.channel().eventLoop())
-                                .channel(NioSocketChannel.class)
+                                .channel(transport.socketChannelClass())
                                 .remoteAddress(new InetSocketAddress("192.168.100.2", 8080))
                                 .handler(new SimpleChannelInboundHandler<ByteBuf>() {
                                     @Override
@@ -1,11 +1,10 @@
 package cn.zifangsky.netty.exercise.chapter8;
 
+import cn.zifangsky.netty.exercise.utils.TransportType;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.codec.http.HttpClientCodec;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 
@@ -29,9 +28,10 @@ public class BootstrapWithInitializer {
      * Bootstrapping a server
      */
     public void bootstrap() throws InterruptedException {
+        TransportType transport = TransportType.preferred();
         ServerBootstrap bootstrap = new ServerBootstrap();
-        bootstrap.group(new NioEventLoopGroup(), new NioEventLoopGroup())
-                .channel(NioServerSocketChannel.class)
+        bootstrap.group(transport.newEventLoopGroup(), transport.newEventLoopGroup())
+                .channel(transport.serverSocketChannelClass())
                 .localAddress(new InetSocketAddress(8080))
                 //注册一个ChannelInitializerImpl的实例来设置ChannelPipeline
                 .childHandler(new ChannelInitializerImpl());
@@ -8,18 +8,77 @@ import java.util.List;
 
 /**
  * AbsIntegerEncoder
+ * <p>默认每个int输出一个Integer（{@link Mode#BOXED}），批量模式下一个ByteBuf只输出一个消息，见{@link Mode}。
+ * 不足4个字节的剩余数据会被丢弃</p>
  *
  * @author zifangsky
  * @date 2020/10/19
  * @since 1.0.0
  */
 public class AbsIntegerEncoder extends MessageToMessageEncoder<ByteBuf> {
+    private final Mode mode;
+
+    public AbsIntegerEncoder() {
+        this(Mode.BOXED);
+    }
+
+    /**
+     * @param mode 输出绝对值的方式
+     */
+    public AbsIntegerEncoder(Mode mode) {
+        if (mode == null) {
+            throw new NullPointerException("mode");
+        }
+        this.mode = mode;
+    }
 
     @Override
     protected void encode(ChannelHandlerContext ctx, ByteBuf msg, List<Object> out) throws Exception {
-        while (msg.readableBytes() >= 4) {
-            int value = Math.abs(msg.readInt());
-            out.add(value);
+        int count = msg.readableBytes() >>> 2;
+        int index = msg.readerIndex();
+
+        switch (mode) {
+            case INT_ARRAY: {
+                int[] values = new int[count];
+                for (int i = 0; i < count; i++, index += 4) {
+                    values[i] = Math.abs(msg.getInt(index));
+                }
+                msg.skipBytes(count << 2);
+                out.add(values);
+                break;
+            }
+            case BUFFER: {
+                ByteBuf buf = ctx.alloc().buffer(count << 2);
+                for (int i = 0; i < count; i++, index += 4) {
+                    buf.writeInt(Math.abs(msg.getInt(index)));
+                }
+                msg.skipBytes(count << 2);
+                out.add(buf);
+                break;
+            }
+            default:
+                while (msg.readableBytes() >= 4) {
+                    int value = Math.abs(msg.readInt());
+                    out.add(value);
+                }
         }
     }
+
+    /**
+     * 输出绝对值的方式
+     */
+    public enum Mode {
+        /**
+         * 每个int输出一个Integer消息
+         */
+        BOXED,
+        /**
+         * 每个ByteBuf输出一个int[]消息
+         */
+        INT_ARRAY,
+        /**
+         * 每个ByteBuf输出一个从ctx.alloc()分配的ByteBuf，依次写入所有绝对值（大端序）
+         */
+        BUFFER
+    }
 }
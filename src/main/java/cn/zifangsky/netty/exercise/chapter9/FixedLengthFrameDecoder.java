@@ -8,6 +8,7 @@ import java.util.List;
 
 /**
  * FixedLengthFrameDecoder
+ * <p>默认每个帧复制到一个新的ByteBuf中（{@link Mode#COPY}），也可以使用与累积缓冲区共享内存的retainedSlice()，见{@link Mode}</p>
  *
  * @author zifangsky
  * @date 2020/10/19
@@ -15,22 +16,63 @@ import java.util.List;
  */
 public class FixedLengthFrameDecoder extends ByteToMessageDecoder {
     private final int frameLength;
+    private final Mode mode;
 
     public FixedLengthFrameDecoder(int frameLength) {
+        this(frameLength, Mode.COPY);
+    }
+
+    /**
+     * @param frameLength 帧长度
+     * @param mode 输出帧的方式
+     */
+    public FixedLengthFrameDecoder(int frameLength, Mode mode) {
         if (frameLength <= 0) {
             throw new IllegalArgumentException("frameLength must be a positive integer: " + frameLength);
         }
+        if (mode == null) {
+            throw new NullPointerException("mode");
+        }
         this.frameLength = frameLength;
+        this.mode = mode;
     }
 
     @Override
     protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+        if (mode == Mode.BATCH) {
+            //所有完整的帧在累积缓冲区中是连续的，一次性切出
+            int frames = in.readableBytes() / this.frameLength;
+            if (frames > 0) {
+                out.add(in.readRetainedSlice(frames * this.frameLength));
+            }
+            return;
+        }
+
         //检查是否有足够的字节可以被读取，以生成下一个帧
         while (in.readableBytes() >= this.frameLength){
             //从ByteBuf中读取一个新帧
-            ByteBuf buf = in.readBytes(this.frameLength);
+            ByteBuf buf = mode == Mode.SLICE ? in.readRetainedSlice(this.frameLength) : in.readBytes(this.frameLength);
             //将该帧添加到已被解码的消息列表中
             out.add(buf);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 输出帧的方式
+     */
+    public enum Mode {
+        /**
+         * 每个帧复制到一个新分配的ByteBuf中，与累积缓冲区无关
+         */
+        COPY,
+        /**
+         * 每个帧是累积缓冲区的retainedSlice()，不复制数据，但在所有帧释放之前累积缓冲区也不会被释放
+         */
+        SLICE,
+        /**
+         * 每次读取得到的所有完整的帧作为一个retainedSlice()输出，长度是帧长度的整数倍，由下游按照帧长度拆分。
+         * 一次读取只经过一次ChannelPipeline
+         */
+        BATCH
+    }
+}
@@ -0,0 +1,93 @@
+package cn.zifangsky.netty.exercise.chapter9;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.DefaultByteBufHolder;
+
+/**
+ * {@link FrameChunkDecoder}流式模式下输出的一个分块
+ * <p>一次读取得到的数据被拆分为一个或多个不超过maxFrameSize的分块，第一个分块的{@link #isBegin()}为true，
+ * 最后一个分块的{@link #isEnd()}为true，没有被拆分时两者都为true</p>
+ *
+ * @author zifangsky
+ * @date 2020/11/21
+ * @since 1.0.0
+ */
+public class FrameChunk extends DefaultByteBufHolder {
+    private final boolean begin;
+    private final boolean end;
+
+    /**
+     * @param content 分块的内容，所有权转移给该对象
+     * @param begin 是否是第一个分块
+     * @param end 是否是最后一个分块
+     */
+    public FrameChunk(ByteBuf content, boolean begin, boolean end) {
+        super(content);
+        this.begin = begin;
+        this.end = end;
+    }
+
+    public boolean isBegin() {
+        return begin;
+    }
+
+    public boolean isEnd() {
+        return end;
+    }
+
+    /**
+     * 中间的分块（既不是第一个也不是最后一个）
+     */
+    public boolean isContinuation() {
+        return !begin && !end;
+    }
+
+    @Override
+    public FrameChunk copy() {
+        return (FrameChunk) super.copy();
+    }
+
+    @Override
+    public FrameChunk duplicate() {
+        return (FrameChunk) super.duplicate();
+    }
+
+    @Override
+    public FrameChunk retainedDuplicate() {
+        return (FrameChunk) super.retainedDuplicate();
+    }
+
+    @Override
+    public FrameChunk replace(ByteBuf content) {
+        return new FrameChunk(content, begin, end);
+    }
+
+    @Override
+    public FrameChunk retain() {
+        super.retain();
+        return this;
+    }
+
+    @Override
+    public FrameChunk retain(int increment) {
+        super.retain(increment);
+        return this;
+    }
+
+    @Override
+    public FrameChunk touch() {
+        super.touch();
+        return this;
+    }
+
+    @Override
+    public FrameChunk touch(Object hint) {
+        super.touch(hint);
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "FrameChunk(begin: " + begin + ", end: " + end + ", " + content() + ')';
+    }
+}
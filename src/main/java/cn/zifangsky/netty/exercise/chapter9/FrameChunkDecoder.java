@@ -9,6 +9,8 @@ import java.util.List;
 
 /**
  * FrameChunkDecoder
+ * <p>严格模式（默认）下超过maxFrameSize的数据会被丢弃并抛出{@link TooLongFrameException}；
+ * 流式模式下拆分为多个不超过maxFrameSize的{@link FrameChunk}转发，每个分块是累积缓冲区的retainedSlice()，不复制数据</p>
  *
  * @author zifangsky
  * @date 2020/10/19
@@ -16,15 +18,43 @@ import java.util.List;
  */
 public class FrameChunkDecoder extends ByteToMessageDecoder {
     private final int maxFrameSize;
+    private final Mode mode;
 
     public FrameChunkDecoder(int maxFrameSize) {
+        this(maxFrameSize, Mode.STRICT);
+    }
+
+    /**
+     * @param maxFrameSize 帧（流式模式下为分块）的最大字节数
+     * @param mode 超过maxFrameSize时的处理方式
+     */
+    public FrameChunkDecoder(int maxFrameSize, Mode mode) {
+        if (maxFrameSize <= 0) {
+            throw new IllegalArgumentException("maxFrameSize must be a positive integer: " + maxFrameSize);
+        }
+        if (mode == null) {
+            throw new NullPointerException("mode");
+        }
         this.maxFrameSize = maxFrameSize;
+        this.mode = mode;
     }
 
     @Override
     protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
         int readableBytes = in.readableBytes();
 
+        if (mode == Mode.STREAMING) {
+            //按照maxFrameSize拆分为多个分块
+            boolean begin = true;
+            while (in.isReadable()) {
+                int length = Math.min(in.readableBytes(), this.maxFrameSize);
+                ByteBuf chunk = in.readRetainedSlice(length);
+                out.add(new FrameChunk(chunk, begin, !in.isReadable()));
+                begin = false;
+            }
+            return;
+        }
+
         //如果该帧太大，则丢弃它并抛 出一个TooLongFrameException异常
         if(readableBytes > this.maxFrameSize){
             in.clear();
@@ -34,4 +64,18 @@ public class FrameChunkDecoder extends ByteToMessageDecoder {
         ByteBuf buf = in.readBytes(readableBytes);
         out.add(buf);
     }
-}
\ No newline at end of file
+
+    /**
+     * 超过maxFrameSize时的处理方式
+     */
+    public enum Mode {
+        /**
+         * 丢弃并抛出{@link TooLongFrameException}，输出ByteBuf
+         */
+        STRICT,
+        /**
+         * 拆分为多个分块转发，输出{@link FrameChunk}
+         */
+        STREAMING
+    }
+}
@@ -1,12 +1,11 @@
 package cn.zifangsky.netty.exercise.echo.client;
 
+import cn.zifangsky.netty.exercise.utils.TransportType;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 
 import java.net.InetSocketAddress;
 
@@ -31,13 +30,14 @@ public class EchoClient {
         final EchoClientHandler clientHandler = new EchoClientHandler();
 
         //1. 创建Event-LoopGroup
-        EventLoopGroup group = new NioEventLoopGroup();
+        TransportType transport = TransportType.preferred();
+        EventLoopGroup group = transport.newEventLoopGroup();
 
         try {
             //2. 创建Bootstrap
             Bootstrap bootstrap = new Bootstrap();
             bootstrap.group(group)
-                    .channel(NioSocketChannel.class)
+                    .channel(transport.socketChannelClass())
                     .remoteAddress(new InetSocketAddress(host, port))
                     //在创建Channel时，向ChannelPipeline中添加一个Echo-ClientHandler实例
                     .handler(new ChannelInitializer<SocketChannel>() {
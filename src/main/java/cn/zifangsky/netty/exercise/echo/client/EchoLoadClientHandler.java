@@ -0,0 +1,171 @@
+package cn.zifangsky.netty.exercise.echo.client;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.ScheduledFuture;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 压测客户端中单个连接的处理器（每个连接一个实例，所有状态都只在该连接的EventLoop中访问）
+ * <p>服务端需要以持久连接模式运行，并按顺序回显收到的字节，因此每收到payloadSize个字节即对应最早发出的一条消息</p>
+ * <ul>
+ *     <li>闭环模式：收到上一条消息的回显后立即发送下一条</li>
+ *     <li>开环模式：按照固定速率发送，延迟从消息“计划发送的时间”开始计算，从而避免协调遗漏（coordinated omission）</li>
+ * </ul>
+ *
+ * @author zifangsky
+ * @date 2020/11/4
+ * @since 1.0.0
+ */
+@Slf4j
+public class EchoLoadClientHandler extends ChannelInboundHandlerAdapter {
+    /**
+     * 共享的、不可释放的消息内容
+     */
+    private final ByteBuf payload;
+    /**
+     * 开环模式下两条消息之间的间隔（纳秒），为0时表示闭环模式
+     */
+    private final long intervalNanos;
+    /**
+     * 延迟直方图（纳秒）
+     */
+    private final Histogram histogram;
+
+    /**
+     * 已发送但还未收到回显的消息的（计划）发送时间
+     */
+    private long[] sendTimes = new long[64];
+    private int head;
+    private int size;
+    /**
+     * 已收到但还不足一条完整消息的字节数
+     */
+    private long pendingBytes;
+    /**
+     * 开环模式下下一条消息的计划发送时间
+     */
+    private long nextSendTime;
+    private ScheduledFuture<?> sendTask;
+    private volatile boolean running = true;
+
+    public EchoLoadClientHandler(ByteBuf payload, long intervalNanos, Histogram histogram) {
+        this.payload = payload;
+        this.intervalNanos = intervalNanos;
+        this.histogram = histogram;
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        if (intervalNanos > 0) {
+            this.nextSendTime = System.nanoTime();
+            this.sendDue(ctx);
+        } else {
+            this.send(ctx, System.nanoTime());
+            ctx.flush();
+        }
+        ctx.fireChannelActive();
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        try {
+            pendingBytes += ((ByteBuf) msg).readableBytes();
+        } finally {
+            ReferenceCountUtil.release(msg);
+        }
+
+        long now = System.nanoTime();
+        int payloadSize = payload.readableBytes();
+        boolean sent = false;
+        while (pendingBytes >= payloadSize && size > 0) {
+            pendingBytes -= payloadSize;
+            histogram.recordValue(Math.max(0, now - this.poll()));
+
+            //闭环模式：每收到一条回显就补发一条
+            if (intervalNanos == 0 && running) {
+                this.send(ctx, now);
+                sent = true;
+            }
+        }
+        if (sent) {
+            ctx.flush();
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        this.running = false;
+        if (sendTask != null) {
+            sendTask.cancel(false);
+        }
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+        //1. 打印日志
+        log.error("数据处理过程中发生异常！", cause);
+        //2. 关闭Channel
+        ctx.close();
+    }
+
+    /**
+     * 停止发送新消息
+     */
+    public void stop() {
+        this.running = false;
+    }
+
+    /**
+     * 发送所有计划发送时间已到的消息，然后在下一条消息的计划发送时间再次调度
+     */
+    private void sendDue(ChannelHandlerContext ctx) {
+        if (!running || !ctx.channel().isActive()) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        boolean sent = false;
+        while (nextSendTime <= now) {
+            this.send(ctx, nextSendTime);
+            nextSendTime += intervalNanos;
+            sent = true;
+        }
+        if (sent) {
+            ctx.flush();
+        }
+
+        sendTask = ctx.executor().schedule(() -> this.sendDue(ctx), nextSendTime - now, TimeUnit.NANOSECONDS);
+    }
+
+    private void send(ChannelHandlerContext ctx, long sendTime) {
+        this.offer(sendTime);
+        ctx.write(payload.duplicate(), ctx.voidPromise());
+    }
+
+    private void offer(long sendTime) {
+        if (size == sendTimes.length) {
+            long[] newTimes = new long[sendTimes.length << 1];
+            for (int i = 0; i < size; i++) {
+                newTimes[i] = sendTimes[(head + i) & (sendTimes.length - 1)];
+            }
+            sendTimes = newTimes;
+            head = 0;
+        }
+        sendTimes[(head + size) & (sendTimes.length - 1)] = sendTime;
+        size++;
+    }
+
+    private long poll() {
+        long sendTime = sendTimes[head];
+        head = (head + 1) & (sendTimes.length - 1);
+        size--;
+        return sendTime;
+    }
+}
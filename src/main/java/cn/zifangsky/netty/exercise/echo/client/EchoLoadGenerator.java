@@ -0,0 +1,149 @@
+package cn.zifangsky.netty.exercise.echo.client;
+
+import cn.zifangsky.netty.exercise.utils.TransportType;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import org.HdrHistogram.Histogram;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于{@link EchoClient}的压测客户端
+ * <p>在同一个EventLoopGroup上打开多个连接，以闭环或者开环（固定速率）的方式向持久连接模式的EchoServer发送消息，
+ * 并将延迟记录到HdrHistogram中</p>
+ *
+ * @author zifangsky
+ * @date 2020/11/4
+ * @since 1.0.0
+ */
+public class EchoLoadGenerator {
+    /**
+     * 直方图可以记录的最大延迟
+     */
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final String host;
+
+    private final int port;
+    /**
+     * 连接数
+     */
+    private final int connections;
+    /**
+     * 每条消息的字节数
+     */
+    private final int payloadSize;
+    /**
+     * 压测时长（秒）
+     */
+    private final int durationSeconds;
+    /**
+     * 所有连接合计每秒发送的消息数，为0时表示闭环模式
+     */
+    private final int rate;
+
+    public EchoLoadGenerator(String host, int port, int connections, int payloadSize, int durationSeconds, int rate) {
+        this.host = host;
+        this.port = port;
+        this.connections = connections;
+        this.payloadSize = payloadSize;
+        this.durationSeconds = durationSeconds;
+        this.rate = rate;
+    }
+
+    public Histogram start() throws Exception {
+        final ByteBuf payload = Unpooled.unreleasableBuffer(
+                Unpooled.directBuffer(payloadSize).writeZero(payloadSize));
+        final long intervalNanos = rate > 0 ? Math.max(1, TimeUnit.SECONDS.toNanos(1) * connections / rate) : 0;
+
+        //1. 所有连接共享同一个EventLoopGroup
+        TransportType transport = TransportType.preferred();
+        EventLoopGroup group = transport.newEventLoopGroup();
+
+        List<Channel> channels = new ArrayList<>(connections);
+        List<EchoLoadClientHandler> handlers = new ArrayList<>(connections);
+        List<Histogram> histograms = new ArrayList<>(connections);
+        try {
+            //2. 创建Bootstrap
+            Bootstrap bootstrap = new Bootstrap();
+            bootstrap.group(group)
+                    .channel(transport.socketChannelClass())
+                    .option(ChannelOption.TCP_NODELAY, true)
+                    .remoteAddress(new InetSocketAddress(host, port));
+
+            //3. 打开所有连接，每个连接使用各自的处理器和直方图
+            for (int i = 0; i < connections; i++) {
+                final Histogram histogram = new Histogram(HIGHEST_TRACKABLE_NANOS, 3);
+                final EchoLoadClientHandler handler = new EchoLoadClientHandler(payload, intervalNanos, histogram);
+
+                ChannelFuture future = bootstrap.clone()
+                        .handler(new ChannelInitializer<SocketChannel>() {
+                            @Override
+                            protected void initChannel(SocketChannel sc) throws Exception {
+                                sc.pipeline().addLast(handler);
+                            }
+                        })
+                        .connect()
+                        .sync();
+                channels.add(future.channel());
+                handlers.add(handler);
+                histograms.add(histogram);
+            }
+
+            //4. 运行指定的时长
+            TimeUnit.SECONDS.sleep(durationSeconds);
+            handlers.forEach(EchoLoadClientHandler::stop);
+        } finally {
+            //5. 关闭所有连接和EventLoopGroup
+            for (Channel channel : channels) {
+                channel.close().syncUninterruptibly();
+            }
+            group.shutdownGracefully().sync();
+        }
+
+        //6. 合并所有连接的直方图
+        Histogram total = new Histogram(HIGHEST_TRACKABLE_NANOS, 3);
+        histograms.forEach(total::add);
+        return total;
+    }
+
+    private void report(Histogram histogram) {
+        System.out.printf("connections=%d, payloadSize=%d, mode=%s, duration=%ds%n",
+                connections, payloadSize, rate > 0 ? "open-loop(" + rate + "/s)" : "closed-loop", durationSeconds);
+        System.out.printf("messages=%d, throughput=%.1f msg/s%n",
+                histogram.getTotalCount(), histogram.getTotalCount() / (double) durationSeconds);
+        for (double percentile : new double[]{50, 90, 99, 99.9, 99.99}) {
+            System.out.printf("p%-6s = %10.1f us%n", percentile, histogram.getValueAtPercentile(percentile) / 1000.0);
+        }
+        System.out.printf("max     = %10.1f us%n", histogram.getMaxValue() / 1000.0);
+    }
+
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 5 || args.length > 6) {
+            System.err.println("Usage: " + EchoLoadGenerator.class.getSimpleName()
+                    + " <host> <port> <connections> <payloadSize> <durationSeconds> [rate]");
+            return;
+        }
+
+        final String host = args[0];
+        final int port = Integer.parseInt(args[1]);
+        final int connections = Integer.parseInt(args[2]);
+        final int payloadSize = Integer.parseInt(args[3]);
+        final int durationSeconds = Integer.parseInt(args[4]);
+        final int rate = args.length == 6 ? Integer.parseInt(args[5]) : 0;
+
+        EchoLoadGenerator generator = new EchoLoadGenerator(host, port, connections, payloadSize, durationSeconds, rate);
+        generator.report(generator.start());
+    }
+}
@@ -1,12 +1,11 @@
 package cn.zifangsky.netty.exercise.echo.server;
 
+import cn.zifangsky.netty.exercise.utils.TransportType;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import lombok.extern.slf4j.Slf4j;
 
 import java.net.InetSocketAddress;
@@ -24,23 +23,41 @@ public class EchoServer {
      * 监听端口
      */
     private final int port;
+    /**
+     * 是否使用持久连接模式
+     */
+    private final boolean keepAlive;
+    /**
+     * 传输方式
+     */
+    private final TransportType transport;
 
     public EchoServer(int port) {
+        this(port, false);
+    }
+
+    public EchoServer(int port, boolean keepAlive) {
+        this(port, keepAlive, TransportType.preferred());
+    }
+
+    public EchoServer(int port, boolean keepAlive, TransportType transport) {
         this.port = port;
+        this.keepAlive = keepAlive;
+        this.transport = transport;
     }
 
     public void start() throws Exception {
-        final EchoServerHandler serverHandler = new EchoServerHandler();
+        final EchoServerHandler serverHandler = new EchoServerHandler(keepAlive);
 
         //1. 创建Event-LoopGroup
-        EventLoopGroup group = new NioEventLoopGroup();
+        EventLoopGroup group = transport.newEventLoopGroup();
 
         try {
             //2. 创建Server-Bootstrap
             ServerBootstrap bootstrap = new ServerBootstrap();
             bootstrap.group(group)
-                    //指定使用NIO传输的Channel
-                    .channel(NioServerSocketChannel.class)
+                    //指定所选传输方式对应的Channel
+                    .channel(transport.serverSocketChannelClass())
                     //指定监听端口
                     .localAddress(new InetSocketAddress(port))
                     //添加一个EchoServer-Handler到子Channel的ChannelPipeline
@@ -65,12 +82,13 @@ public class EchoServer {
 
 
     public static void main(String[] args) throws Exception {
-        if (args.length != 1) {
-            System.err.println("Usage: " + EchoServer.class.getSimpleName() + " <port>");
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: " + EchoServer.class.getSimpleName() + " <port> [keepAlive]");
             return;
         }
 
         int port = Integer.parseInt(args[0]);
-        new EchoServer(port).start();
+        boolean keepAlive = args.length == 2 && Boolean.parseBoolean(args[1]);
+        new EchoServer(port, keepAlive).start();
     }
 }
@@ -19,6 +19,18 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 @ChannelHandler.Sharable
 public class EchoServerHandler extends ChannelInboundHandlerAdapter {
+    /**
+     * 是否保持连接（持久连接模式下不会在每次读取完成后关闭Channel，也不会打印接收到的消息）
+     */
+    private final boolean keepAlive;
+
+    public EchoServerHandler() {
+        this(false);
+    }
+
+    public EchoServerHandler(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+    }
 
     /**
      * 对接收消息的处理
@@ -28,10 +40,11 @@ public class EchoServerHandler extends ChannelInboundHandlerAdapter {
         ByteBuf in = (ByteBuf) msg;
 
         //1. 打印接收到的消息
-        System.out.println("Server received: " + in.toString(CharsetUtil.UTF_8));
-        //2. 将接收到的消息重新发送给发送者
+        if(!keepAlive){
+            System.out.println("Server received: " + in.toString(CharsetUtil.UTF_8));
+        }
+        //2. 将接收到的消息重新发送给发送者（在channelReadComplete()中统一冲刷）
         ctx.write(in);
-        ctx.flush();
     }
 
     /**
@@ -39,8 +52,29 @@ public class EchoServerHandler extends ChannelInboundHandlerAdapter {
      */
     @Override
     public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
-        ctx.writeAndFlush(Unpooled.EMPTY_BUFFER)
-                .addListener(ChannelFutureListener.CLOSE);
+        if(keepAlive){
+            //一次读取批次只冲刷一次
+            ctx.flush();
+
+            //如果对端读取的速度跟不上，则暂停读取，直到出站缓冲区重新变为可写
+            if(!ctx.channel().isWritable()){
+                ctx.channel().config().setAutoRead(false);
+            }
+        }else{
+            ctx.writeAndFlush(Unpooled.EMPTY_BUFFER)
+                    .addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+    /**
+     * 出站缓冲区可写状态变化的处理
+     */
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if(keepAlive && ctx.channel().isWritable()){
+            ctx.channel().config().setAutoRead(true);
+        }
+        ctx.fireChannelWritabilityChanged();
     }
 
     /**
@@ -53,4 +87,4 @@ public class EchoServerHandler extends ChannelInboundHandlerAdapter {
         //2. 关闭Channel
         ctx.close();
     }
-}
\ No newline at end of file
+}
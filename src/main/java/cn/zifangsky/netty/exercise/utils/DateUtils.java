@@ -2,15 +2,21 @@ package cn.zifangsky.netty.exercise.utils;
 
 import lombok.extern.slf4j.Slf4j;
 
-import java.text.DateFormat;
+import java.text.ParsePosition;
 import java.text.SimpleDateFormat;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Date相关公共方法
+ * <p>DateTimeFormatter按照格式化表达式缓存（线程安全，所有线程共享）；SimpleDateFormat不是线程安全的，因此每个线程缓存各自的实例。
+ * 当前时间字符串在同一秒内会复用同一个字符串</p>
  *
  * @author zifangsky
  * @date 2018/7/27
@@ -21,6 +27,35 @@ public class DateUtils {
     private static final String DEFAULT_DATE_TIME_FORMAT = "yyyy-MM-dd HH:mm:ss";
     private static final String DEFAULT_DATE_FORMAT = "yyyy-MM-dd";
 
+    /**
+     * 格式化表达式 -> DateTimeFormatter
+     */
+    private static final ConcurrentMap<String, DateTimeFormatter> FORMATTERS = new ConcurrentHashMap<>();
+    /**
+     * 每个线程各自的：格式化表达式 -> SimpleDateFormat
+     */
+    private static final ThreadLocal<Map<String, SimpleDateFormat>> DATE_FORMATS = ThreadLocal.withInitial(HashMap::new);
+    /**
+     * 最近一次格式化的秒（yyyy-MM-dd HH:mm:ss）
+     */
+    private static volatile FormattedSecond lastSecond = new FormattedSecond(Long.MIN_VALUE, null);
+
+    /**
+     * 返回指定格式化表达式对应的DateTimeFormatter（会被缓存）
+     * @author zifangsky
+     * @date 2020/11/17
+     * @since 1.0.0
+     * @param pattern 格式化表达式
+     * @return java.time.format.DateTimeFormatter
+     */
+    public static DateTimeFormatter getFormatter(String pattern){
+        DateTimeFormatter formatter = FORMATTERS.get(pattern);
+        if(formatter == null){
+            formatter = FORMATTERS.computeIfAbsent(pattern, key -> DateTimeFormatter.ofPattern(key, Locale.SIMPLIFIED_CHINESE));
+        }
+        return formatter;
+    }
+
     /**
      * 返回当前的LocalDateTime
      * @author zifangsky
@@ -40,7 +75,7 @@ public class DateUtils {
      * @return java.lang.String
      */
     public static String nowStr(){
-        return formatLocalDateTime(now());
+        return formatMilliSecondTimestamp(System.currentTimeMillis());
     }
 
     /**
@@ -55,6 +90,26 @@ public class DateUtils {
         return formatLocalDateTime(now(), pattern);
     }
 
+    /**
+     * 格式化精确到毫秒的时间戳（格式化表达式：yyyy-MM-dd HH:mm:ss，系统默认时区）
+     * <p>同一秒内的时间戳会复用上一次格式化得到的字符串</p>
+     * @author zifangsky
+     * @date 2020/11/17
+     * @since 1.0.0
+     * @param milliSecond 精确到毫秒的时间戳
+     * @return java.lang.String
+     */
+    public static String formatMilliSecondTimestamp(long milliSecond){
+        long second = Math.floorDiv(milliSecond, 1000);
+        FormattedSecond formatted = lastSecond;
+        if(formatted.second != second){
+            LocalDateTime dateTime = LocalDateTime.ofInstant(Instant.ofEpochSecond(second), ZoneId.systemDefault());
+            formatted = new FormattedSecond(second, formatLocalDateTime(dateTime));
+            lastSecond = formatted;
+        }
+        return formatted.text;
+    }
+
     /**
      * 返回当前时间Instant
      * @author zifangsky
@@ -208,7 +263,7 @@ public class DateUtils {
      * @return java.lang.String
      */
     public static String formatLocalDateTime(LocalDateTime dateTime, String pattern){
-        return dateTime.format(DateTimeFormatter.ofPattern(pattern, Locale.SIMPLIFIED_CHINESE));
+        return dateTime.format(getFormatter(pattern));
     }
 
     /**
@@ -233,7 +288,7 @@ public class DateUtils {
      * @return java.lang.String
      */
     public static String formatLocalDate(LocalDate date, String pattern){
-        return date.format(DateTimeFormatter.ofPattern(pattern, Locale.SIMPLIFIED_CHINESE));
+        return date.format(getFormatter(pattern));
     }
 
     /**
@@ -412,13 +467,7 @@ public class DateUtils {
      * @return java.util.Date
      */
     public static Date toDate(String dateStr){
-        try {
-            DateFormat dateFormat = new SimpleDateFormat(DEFAULT_DATE_TIME_FORMAT);
-            return dateFormat.parse(dateStr);
-        }catch (Exception e){
-            log.error("将字符串时间转化为Date出现异常！", e);
-        }
-        return null;
+        return toDate(dateStr, DEFAULT_DATE_TIME_FORMAT);
     }
 
     /**
@@ -429,13 +478,11 @@ public class DateUtils {
      * @return java.util.Date
      */
     public static Date toDate(String dateStr, String pattern){
-        try {
-            DateFormat dateFormat = new SimpleDateFormat(pattern);
-            return dateFormat.parse(dateStr);
-        }catch (Exception e){
-            log.error("将字符串时间转化为Date出现异常！", e);
+        Date date = parseDate(dateStr, pattern);
+        if(date == null){
+            log.error("将字符串时间转化为Date出现异常！dateStr: {}, pattern: {}", dateStr, pattern);
         }
-        return null;
+        return date;
     }
 
     /**
@@ -450,8 +497,9 @@ public class DateUtils {
             return null;
         }
 
+        //依次尝试每个格式化表达式，解析失败时不会抛出异常
         for(String pattern : patterns){
-            Date date = toDate(dateStr, pattern);
+            Date date = parseDate(dateStr, pattern);
 
             if(date != null){
                 return date;
@@ -461,6 +509,25 @@ public class DateUtils {
         return null;
     }
 
+    /**
+     * 使用当前线程缓存的SimpleDateFormat解析字符串时间，解析失败时返回null（不会抛出异常）
+     * @author zifangsky
+     * @date 2020/11/17
+     * @since 1.0.0
+     * @param dateStr 字符串时间
+     * @param pattern 格式化表达式
+     * @return java.util.Date
+     */
+    public static Date parseDate(String dateStr, String pattern){
+        if(dateStr == null){
+            return null;
+        }
+
+        SimpleDateFormat dateFormat = DATE_FORMATS.get().computeIfAbsent(pattern, SimpleDateFormat::new);
+        ParsePosition position = new ParsePosition(0);
+        return dateFormat.parse(dateStr, position);
+    }
+
     /**
      * 返回几天之前的时间
      * @author zifangsky
@@ -507,7 +574,7 @@ public class DateUtils {
      * @return java.time.LocalDateTime
      */
     public static LocalDateTime toLocalDateTime(String dateTimeStr, String pattern){
-        return LocalDateTime.parse(dateTimeStr, DateTimeFormatter.ofPattern(pattern, Locale.SIMPLIFIED_CHINESE));
+        return LocalDateTime.parse(dateTimeStr, getFormatter(pattern));
     }
 
     /**
@@ -532,7 +599,7 @@ public class DateUtils {
      * @return java.time.LocalDate
      */
     public static LocalDate toLocalDate(String dateStr, String pattern){
-        return LocalDate.parse(dateStr, DateTimeFormatter.ofPattern(pattern, Locale.SIMPLIFIED_CHINESE));
+        return LocalDate.parse(dateStr, getFormatter(pattern));
     }
 
     /**
@@ -546,4 +613,14 @@ public class DateUtils {
     public static Long getSecondOfDays(Long days){
         return days * 86400;
     }
+
+    private static final class FormattedSecond {
+        final long second;
+        final String text;
+
+        FormattedSecond(long second, String text) {
+            this.second = second;
+            this.text = text;
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,190 @@
+package cn.zifangsky.netty.exercise.utils;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.kqueue.KQueue;
+import io.netty.channel.kqueue.KQueueDatagramChannel;
+import io.netty.channel.kqueue.KQueueEventLoopGroup;
+import io.netty.channel.kqueue.KQueueServerSocketChannel;
+import io.netty.channel.kqueue.KQueueSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.DatagramChannel;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * 传输方式，用于在启动时自动选择本地传输（Epoll/KQueue），不可用时回退到NIO
+ * <p>可以通过系统属性<code>-Dnetty.transport=nio|epoll|kqueue</code>强制指定传输方式</p>
+ *
+ * @author zifangsky
+ * @date 2020/11/3
+ * @since 1.0.0
+ */
+@Slf4j
+public enum TransportType {
+    /**
+     * Linux下基于epoll的本地传输
+     */
+    EPOLL {
+        @Override
+        public boolean isAvailable() {
+            return Epoll.isAvailable();
+        }
+
+        @Override
+        public EventLoopGroup newEventLoopGroup(int nThreads) {
+            return new EpollEventLoopGroup(nThreads);
+        }
+
+        @Override
+        public Class<? extends ServerSocketChannel> serverSocketChannelClass() {
+            return EpollServerSocketChannel.class;
+        }
+
+        @Override
+        public Class<? extends SocketChannel> socketChannelClass() {
+            return EpollSocketChannel.class;
+        }
+
+        @Override
+        public Class<? extends DatagramChannel> datagramChannelClass() {
+            return EpollDatagramChannel.class;
+        }
+    },
+    /**
+     * macOS/BSD下基于kqueue的本地传输
+     */
+    KQUEUE {
+        @Override
+        public boolean isAvailable() {
+            return KQueue.isAvailable();
+        }
+
+        @Override
+        public EventLoopGroup newEventLoopGroup(int nThreads) {
+            return new KQueueEventLoopGroup(nThreads);
+        }
+
+        @Override
+        public Class<? extends ServerSocketChannel> serverSocketChannelClass() {
+            return KQueueServerSocketChannel.class;
+        }
+
+        @Override
+        public Class<? extends SocketChannel> socketChannelClass() {
+            return KQueueSocketChannel.class;
+        }
+
+        @Override
+        public Class<? extends DatagramChannel> datagramChannelClass() {
+            return KQueueDatagramChannel.class;
+        }
+    },
+    /**
+     * JDK NIO传输，在所有平台上都可用
+     */
+    NIO {
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        public EventLoopGroup newEventLoopGroup(int nThreads) {
+            return new NioEventLoopGroup(nThreads);
+        }
+
+        @Override
+        public Class<? extends ServerSocketChannel> serverSocketChannelClass() {
+            return NioServerSocketChannel.class;
+        }
+
+        @Override
+        public Class<? extends SocketChannel> socketChannelClass() {
+            return NioSocketChannel.class;
+        }
+
+        @Override
+        public Class<? extends DatagramChannel> datagramChannelClass() {
+            return NioDatagramChannel.class;
+        }
+    };
+
+    /**
+     * 指定传输方式的系统属性
+     */
+    public static final String TRANSPORT_PROPERTY = "netty.transport";
+
+    private static final TransportType PREFERRED = detect();
+
+    /**
+     * 当前平台是否支持该传输方式
+     */
+    public abstract boolean isAvailable();
+
+    /**
+     * 创建EventLoopGroup
+     * @param nThreads 线程数，为0时使用Netty的默认线程数（CPU核数 * 2）
+     */
+    public abstract EventLoopGroup newEventLoopGroup(int nThreads);
+
+    public abstract Class<? extends ServerSocketChannel> serverSocketChannelClass();
+
+    public abstract Class<? extends SocketChannel> socketChannelClass();
+
+    public abstract Class<? extends DatagramChannel> datagramChannelClass();
+
+    /**
+     * 使用默认线程数创建EventLoopGroup
+     */
+    public EventLoopGroup newEventLoopGroup() {
+        return newEventLoopGroup(0);
+    }
+
+    /**
+     * 返回启动时选择的传输方式
+     */
+    public static TransportType preferred() {
+        return PREFERRED;
+    }
+
+    private static TransportType detect() {
+        String name = System.getProperty(TRANSPORT_PROPERTY);
+        if (name != null && !name.trim().isEmpty()) {
+            TransportType type = null;
+            try {
+                type = TransportType.valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                //在类初始化时抛出异常会导致之后每次使用都失败（NoClassDefFoundError），因此回退到自动选择
+                log.warn("Unknown {}={}, expected one of {}, falling back to auto-detection",
+                        TRANSPORT_PROPERTY, name, Arrays.toString(values()));
+            }
+            if (type != null) {
+                if (type.isAvailable()) {
+                    log.info("Using {} transport", type);
+                    return type;
+                }
+                log.warn("{} transport is not available on this platform, falling back", type);
+            }
+        }
+
+        for (TransportType type : values()) {
+            if (type.isAvailable()) {
+                log.info("Using {} transport", type);
+                return type;
+            }
+        }
+        return NIO;
+    }
+}
@@ -0,0 +1,139 @@
+package cn.zifangsky.netty.exercise;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基准测试公共方法
+ *
+ * @author zifangsky
+ * @date 2020/11/2
+ * @since 1.0.0
+ */
+public final class BenchmarkUtils {
+
+    private BenchmarkUtils() {
+    }
+
+    /**
+     * 服务端启动方法
+     */
+    @FunctionalInterface
+    public interface ServerTask {
+        void run(int port) throws Exception;
+    }
+
+    /**
+     * 在IDE中直接运行某个基准测试，附带GC分析器（通过gc.alloc.rate.norm对比每次操作的分配字节数）
+     * @param threads 每个线程数各运行一轮，不传时使用基准测试自身的配置
+     */
+    public static void run(Class<?> benchmark, int... threads) throws RunnerException {
+        if (threads.length == 0) {
+            new Runner(options(benchmark).build()).run();
+        }
+        for (int count : threads) {
+            new Runner(options(benchmark).threads(count).build()).run();
+        }
+    }
+
+    private static ChainedOptionsBuilder options(Class<?> benchmark) {
+        return new OptionsBuilder()
+                .include(benchmark.getSimpleName())
+                .addProfiler(GCProfiler.class);
+    }
+
+    /**
+     * 获取一个当前未被占用的本地端口
+     */
+    public static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            socket.setReuseAddress(true);
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * 在后台线程中启动服务端，并阻塞直到端口可以连接
+     * @param daemon 服务端在accept()等不可中断的方法中阻塞时，需要使用守护线程，以免阻止JMH的fork进程退出
+     */
+    public static Thread startServer(String name, boolean daemon, ServerTask task, int port) throws Exception {
+        Thread thread = new Thread(() -> {
+            try {
+                task.run(port);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }, name);
+        thread.setDaemon(daemon);
+        thread.start();
+
+        awaitPort(port, TimeUnit.SECONDS.toMillis(10));
+        return thread;
+    }
+
+    /**
+     * 停止服务端线程（基于Netty的服务端会在closeFuture().sync()处响应中断并关闭EventLoopGroup）
+     */
+    public static void stopServer(Thread thread) throws InterruptedException {
+        if (thread != null) {
+            thread.interrupt();
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    /**
+     * 读取数据直到读满expected个字节或者连接被对方关闭
+     * @return 实际读取的字节数
+     */
+    public static int readFully(InputStream in, byte[] buf, int expected) throws IOException {
+        int total = 0;
+        while (total < expected) {
+            int n = in.read(buf, total, expected - total);
+            if (n < 0) {
+                break;
+            }
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * 读取数据直到连接被对方关闭
+     * @return 实际读取的字节数
+     */
+    public static int readToEnd(InputStream in, byte[] buf) throws IOException {
+        int total = 0;
+        int n;
+        while ((n = in.read(buf)) >= 0) {
+            total += n;
+        }
+        return total;
+    }
+
+    private static void awaitPort(int port, long timeoutMillis) throws Exception {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (true) {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress("127.0.0.1", port), 100);
+                return;
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IllegalStateException("Server did not start listening on port " + port, e);
+                }
+                TimeUnit.MILLISECONDS.sleep(20);
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package cn.zifangsky.netty.exercise.chapter10;
+
+import cn.zifangsky.netty.exercise.BenchmarkUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.LineBasedFrameDecoder;
+import io.netty.handler.codec.MessageToMessageDecoder;
+import io.netty.handler.codec.MessageToMessageEncoder;
+import io.netty.handler.codec.string.LineEncoder;
+import io.netty.handler.codec.string.StringDecoder;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比换行分隔的十进制整数协议使用String转换的处理器链与{@link AsciiIntegerCodec}的耗时和分配情况，结果按照每个int计算
+ * <ul>
+ *     <li>STRING：入站为LineBasedFrameDecoder + StringDecoder + Integer.valueOf()，
+ *     出站为String.valueOf()（与{@link IntegerToStringEncoder}相同）+ LineEncoder，每个int一个消息</li>
+ *     <li>ASCII：入站为{@link AsciiIntegerDecoder}，出站为{@link AsciiIntegerEncoder}，整批写出一个int[]</li>
+ * </ul>
+ * <p>入站数据按照1460字节拆分为多次读取</p>
+ *
+ * @author zifangsky
+ * @date 2020/11/22
+ * @since 1.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class AsciiIntegerCodecBenchmark {
+    private static final int VALUES_PER_INVOCATION = 4096;
+    private static final int READ_SIZE = 1460;
+
+    public enum Chain {
+        STRING, ASCII
+    }
+
+    @Param({"STRING", "ASCII"})
+    public Chain chain;
+
+    private EmbeddedChannel inbound;
+    private EmbeddedChannel outbound;
+    private ByteBuf input;
+    private int[] values;
+    private Integer[] boxedValues;
+    private long count;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ChannelInboundHandlerAdapter inboundSink = new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                count += msg instanceof IntBatch ? ((IntBatch) msg).size() : 1;
+            }
+        };
+        ChannelOutboundHandlerAdapter outboundSink = new ChannelOutboundHandlerAdapter() {
+            @Override
+            public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+                count++;
+                ReferenceCountUtil.release(msg);
+                promise.setSuccess();
+            }
+        };
+
+        if (chain == Chain.STRING) {
+            this.inbound = new EmbeddedChannel(new LineBasedFrameDecoder(16), new StringDecoder(CharsetUtil.US_ASCII),
+                    new MessageToMessageDecoder<String>() {
+                        @Override
+                        protected void decode(ChannelHandlerContext ctx, String msg, List<Object> out) {
+                            out.add(Integer.valueOf(msg));
+                        }
+                    }, inboundSink);
+            this.outbound = new EmbeddedChannel(outboundSink, new LineEncoder(CharsetUtil.US_ASCII),
+                    new MessageToMessageEncoder<Integer>() {
+                        @Override
+                        protected void encode(ChannelHandlerContext ctx, Integer msg, List<Object> out) {
+                            out.add(String.valueOf(msg));
+                        }
+                    });
+        } else {
+            this.inbound = new EmbeddedChannel(new AsciiIntegerDecoder(), inboundSink);
+            this.outbound = new EmbeddedChannel(outboundSink, new AsciiIntegerEncoder());
+        }
+
+        this.values = new int[VALUES_PER_INVOCATION];
+        this.boxedValues = new Integer[VALUES_PER_INVOCATION];
+        this.input = PooledByteBufAllocator.DEFAULT.directBuffer();
+        for (int i = 0; i < VALUES_PER_INVOCATION; i++) {
+            values[i] = (i - VALUES_PER_INVOCATION / 2) * 524287;
+            input.writeCharSequence(values[i] + "\n", CharsetUtil.US_ASCII);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        input.release();
+        inbound.finishAndReleaseAll();
+        outbound.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES_PER_INVOCATION)
+    public long decode() {
+        ByteBuf in = input.duplicate();
+        while (in.isReadable()) {
+            inbound.writeInbound(in.readRetainedSlice(Math.min(READ_SIZE, in.readableBytes())));
+        }
+        return count;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES_PER_INVOCATION)
+    public long encode() {
+        if (chain == Chain.STRING) {
+            //应用层持有的是int，每次写出时装箱
+            for (int i = 0; i < VALUES_PER_INVOCATION; i++) {
+                boxedValues[i] = values[i];
+            }
+            outbound.writeOutbound((Object[]) boxedValues);
+        } else {
+            outbound.writeOutbound(values);
+        }
+        return count;
+    }
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkUtils.run(AsciiIntegerCodecBenchmark.class);
+    }
+}
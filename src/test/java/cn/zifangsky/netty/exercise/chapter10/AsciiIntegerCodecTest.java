@@ -0,0 +1,123 @@
+package cn.zifangsky.netty.exercise.chapter10;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.util.CharsetUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testing the AsciiIntegerCodec
+ *
+ * @author zifangsky
+ * @date 2020/11/22
+ * @since 1.0.0
+ */
+public class AsciiIntegerCodecTest {
+
+    @Test
+    public void testEncoded() {
+        EmbeddedChannel channel = new EmbeddedChannel(new AsciiIntegerCodec());
+        assertTrue(channel.writeOutbound(42));
+        assertTrue(channel.writeOutbound(new int[]{0, -7, Integer.MAX_VALUE, Integer.MIN_VALUE}));
+        assertTrue(channel.finish());
+
+        assertEquals("42\n", readString(channel));
+        assertEquals("0\n-7\n2147483647\n-2147483648\n", readString(channel));
+        assertNull(channel.readOutbound());
+    }
+
+    @Test
+    public void testFragmentedInputDecoded() {
+        ByteBuf buf = Unpooled.copiedBuffer("12\n-345\r\n\n2147483647\n-2147483648\n0\n", CharsetUtil.US_ASCII);
+        List<Integer> values = new ArrayList<>();
+        EmbeddedChannel channel = new EmbeddedChannel(new AsciiIntegerCodec(), new ValueCollector(values));
+
+        //每次只写入2个字节，数字会跨越多次读取
+        while (buf.isReadable()) {
+            channel.writeInbound(buf.readRetainedSlice(Math.min(2, buf.readableBytes())));
+        }
+        assertFalse(channel.finish());
+
+        assertEquals(List.of(12, -345, Integer.MAX_VALUE, Integer.MIN_VALUE, 0), values);
+        buf.release();
+        assertEquals(0, buf.refCnt());
+    }
+
+    @Test
+    public void testIllegalNumbersSkipped() {
+        List<Integer> values = new ArrayList<>();
+        EmbeddedChannel channel = new EmbeddedChannel(new AsciiIntegerCodec(), new ValueCollector(values));
+
+        //非法的数字被丢弃到下一个分隔符为止，之后继续解析
+        try {
+            channel.writeInbound(Unpooled.copiedBuffer("1\n2x3\n4\n", CharsetUtil.US_ASCII));
+            fail();
+        } catch (CorruptedFrameException e) {
+            // expected exception
+        }
+        try {
+            channel.writeInbound(Unpooled.copiedBuffer("2147483648\n5\n", CharsetUtil.US_ASCII));
+            fail();
+        } catch (CorruptedFrameException e) {
+            // expected exception
+        }
+        assertFalse(channel.finish());
+
+        assertEquals(List.of(1, 4, 5), values);
+    }
+
+    @Test
+    public void testRoundTrip() {
+        int[] expected = new int[10000];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = (i - 5000) * 429497;
+        }
+
+        EmbeddedChannel encoder = new EmbeddedChannel(new AsciiIntegerEncoder((byte) ','));
+        assertTrue(encoder.writeOutbound(expected));
+        ByteBuf encoded = encoder.readOutbound();
+
+        List<Integer> values = new ArrayList<>();
+        EmbeddedChannel decoder = new EmbeddedChannel(
+                new AsciiIntegerDecoder((byte) ',', 64), new ValueCollector(values));
+        decoder.writeInbound(encoded);
+        assertFalse(decoder.finish());
+
+        assertEquals(expected.length, values.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], (int) values.get(i));
+        }
+    }
+
+    private static String readString(EmbeddedChannel channel) {
+        ByteBuf buf = channel.readOutbound();
+        String str = buf.toString(CharsetUtil.US_ASCII);
+        buf.release();
+        return str;
+    }
+
+    private static class ValueCollector extends ChannelInboundHandlerAdapter {
+        private final List<Integer> values;
+
+        ValueCollector(List<Integer> values) {
+            this.values = values;
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            IntBatch batch = (IntBatch) msg;
+            for (int i = 0; i < batch.size(); i++) {
+                values.add(batch.get(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package cn.zifangsky.netty.exercise.chapter10;
+
+import cn.zifangsky.netty.exercise.BenchmarkUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比{@link CombinedByteCharCodec}（每个字符一个消息）与{@link CombinedBulkByteCharCodec}的耗时和分配情况，结果按照每个字符计算
+ * <p>文本中包含代理对，入站数据按照1461字节（奇数）拆分为多次读取；出站时每个字符一个Character或者整个字符串一次写出</p>
+ *
+ * @author zifangsky
+ * @date 2020/11/23
+ * @since 1.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class ByteCharCodecBenchmark {
+    private static final int CHARS_PER_INVOCATION = 4096;
+    private static final int READ_SIZE = 1461;
+
+    public enum Codec {
+        PER_CHAR, BULK
+    }
+
+    @Param({"PER_CHAR", "BULK"})
+    public Codec codec;
+
+    private EmbeddedChannel channel;
+    private ByteBuf input;
+    private String text;
+    private long count;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.channel = new EmbeddedChannel(new ChannelOutboundHandlerAdapter() {
+            @Override
+            public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+                count++;
+                ReferenceCountUtil.release(msg);
+                promise.setSuccess();
+            }
+        }, codec == Codec.BULK ? new CombinedBulkByteCharCodec() : new CombinedByteCharCodec(),
+                new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                count += msg instanceof CharBuffer ? ((CharBuffer) msg).remaining() : 1;
+            }
+        });
+
+        StringBuilder builder = new StringBuilder(CHARS_PER_INVOCATION);
+        while (builder.length() < CHARS_PER_INVOCATION) {
+            builder.append("Netty 是一个异步事件驱动的网络应用框架 😀 ");
+        }
+        builder.setLength(CHARS_PER_INVOCATION);
+        this.text = builder.toString();
+        this.input = PooledByteBufAllocator.DEFAULT.directBuffer();
+        input.writeCharSequence(text, StandardCharsets.UTF_16BE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        input.release();
+        channel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHARS_PER_INVOCATION)
+    public long decode() {
+        ByteBuf in = input.duplicate();
+        while (in.isReadable()) {
+            channel.writeInbound(in.readRetainedSlice(Math.min(READ_SIZE, in.readableBytes())));
+        }
+        return count;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHARS_PER_INVOCATION)
+    public long encode() {
+        if (codec == Codec.BULK) {
+            channel.writeOutbound(text);
+        } else {
+            for (int i = 0; i < CHARS_PER_INVOCATION; i++) {
+                channel.write(text.charAt(i));
+            }
+            channel.flushOutbound();
+        }
+        return count;
+    }
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkUtils.run(ByteCharCodecBenchmark.class);
+    }
+}
@@ -0,0 +1,109 @@
+package cn.zifangsky.netty.exercise.chapter10;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testing the CombinedBulkByteCharCodec
+ *
+ * @author zifangsky
+ * @date 2020/11/23
+ * @since 1.0.0
+ */
+public class CombinedBulkByteCharCodecTest {
+    /**
+     * 包含代理对（emoji和CJK扩展B区的字符）
+     */
+    private static final String TEXT = "abc😀de𠀀f😁";
+
+    @Test
+    public void testEncoded() {
+        EmbeddedChannel channel = new EmbeddedChannel(new CombinedBulkByteCharCodec());
+        assertTrue(channel.writeOutbound(TEXT));
+        assertTrue(channel.writeOutbound(CharBuffer.wrap(TEXT)));
+        assertTrue(channel.writeOutbound(new StringBuilder(TEXT)));
+        assertTrue(channel.writeOutbound('x'));
+        assertTrue(channel.finish());
+
+        //一个CharSequence只产生一个ByteBuf
+        for (int i = 0; i < 3; i++) {
+            ByteBuf read = channel.readOutbound();
+            assertEquals(TEXT, read.toString(StandardCharsets.UTF_16BE));
+            read.release();
+        }
+        ByteBuf read = channel.readOutbound();
+        assertEquals('x', read.readChar());
+        read.release();
+        assertNull(channel.readOutbound());
+    }
+
+    @Test
+    public void testSplitSurrogatePairsDecoded() {
+        ByteBuf buf = Unpooled.copiedBuffer(TEXT, StandardCharsets.UTF_16BE);
+
+        //每次写入任意长度（包括奇数字节）时，每个消息都不会以高代理项结尾
+        for (int fragment = 1; fragment <= 7; fragment++) {
+            for (int batchSize = 2; batchSize <= 5; batchSize++) {
+                List<String> messages = new ArrayList<>();
+                EmbeddedChannel channel = new EmbeddedChannel(
+                        new CombinedBulkByteCharCodec(batchSize), new MessageCollector(messages));
+
+                ByteBuf input = buf.duplicate();
+                while (input.isReadable()) {
+                    channel.writeInbound(input.readRetainedSlice(Math.min(fragment, input.readableBytes())));
+                }
+                assertFalse(channel.finish());
+
+                StringBuilder text = new StringBuilder();
+                for (String message : messages) {
+                    assertTrue(message.length() <= batchSize);
+                    assertFalse(Character.isHighSurrogate(message.charAt(message.length() - 1)), message);
+                    assertFalse(Character.isLowSurrogate(message.charAt(0)), message);
+                    text.append(message);
+                }
+                assertEquals(TEXT, text.toString());
+            }
+        }
+        assertEquals(1, buf.refCnt());
+        buf.release();
+    }
+
+    @Test
+    public void testDanglingHighSurrogateFlushedOnInactive() {
+        List<String> messages = new ArrayList<>();
+        EmbeddedChannel channel = new EmbeddedChannel(new CombinedBulkByteCharCodec(), new MessageCollector(messages));
+        //单独的高代理项不能通过字符集编码，直接写入
+        channel.writeInbound(Unpooled.buffer().writeChar('a').writeChar('\uD83D'));
+        assertEquals(List.of("a"), messages);
+
+        assertFalse(channel.finish());
+        assertEquals(List.of("a", "\uD83D"), messages);
+    }
+
+    /**
+     * CharBuffer会被解码器复用，需要复制出来
+     */
+    private static class MessageCollector extends ChannelInboundHandlerAdapter {
+        private final List<String> messages;
+
+        MessageCollector(List<String> messages) {
+            this.messages = messages;
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            messages.add(msg.toString());
+        }
+    }
+}
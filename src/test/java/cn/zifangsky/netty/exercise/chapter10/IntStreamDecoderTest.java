@@ -0,0 +1,92 @@
+package cn.zifangsky.netty.exercise.chapter10;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testing the IntStreamDecoder
+ *
+ * @author zifangsky
+ * @date 2020/11/22
+ * @since 1.0.0
+ */
+public class IntStreamDecoderTest {
+
+    @Test
+    public void testFragmentedInput() {
+        ByteBuf buf = Unpooled.buffer();
+        for (int i = 0; i < 10; i++) {
+            buf.writeInt(i * -100000);
+        }
+
+        List<int[]> batches = new ArrayList<>();
+        EmbeddedChannel channel = new EmbeddedChannel(
+                new IntStreamDecoder(ByteOrder.BIG_ENDIAN, 4), new BatchCollector(batches));
+
+        //每次只写入3个字节，不完整的int会在下次读取时补全
+        while (buf.isReadable()) {
+            channel.writeInbound(buf.readRetainedSlice(Math.min(3, buf.readableBytes())));
+        }
+        assertFalse(channel.finish());
+
+        List<Integer> values = new ArrayList<>();
+        for (int[] batch : batches) {
+            assertTrue(batch.length <= 4);
+            for (int value : batch) {
+                values.add(value);
+            }
+        }
+        assertEquals(10, values.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i * -100000, (int) values.get(i));
+        }
+        buf.release();
+        assertEquals(0, buf.refCnt());
+    }
+
+    @Test
+    public void testLittleEndian() {
+        ByteBuf buf = Unpooled.buffer();
+        for (int i = 1; i <= 5; i++) {
+            buf.writeIntLE(i);
+        }
+
+        List<int[]> batches = new ArrayList<>();
+        EmbeddedChannel channel = new EmbeddedChannel(
+                new IntStreamDecoder(ByteOrder.LITTLE_ENDIAN, 16), new BatchCollector(batches));
+        channel.writeInbound(buf.readRetainedSlice(6));
+        channel.writeInbound(buf.readRetainedSlice(14));
+        assertFalse(channel.finish());
+
+        assertEquals(2, batches.size());
+        assertArrayEquals(new int[]{1}, batches.get(0));
+        assertArrayEquals(new int[]{2, 3, 4, 5}, batches.get(1));
+        buf.release();
+    }
+
+    /**
+     * 批次会被解码器复用，需要复制出来
+     */
+    private static class BatchCollector extends ChannelInboundHandlerAdapter {
+        private final List<int[]> batches;
+
+        BatchCollector(List<int[]> batches) {
+            this.batches = batches;
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            batches.add(((IntBatch) msg).toArray());
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package cn.zifangsky.netty.exercise.chapter10;
+
+import cn.zifangsky.netty.exercise.BenchmarkUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比{@link ToIntegerDecoder}、{@link ToIntegerDecoder2}与{@link IntStreamDecoder}解码分段到达的int数据流的耗时和分配情况
+ * <p>每次调用写入4096个int，按照fragmentSize拆分为多次读取（7字节时几乎每次读取都会留下不完整的int），结果按照每个int计算</p>
+ *
+ * @author zifangsky
+ * @date 2020/11/22
+ * @since 1.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class IntegerDecoderBenchmark {
+    private static final int VALUES_PER_INVOCATION = 4096;
+
+    public enum Decoder {
+        BOXED, REPLAYING, STREAM
+    }
+
+    @Param({"BOXED", "REPLAYING", "STREAM"})
+    public Decoder decoder;
+
+    @Param({"7", "1460"})
+    public int fragmentSize;
+
+    private EmbeddedChannel channel;
+    private ByteBuf input;
+    private long values;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ChannelHandler handler;
+        switch (decoder) {
+            case BOXED:
+                handler = new ToIntegerDecoder();
+                break;
+            case REPLAYING:
+                handler = new ToIntegerDecoder2();
+                break;
+            default:
+                handler = new IntStreamDecoder();
+        }
+        this.channel = new EmbeddedChannel(handler, new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                values += msg instanceof IntBatch ? ((IntBatch) msg).size() : 1;
+            }
+        });
+
+        this.input = PooledByteBufAllocator.DEFAULT.directBuffer(VALUES_PER_INVOCATION * 4);
+        for (int i = 0; i < VALUES_PER_INVOCATION; i++) {
+            input.writeInt(i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        input.release();
+        channel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES_PER_INVOCATION)
+    public long decode() {
+        ByteBuf in = input.duplicate();
+        while (in.isReadable()) {
+            channel.writeInbound(in.readRetainedSlice(Math.min(fragmentSize, in.readableBytes())));
+        }
+        return values;
+    }
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkUtils.run(IntegerDecoderBenchmark.class);
+    }
+}
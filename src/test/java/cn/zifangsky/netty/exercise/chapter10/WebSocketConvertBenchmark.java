@@ -0,0 +1,78 @@
+package cn.zifangsky.netty.exercise.chapter10;
+
+import cn.zifangsky.netty.exercise.BenchmarkUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.util.ReferenceCountUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link WebSocketConvertHandler}每个帧的转换耗时和分配情况，
+ * 对比是否创建ByteBuf的duplicate()
+ * <p>两个方向的转换结果都由下一个处理器直接释放。入站的TextWebSocketFrame和出站的MyWebSocketFrame在每次调用中创建，
+ * 它们的分配在两种情况下相同</p>
+ *
+ * @author zifangsky
+ * @date 2020/11/23
+ * @since 1.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class WebSocketConvertBenchmark {
+
+    @Param({"false", "true"})
+    public boolean transferOwnership;
+
+    private EmbeddedChannel channel;
+    private ByteBuf payload;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.channel = new EmbeddedChannel(new ChannelOutboundHandlerAdapter() {
+            @Override
+            public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+                ReferenceCountUtil.release(msg);
+                promise.setSuccess();
+            }
+        }, new WebSocketConvertHandler(transferOwnership), new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                ReferenceCountUtil.release(msg);
+            }
+        });
+        this.payload = Unpooled.directBuffer(128).writeZero(128);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        payload.release();
+        channel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public void decode() {
+        channel.writeInbound(new TextWebSocketFrame(payload.retain()));
+    }
+
+    @Benchmark
+    public void encode() {
+        channel.writeOutbound(WebSocketConvertHandler.MyWebSocketFrame.newInstance(
+                WebSocketConvertHandler.MyWebSocketFrame.FrameType.TEXT, payload.retain()));
+    }
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkUtils.run(WebSocketConvertBenchmark.class);
+    }
+}
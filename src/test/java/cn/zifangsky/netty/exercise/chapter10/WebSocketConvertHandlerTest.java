@@ -0,0 +1,78 @@
+package cn.zifangsky.netty.exercise.chapter10;
+
+import cn.zifangsky.netty.exercise.chapter10.WebSocketConvertHandler.MyWebSocketFrame;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.*;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testing the WebSocketConvertHandler
+ *
+ * @author zifangsky
+ * @date 2020/11/23
+ * @since 1.0.0
+ */
+public class WebSocketConvertHandlerTest {
+
+    @Test
+    public void testFrameTypesConverted() {
+        for (boolean transferOwnership : new boolean[]{false, true}) {
+            EmbeddedChannel channel = new EmbeddedChannel(new WebSocketConvertHandler(transferOwnership));
+            WebSocketFrame[] frames = {new BinaryWebSocketFrame(payload()), new CloseWebSocketFrame(true, 0, payload()),
+                    new PingWebSocketFrame(payload()), new PongWebSocketFrame(payload()),
+                    new TextWebSocketFrame(payload()), new ContinuationWebSocketFrame(payload())};
+            int[] opcodes = {0x2, 0x8, 0x9, 0xA, 0x1, 0x0};
+
+            for (int i = 0; i < frames.length; i++) {
+                WebSocketFrame frame = frames[i];
+                assertTrue(channel.writeInbound(frame));
+                MyWebSocketFrame read = channel.readInbound();
+                assertSame(MyWebSocketFrame.FrameType.valueOf(opcodes[i]), read.getType());
+                assertEquals("netty", read.getData().toString(StandardCharsets.US_ASCII));
+
+                //转换回原来的类型，原始帧的内容在最后一个引用释放之后才被释放
+                assertTrue(channel.writeOutbound(read));
+                assertEquals(0, read.refCnt());
+                WebSocketFrame written = channel.readOutbound();
+                assertSame(frame.getClass(), written.getClass());
+                assertEquals("netty", written.content().toString(StandardCharsets.US_ASCII));
+                assertEquals(1, frame.refCnt());
+                written.release();
+                assertEquals(0, frame.refCnt());
+            }
+            assertFalse(channel.finish());
+        }
+    }
+
+    @Test
+    public void testDuplicateKeepsSourceIndexes() {
+        ByteBuf payload = payload();
+        EmbeddedChannel channel = new EmbeddedChannel(new WebSocketConvertHandler());
+        assertTrue(channel.writeInbound(new TextWebSocketFrame(payload.retain())));
+        MyWebSocketFrame read = channel.readInbound();
+        read.getData().skipBytes(2);
+        assertEquals(0, payload.readerIndex());
+        read.release();
+        assertEquals(1, payload.refCnt());
+        payload.release();
+    }
+
+    @Test
+    public void testOpcodeLookup() {
+        for (MyWebSocketFrame.FrameType type : MyWebSocketFrame.FrameType.values()) {
+            assertSame(type, MyWebSocketFrame.FrameType.valueOf(type.opcode()));
+        }
+        assertThrows(IllegalArgumentException.class, () -> MyWebSocketFrame.FrameType.valueOf(0x3));
+        assertThrows(IllegalArgumentException.class, () -> MyWebSocketFrame.FrameType.valueOf(0x10));
+    }
+
+    private static ByteBuf payload() {
+        return Unpooled.copiedBuffer("netty", StandardCharsets.US_ASCII);
+    }
+}
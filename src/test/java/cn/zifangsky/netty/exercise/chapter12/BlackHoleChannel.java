@@ -0,0 +1,99 @@
+package cn.zifangsky.netty.exercise.chapter12;
+
+import io.netty.channel.AbstractChannel;
+import io.netty.channel.ChannelConfig;
+import io.netty.channel.ChannelMetadata;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.DefaultChannelConfig;
+import io.netty.channel.EventLoop;
+
+import java.net.SocketAddress;
+
+/**
+ * 用于基准测试的模拟成员：可以注册到任意EventLoop，写出的消息在冲刷时直接被释放
+ *
+ * @author zifangsky
+ * @date 2020/11/5
+ * @since 1.0.0
+ */
+public class BlackHoleChannel extends AbstractChannel {
+    private static final ChannelMetadata METADATA = new ChannelMetadata(false);
+
+    private final ChannelConfig config = new DefaultChannelConfig(this);
+    private volatile boolean open = true;
+
+    public BlackHoleChannel() {
+        super(null);
+    }
+
+    @Override
+    protected AbstractUnsafe newUnsafe() {
+        return new AbstractUnsafe() {
+            @Override
+            public void connect(SocketAddress remoteAddress, SocketAddress localAddress, ChannelPromise promise) {
+                promise.setFailure(new UnsupportedOperationException());
+            }
+        };
+    }
+
+    @Override
+    protected boolean isCompatible(EventLoop loop) {
+        return true;
+    }
+
+    @Override
+    protected SocketAddress localAddress0() {
+        return null;
+    }
+
+    @Override
+    protected SocketAddress remoteAddress0() {
+        return null;
+    }
+
+    @Override
+    protected void doBind(SocketAddress localAddress) {
+    }
+
+    @Override
+    protected void doDisconnect() {
+    }
+
+    @Override
+    protected void doClose() {
+        this.open = false;
+    }
+
+    @Override
+    protected void doBeginRead() {
+    }
+
+    @Override
+    protected void doWrite(ChannelOutboundBuffer in) {
+        //释放所有已冲刷的消息
+        while (in.remove()) {
+            // discard
+        }
+    }
+
+    @Override
+    public ChannelConfig config() {
+        return config;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public boolean isActive() {
+        return open;
+    }
+
+    @Override
+    public ChannelMetadata metadata() {
+        return METADATA;
+    }
+}
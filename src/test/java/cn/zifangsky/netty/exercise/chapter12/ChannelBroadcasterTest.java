@@ -0,0 +1,279 @@
+package cn.zifangsky.netty.exercise.chapter12;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.DefaultEventLoop;
+import io.netty.channel.EventLoop;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.CharsetUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testing the SlowConsumerPolicy of ChannelBroadcaster
+ * <p>通过很低的写水位线和一条未冲刷的消息让接收者变为不可写</p>
+ *
+ * @author zifangsky
+ * @date 2020/11/24
+ * @since 1.0.0
+ */
+public class ChannelBroadcasterTest {
+
+    @Test
+    public void testDropPolicy() {
+        ChannelBroadcaster broadcaster = new ChannelBroadcaster(SlowConsumerPolicy.DROP, 1);
+        EmbeddedChannel fast = newMember(broadcaster);
+        EmbeddedChannel slow = newMember(broadcaster);
+        ByteBuf blocker = block(slow);
+
+        List<ByteBuf> messages = broadcast(broadcaster, fast, slow, "a", "b", "c");
+        assertEquals(List.of("a", "b", "c"), readAll(fast));
+        assertEquals(3, broadcaster.droppedCount());
+        assertEquals(0, broadcaster.coalescedCount());
+
+        //重新变为可写后不会补发被丢弃的消息
+        slow.flush();
+        assertEquals(List.of("blocker"), readAll(slow));
+        assertTrue(slow.isActive());
+        assertReleased(messages, blocker);
+        finish(fast, slow);
+    }
+
+    @Test
+    public void testCoalescePolicy() {
+        ChannelBroadcaster broadcaster = new ChannelBroadcaster(SlowConsumerPolicy.COALESCE, 1);
+        EmbeddedChannel fast = newMember(broadcaster);
+        EmbeddedChannel slow = newMember(broadcaster);
+        ByteBuf blocker = block(slow);
+
+        List<ByteBuf> messages = broadcast(broadcaster, fast, slow, "a", "b", "c");
+        assertEquals(List.of("a", "b", "c"), readAll(fast));
+        assertEquals(0, broadcaster.droppedCount());
+        assertEquals(2, broadcaster.coalescedCount());
+        //只有最新的消息仍被保留（测试自身还持有每条消息的一个引用）
+        assertEquals(1, messages.get(0).refCnt());
+        assertEquals(1, messages.get(1).refCnt());
+        assertEquals(2, messages.get(2).refCnt());
+
+        //重新变为可写后发送最新的消息
+        slow.flush();
+        assertEquals(List.of("blocker", "c"), readAll(slow));
+        assertReleased(messages, blocker);
+        finish(fast, slow);
+    }
+
+    @Test
+    public void testCoalescedMessageReleasedOnClose() {
+        ChannelBroadcaster broadcaster = new ChannelBroadcaster(SlowConsumerPolicy.COALESCE, 1);
+        EmbeddedChannel slow = newMember(broadcaster);
+        ByteBuf blocker = block(slow);
+
+        List<ByteBuf> messages = broadcast(broadcaster, slow, slow, "a");
+        assertEquals(2, messages.get(0).refCnt());
+        slow.close();
+        slow.runPendingTasks();
+        assertEquals(0, broadcaster.size());
+        assertReleased(messages, blocker);
+    }
+
+    @Test
+    public void testCoalescedMessageSupersededBeforeWritabilityEvent() {
+        ChannelBroadcaster broadcaster = new ChannelBroadcaster(SlowConsumerPolicy.COALESCE, 1);
+        //可写事件在EventLoop的下一个任务中才通知给广播器
+        EmbeddedChannel slow = new EmbeddedChannel(new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+                Channel channel = ctx.channel();
+                channel.eventLoop().execute(() -> broadcaster.writabilityChanged(channel));
+                ctx.fireChannelWritabilityChanged();
+            }
+        });
+        slow.config().setWriteBufferWaterMark(new WriteBufferWaterMark(1, 8));
+        broadcaster.add(slow);
+        slow.runPendingTasks();
+        ByteBuf blocker = block(slow);
+        List<ByteBuf> messages = broadcast(broadcaster, slow, slow, "a");
+
+        //广播任务先于可写事件执行，保留的旧消息不能在新消息之后发送
+        ByteBuf b = Unpooled.copiedBuffer("b", CharsetUtil.UTF_8);
+        messages.add(b);
+        broadcaster.broadcast(b.retain());
+        slow.flush();
+        slow.runPendingTasks();
+        assertEquals(List.of("blocker", "b"), readAll(slow));
+        assertEquals(1, broadcaster.coalescedCount());
+        assertReleased(messages, blocker);
+        finish(slow);
+    }
+
+    @Test
+    public void testPolicyPerMember() {
+        ChannelBroadcaster broadcaster = new ChannelBroadcaster(SlowConsumerPolicy.DROP, 1);
+        EmbeddedChannel dropping = newMember(broadcaster);
+        EmbeddedChannel coalescing = newMember(broadcaster, SlowConsumerPolicy.COALESCE);
+        ByteBuf firstBlocker = block(dropping);
+        ByteBuf secondBlocker = block(coalescing);
+
+        List<ByteBuf> messages = broadcast(broadcaster, dropping, coalescing, "a", "b");
+        assertEquals(2, broadcaster.droppedCount());
+        assertEquals(1, broadcaster.coalescedCount());
+
+        dropping.flush();
+        coalescing.flush();
+        assertEquals(List.of("blocker"), readAll(dropping));
+        assertEquals(List.of("blocker", "b"), readAll(coalescing));
+        assertReleased(messages, firstBlocker, secondBlocker);
+        finish(dropping, coalescing);
+    }
+
+    /**
+     * EmbeddedChannel#close()会同步执行所有待执行的任务（包括移除成员的任务），与真实的EventLoop不同，因此这里使用DefaultEventLoop
+     */
+    @Test
+    public void testDisconnectPolicy() throws Exception {
+        ChannelBroadcaster broadcaster = new ChannelBroadcaster(SlowConsumerPolicy.DISCONNECT, 2);
+        EventLoop loop = new DefaultEventLoop();
+        try {
+            Channel fast = newMember(broadcaster, loop);
+            Channel slow = newMember(broadcaster, loop);
+            ByteBuf blocker = loop.submit(() -> block(slow)).get();
+
+            //连续丢弃的消息数在重新变为可写后清零
+            List<ByteBuf> messages = new ArrayList<>(broadcast(broadcaster, loop, "a", "b"));
+            loop.submit(() -> slow.flush()).sync();
+            assertTrue(slow.isActive());
+            ByteBuf secondBlocker = loop.submit(() -> block(slow)).get();
+
+            messages.addAll(broadcast(broadcaster, loop, "c", "d"));
+            assertTrue(slow.isActive());
+            messages.addAll(broadcast(broadcaster, loop, "e"));
+            assertFalse(slow.isActive());
+            assertTrue(fast.isActive());
+            assertEquals(5, broadcaster.droppedCount());
+            assertEquals(1, broadcaster.disconnectedCount());
+
+            loop.submit(() -> { }).sync();
+            assertEquals(1, broadcaster.size());
+            assertReleased(messages, blocker, secondBlocker);
+            fast.close().sync();
+        } finally {
+            loop.shutdownGracefully().sync();
+        }
+    }
+
+    private static Channel newMember(ChannelBroadcaster broadcaster, EventLoop loop) throws InterruptedException {
+        Channel channel = new BlackHoleChannel();
+        channel.pipeline().addLast(new WritabilityHandler(broadcaster));
+        channel.config().setWriteBufferWaterMark(new WriteBufferWaterMark(1, 8));
+        loop.register(channel).sync();
+        broadcaster.add(channel);
+        return channel;
+    }
+
+    private static List<ByteBuf> broadcast(ChannelBroadcaster broadcaster, EventLoop loop, String... texts)
+            throws InterruptedException {
+        List<ByteBuf> messages = new ArrayList<>();
+        for (String text : texts) {
+            ByteBuf msg = Unpooled.copiedBuffer(text, CharsetUtil.UTF_8);
+            messages.add(msg);
+            broadcaster.broadcast(msg.retain());
+            loop.submit(() -> { }).sync();
+        }
+        return messages;
+    }
+
+    private static EmbeddedChannel newMember(ChannelBroadcaster broadcaster) {
+        return newMember(broadcaster, (SlowConsumerPolicy) null);
+    }
+
+    /**
+     * @param policy 为null时使用广播器的默认策略
+     */
+    private static EmbeddedChannel newMember(ChannelBroadcaster broadcaster, SlowConsumerPolicy policy) {
+        EmbeddedChannel channel = new EmbeddedChannel(new WritabilityHandler(broadcaster));
+        channel.config().setWriteBufferWaterMark(new WriteBufferWaterMark(1, 8));
+        if (policy != null) {
+            broadcaster.add(channel, policy);
+        } else {
+            broadcaster.add(channel);
+        }
+        channel.runPendingTasks();
+        return channel;
+    }
+
+    /**
+     * 写入一条超过高水位线且未冲刷的消息
+     */
+    private static ByteBuf block(Channel channel) {
+        ByteBuf blocker = Unpooled.copiedBuffer("blocker", CharsetUtil.UTF_8);
+        channel.write(blocker.retain().writeZero(8));
+        assertFalse(channel.isWritable());
+        return blocker;
+    }
+
+    private static List<ByteBuf> broadcast(ChannelBroadcaster broadcaster, EmbeddedChannel fast, EmbeddedChannel slow,
+                                           String... texts) {
+        List<ByteBuf> messages = new ArrayList<>();
+        for (String text : texts) {
+            ByteBuf msg = Unpooled.copiedBuffer(text, CharsetUtil.UTF_8);
+            messages.add(msg);
+            broadcaster.broadcast(msg.retain());
+            //两个成员可能共享同一个EmbeddedEventLoop，也可能不共享
+            fast.runPendingTasks();
+            slow.runPendingTasks();
+        }
+        return messages;
+    }
+
+    private static List<String> readAll(EmbeddedChannel channel) {
+        List<String> texts = new ArrayList<>();
+        ByteBuf buf;
+        while ((buf = channel.readOutbound()) != null) {
+            texts.add(buf.toString(CharsetUtil.UTF_8).replace("\0", ""));
+            buf.release();
+        }
+        return texts;
+    }
+
+    private static void assertReleased(List<ByteBuf> messages, ByteBuf... others) {
+        for (ByteBuf msg : messages) {
+            assertEquals(1, msg.refCnt(), msg.toString(CharsetUtil.UTF_8));
+            msg.release();
+        }
+        for (ByteBuf other : others) {
+            assertEquals(1, other.refCnt());
+            other.release();
+        }
+    }
+
+    private static void finish(EmbeddedChannel... channels) {
+        for (EmbeddedChannel channel : channels) {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    /**
+     * 与TextWebSocketFrameHandler相同，将可写状态的变化通知给广播器
+     */
+    private static class WritabilityHandler extends ChannelInboundHandlerAdapter {
+        private final ChannelBroadcaster broadcaster;
+
+        WritabilityHandler(ChannelBroadcaster broadcaster) {
+            this.broadcaster = broadcaster;
+        }
+
+        @Override
+        public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+            broadcaster.writabilityChanged(ctx.channel());
+            ctx.fireChannelWritabilityChanged();
+        }
+    }
+}
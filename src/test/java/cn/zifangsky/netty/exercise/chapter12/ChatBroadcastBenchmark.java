@@ -0,0 +1,105 @@
+package cn.zifangsky.netty.exercise.chapter12;
+
+import cn.zifangsky.netty.exercise.BenchmarkUtils;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.util.CharsetUtil;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比{@link DefaultChannelGroup}和{@link ChannelBroadcaster}向大量成员广播一条消息的耗时
+ * <p>成员使用{@link BlackHoleChannel}模拟，均匀分布在多个EventLoop中；每次操作都会等待所有成员写出完成</p>
+ *
+ * @author zifangsky
+ * @date 2020/11/5
+ * @since 1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class ChatBroadcastBenchmark {
+
+    @Param({"10000", "100000"})
+    public int members;
+
+    @Param({"4"})
+    public int eventLoops;
+
+    private EventLoopGroup group;
+    private ChannelGroup channelGroup;
+    private ChannelBroadcaster broadcaster;
+    private TextWebSocketFrame frame;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        this.group = new DefaultEventLoopGroup(eventLoops);
+        this.channelGroup = new DefaultChannelGroup(ImmediateEventExecutor.INSTANCE);
+        this.broadcaster = new ChannelBroadcaster();
+
+        for (int i = 0; i < members; i++) {
+            Channel channel = new BlackHoleChannel();
+            group.register(channel).sync();
+            channelGroup.add(channel);
+            broadcaster.add(channel);
+        }
+        this.awaitEventLoops();
+
+        this.frame = new TextWebSocketFrame(Unpooled.copiedBuffer("[a1b2c3d4] say: hello everyone", CharsetUtil.UTF_8));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        channelGroup.close().sync();
+        frame.release();
+        group.shutdownGracefully().sync();
+    }
+
+    /**
+     * 原有方式：每个成员一次writeAndFlush
+     */
+    @Benchmark
+    public void channelGroup() {
+        channelGroup.writeAndFlush(frame.retainedDuplicate()).syncUninterruptibly();
+    }
+
+    /**
+     * 分片批量广播：每个EventLoop一个任务，每个成员只冲刷一次
+     */
+    @Benchmark
+    public void broadcaster() throws Exception {
+        broadcaster.broadcast(frame.retainedDuplicate());
+        this.awaitEventLoops();
+    }
+
+    /**
+     * EventLoop中的任务按顺序执行，因此在每个EventLoop中提交的空任务完成时，之前提交的广播任务也已经完成
+     */
+    private void awaitEventLoops() throws Exception {
+        List<Future<?>> futures = new ArrayList<>(eventLoops);
+        for (EventExecutor executor : group) {
+            futures.add(executor.submit(() -> { }));
+        }
+        for (Future<?> future : futures) {
+            future.sync();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkUtils.run(ChatBroadcastBenchmark.class);
+    }
+}
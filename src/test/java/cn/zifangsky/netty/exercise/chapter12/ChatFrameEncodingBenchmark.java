@@ -0,0 +1,107 @@
+package cn.zifangsky.netty.exercise.chapter12;
+
+import cn.zifangsky.netty.exercise.BenchmarkUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocket08FrameEncoder;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比聊天消息广播时每个接收者单独编码WebSocket帧与预先编码一次的分配情况
+ * <p>每个接收者写出的数据都会经过一个服务端的{@link WebSocket08FrameEncoder}，与握手完成后的ChannelPipeline一致</p>
+ *
+ * @author zifangsky
+ * @date 2020/11/6
+ * @since 1.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class ChatFrameEncodingBenchmark {
+
+    @Param({"1", "100"})
+    public int recipients;
+
+    @Param({"32", "4096"})
+    public int messageSize;
+
+    private EmbeddedChannel sender;
+    private EmbeddedChannel recipient;
+    private TextWebSocketFrame inbound;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.sender = new EmbeddedChannel();
+        this.recipient = new EmbeddedChannel(new WebSocket08FrameEncoder(false));
+
+        byte[] text = new byte[messageSize];
+        Arrays.fill(text, (byte) 'x');
+        this.inbound = new TextWebSocketFrame(Unpooled.wrappedBuffer(text));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        inbound.release();
+        sender.finishAndReleaseAll();
+        recipient.finishAndReleaseAll();
+    }
+
+    /**
+     * 原有方式：String.format + Unpooled.copiedBuffer，然后每个接收者都由WebSocket编码器重新编码一次
+     */
+    @Benchmark
+    public int encodePerRecipient() {
+        String resMsg = String.format("[%s] say: %s", sender.id(), inbound.text());
+        TextWebSocketFrame msg = inbound.replace(Unpooled.copiedBuffer(resMsg, CharsetUtil.UTF_8));
+
+        int bytes = 0;
+        for (int i = 0; i < recipients; i++) {
+            recipient.writeOutbound(msg.retainedDuplicate());
+            bytes += drain();
+        }
+        msg.release();
+        return bytes;
+    }
+
+    /**
+     * 预先编码一次完整的帧，每个接收者只需要一个retainedDuplicate()
+     */
+    @Benchmark
+    public int preEncoded() {
+        ByteBuf frame = TextWebSocketFrameHandler.encodeChatMessage(
+                ByteBufAllocator.DEFAULT, sender.id(), inbound.content());
+
+        int bytes = 0;
+        for (int i = 0; i < recipients; i++) {
+            recipient.writeOutbound(frame.retainedDuplicate());
+            bytes += drain();
+        }
+        frame.release();
+        return bytes;
+    }
+
+    private int drain() {
+        int bytes = 0;
+        Object out;
+        while ((out = recipient.readOutbound()) != null) {
+            bytes += ((ByteBuf) out).readableBytes();
+            ReferenceCountUtil.release(out);
+        }
+        return bytes;
+    }
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkUtils.run(ChatFrameEncodingBenchmark.class);
+    }
+}
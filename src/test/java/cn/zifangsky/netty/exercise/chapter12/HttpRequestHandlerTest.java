@@ -0,0 +1,95 @@
+package cn.zifangsky.netty.exercise.chapter12;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testing the cached index.html of HttpRequestHandler and the ETags of StaticResourceCache
+ *
+ * @author zifangsky
+ * @date 2020/11/24
+ * @since 1.0.0
+ */
+public class HttpRequestHandlerTest {
+
+    @Test
+    public void testRepresentationsHaveDistinctEtags() {
+        EmbeddedChannel channel = new EmbeddedChannel(new HttpRequestHandler("/ws"));
+        FullHttpResponse gzip = request(channel, "gzip", null);
+        FullHttpResponse identity = request(channel, null, null);
+        assertEquals(HttpResponseStatus.OK, gzip.status());
+        assertEquals(HttpResponseStatus.OK, identity.status());
+        assertEquals("gzip", gzip.headers().get(HttpHeaderNames.CONTENT_ENCODING));
+        assertNull(identity.headers().get(HttpHeaderNames.CONTENT_ENCODING));
+
+        String gzipEtag = gzip.headers().get(HttpHeaderNames.ETAG);
+        String identityEtag = identity.headers().get(HttpHeaderNames.ETAG);
+        assertNotEquals(gzipEtag, identityEtag);
+        assertEquals(HttpHeaderNames.ACCEPT_ENCODING.toString(), gzip.headers().get(HttpHeaderNames.VARY));
+
+        //每个表示只对自己的ETag返回304
+        assertEquals(HttpResponseStatus.NOT_MODIFIED, request(channel, "gzip", gzipEtag).status());
+        assertEquals(HttpResponseStatus.NOT_MODIFIED, request(channel, null, identityEtag).status());
+        assertEquals(HttpResponseStatus.OK, request(channel, null, gzipEtag).status());
+        assertEquals(HttpResponseStatus.OK, request(channel, "gzip", identityEtag).status());
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void testNotModifiedHasNoContentLength() {
+        EmbeddedChannel channel = new EmbeddedChannel(new HttpRequestHandler("/ws"));
+        String etag = request(channel, null, null).headers().get(HttpHeaderNames.ETAG);
+
+        FullHttpResponse response = request(channel, null, etag);
+        assertEquals(HttpResponseStatus.NOT_MODIFIED, response.status());
+        assertFalse(response.headers().contains(HttpHeaderNames.CONTENT_LENGTH));
+        assertEquals(etag, response.headers().get(HttpHeaderNames.ETAG));
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void testEtagChangesWithSameLengthAndModifiedTime(@TempDir Path dir) throws Exception {
+        File file = dir.resolve("a.txt").toFile();
+        FileTime time = FileTime.fromMillis(1_600_000_000_000L);
+        try (StaticResourceCache cache = new StaticResourceCache()) {
+            Files.write(file.toPath(), "aaaa".getBytes(StandardCharsets.US_ASCII));
+            Files.setLastModifiedTime(file.toPath(), time);
+            cache.register("/a.txt", file, "text/plain");
+            String first = cache.get("/a.txt").getEtag(false);
+
+            Files.write(file.toPath(), "bbbb".getBytes(StandardCharsets.US_ASCII));
+            Files.setLastModifiedTime(file.toPath(), time);
+            cache.register("/a.txt", file, "text/plain");
+            StaticResourceCache.CachedResource resource = cache.get("/a.txt");
+            assertNotEquals(first, resource.getEtag(false));
+            //内容太短，没有压缩后的表示
+            assertFalse(resource.isGzipAvailable());
+            assertEquals(resource.getEtag(false), resource.getEtag(true));
+        }
+    }
+
+    private static FullHttpResponse request(EmbeddedChannel channel, String acceptEncoding, String ifNoneMatch) {
+        FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/");
+        HttpUtil.setKeepAlive(request, true);
+        if (acceptEncoding != null) {
+            request.headers().set(HttpHeaderNames.ACCEPT_ENCODING, acceptEncoding);
+        }
+        if (ifNoneMatch != null) {
+            request.headers().set(HttpHeaderNames.IF_NONE_MATCH, ifNoneMatch);
+        }
+        channel.writeInbound(request);
+        FullHttpResponse response = channel.readOutbound();
+        response.release();
+        return response;
+    }
+}
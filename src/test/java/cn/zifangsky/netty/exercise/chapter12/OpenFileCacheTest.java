@@ -0,0 +1,87 @@
+package cn.zifangsky.netty.exercise.chapter12;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testing the OpenFileCache
+ *
+ * @author zifangsky
+ * @date 2020/11/24
+ * @since 1.0.0
+ */
+public class OpenFileCacheTest {
+
+    @Test
+    public void testConcurrentAcquireKeepsOneEntry(@TempDir Path dir) throws Exception {
+        Path file = Files.write(dir.resolve("a.txt"), new byte[16]);
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        int threads = 8;
+        OpenFileCache cache = new OpenFileCache(4);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            //文件在锁外打开，多个线程可能同时打开同一个文件，最终只有一个留在缓存中
+            CyclicBarrier barrier = new CyclicBarrier(threads);
+            List<Future<OpenFileCache.OpenFile>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    barrier.await();
+                    return cache.acquire(file, attrs);
+                }));
+            }
+
+            Map<OpenFileCache.OpenFile, Integer> acquired = new IdentityHashMap<>();
+            for (Future<OpenFileCache.OpenFile> future : futures) {
+                acquired.merge(future.get(), 1, Integer::sum);
+            }
+            assertEquals(1, cache.size());
+            assertEquals(1, acquired.size());
+            acquired.forEach((openFile, count) -> {
+                assertEquals(count + 1, openFile.refCnt());
+                openFile.release(count);
+            });
+
+            OpenFileCache.OpenFile openFile = cache.acquire(file, attrs);
+            assertTrue(acquired.containsKey(openFile));
+            openFile.release();
+        } finally {
+            executor.shutdownNow();
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testEvictedFileClosedAfterLastRelease(@TempDir Path dir) throws Exception {
+        Path a = Files.write(dir.resolve("a.txt"), new byte[16]);
+        Path b = Files.write(dir.resolve("b.txt"), new byte[16]);
+        OpenFileCache cache = new OpenFileCache(1);
+
+        OpenFileCache.OpenFile first = cache.acquire(a, Files.readAttributes(a, BasicFileAttributes.class));
+        OpenFileCache.OpenFile second = cache.acquire(b, Files.readAttributes(b, BasicFileAttributes.class));
+        assertEquals(1, cache.size());
+        //被淘汰的文件仍被调用方持有
+        assertEquals(1, first.refCnt());
+        assertEquals(2, second.refCnt());
+
+        first.release();
+        assertEquals(0, first.refCnt());
+        second.release();
+        cache.close();
+        assertEquals(0, second.refCnt());
+        assertEquals(0, cache.size());
+    }
+}
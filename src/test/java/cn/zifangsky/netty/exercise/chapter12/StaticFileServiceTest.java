@@ -0,0 +1,210 @@
+package cn.zifangsky.netty.exercise.chapter12;
+
+import io.netty.channel.FileRegion;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.*;
+import io.netty.util.ReferenceCountUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testing the path resolution, range parsing and conditional responses of StaticFileService
+ *
+ * @author zifangsky
+ * @date 2020/11/24
+ * @since 1.0.0
+ */
+public class StaticFileServiceTest {
+    private static final int LENGTH = 1000;
+
+    @TempDir
+    Path tmp;
+    private Path root;
+    private StaticFileService service;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        this.root = Files.createDirectory(tmp.resolve("root"));
+        Files.write(root.resolve("a.txt"), new byte[LENGTH]);
+        Files.createDirectory(root.resolve("docs"));
+        Files.write(root.resolve("docs").resolve("index.html"), "index".getBytes(StandardCharsets.US_ASCII));
+        Files.write(tmp.resolve("secret.txt"), "secret".getBytes(StandardCharsets.US_ASCII));
+        this.service = new StaticFileService(root);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        service.close();
+    }
+
+    @Test
+    public void testResolveInsideRoot() throws IOException {
+        Path realRoot = root.toRealPath();
+        assertEquals(realRoot.resolve("a.txt"), service.resolve("/a.txt"));
+        assertEquals(realRoot.resolve("a.txt"), service.resolve("/docs/../a.txt?x=1"));
+        assertEquals(realRoot.resolve("docs/index.html"), service.resolve("/docs/"));
+        //不存在的文件仍然返回路径（由调用方返回404）
+        assertEquals(realRoot.resolve("missing.txt"), service.resolve("/missing.txt"));
+    }
+
+    @Test
+    public void testResolveRejectsTraversal() throws IOException {
+        assertNull(service.resolve("/../secret.txt"));
+        assertNull(service.resolve("/docs/../../secret.txt"));
+        //编码后的点和分隔符
+        assertNull(service.resolve("/%2e%2e/secret.txt"));
+        assertNull(service.resolve("/..%2fsecret.txt"));
+        assertNull(service.resolve("/docs%2f..%2f..%2fsecret.txt"));
+        assertNull(service.resolve("/%2E%2E%2Fsecret.txt"));
+        //空字节、非法编码和相对路径
+        assertNull(service.resolve("/a.txt%00.html"));
+        assertNull(service.resolve("/%zz"));
+        assertNull(service.resolve("a.txt"));
+    }
+
+    @Test
+    public void testResolveRejectsSymlinkEscape() throws IOException {
+        try {
+            Files.createSymbolicLink(root.resolve("escape.txt"), tmp.resolve("secret.txt"));
+            Files.createSymbolicLink(root.resolve("outside"), tmp);
+            Files.createSymbolicLink(root.resolve("inside.txt"), root.resolve("a.txt"));
+        } catch (UnsupportedOperationException e) {
+            return;
+        }
+        assertNull(service.resolve("/escape.txt"));
+        assertNull(service.resolve("/outside/secret.txt"));
+        //根目录内的符号链接解析为真实路径
+        assertEquals(root.toRealPath().resolve("a.txt"), service.resolve("/inside.txt"));
+    }
+
+    @Test
+    public void testParseRanges() {
+        assertRanges("bytes=0-99", new long[][]{{0, 99}});
+        //后缀区间
+        assertRanges("bytes=-100", new long[][]{{900, 999}});
+        assertRanges("bytes=-2000", new long[][]{{0, 999}});
+        //开放区间和超出文件长度的结束位置
+        assertRanges("bytes=900-", new long[][]{{900, 999}});
+        assertRanges("bytes=990-5000", new long[][]{{990, 999}});
+        //重叠和相邻的区间会被合并并排序
+        assertRanges("bytes=500-600, 0-10,5-20,21-30", new long[][]{{0, 30}, {500, 600}});
+        assertRanges("bytes=-10,995-", new long[][]{{990, 999}});
+        //部分不可满足的区间会被忽略
+        assertRanges("bytes=0-0,2000-3000", new long[][]{{0, 0}});
+    }
+
+    @Test
+    public void testParseRangesUnsatisfiable() {
+        assertTrue(StaticFileService.parseRanges("bytes=1000-", LENGTH).isEmpty());
+        assertTrue(StaticFileService.parseRanges("bytes=1000-2000,5000-", LENGTH).isEmpty());
+        assertTrue(StaticFileService.parseRanges("bytes=-0", LENGTH).isEmpty());
+        assertTrue(StaticFileService.parseRanges("bytes=0-", 0).isEmpty());
+    }
+
+    @Test
+    public void testParseRangesInvalid() {
+        assertNull(StaticFileService.parseRanges(null, LENGTH));
+        assertNull(StaticFileService.parseRanges("items=0-1", LENGTH));
+        assertNull(StaticFileService.parseRanges("bytes=5-1", LENGTH));
+        assertNull(StaticFileService.parseRanges("bytes=a-b", LENGTH));
+        assertNull(StaticFileService.parseRanges("bytes=10", LENGTH));
+        assertNull(StaticFileService.parseRanges("bytes=--5", LENGTH));
+        assertNull(StaticFileService.parseRanges("bytes=+1-5", LENGTH));
+        assertNull(StaticFileService.parseRanges("bytes=-", LENGTH));
+        assertNull(StaticFileService.parseRanges("bytes=0-99999999999999999999", LENGTH));
+        //区间太多
+        assertNull(StaticFileService.parseRanges("bytes=" + "0-1,".repeat(17), LENGTH));
+    }
+
+    @Test
+    public void testServeUnsatisfiableRange() {
+        EmbeddedChannel channel = newChannel();
+        FullHttpRequest request = get("/a.txt");
+        request.headers().set(HttpHeaderNames.RANGE, "bytes=5000-");
+        channel.writeInbound(request);
+
+        FullHttpResponse response = channel.readOutbound();
+        assertEquals(HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE, response.status());
+        assertEquals("bytes */" + LENGTH, response.headers().get(HttpHeaderNames.CONTENT_RANGE));
+        response.release();
+        assertFalse(channel.finishAndReleaseAll());
+    }
+
+    @Test
+    public void testServeSingleRange() {
+        EmbeddedChannel channel = newChannel();
+        FullHttpRequest request = get("/a.txt");
+        request.headers().set(HttpHeaderNames.RANGE, "bytes=-10");
+        channel.writeInbound(request);
+
+        HttpResponse response = channel.readOutbound();
+        assertEquals(HttpResponseStatus.PARTIAL_CONTENT, response.status());
+        assertEquals("bytes 990-999/" + LENGTH, response.headers().get(HttpHeaderNames.CONTENT_RANGE));
+        assertEquals("10", response.headers().get(HttpHeaderNames.CONTENT_LENGTH));
+        FileRegion region = channel.readOutbound();
+        assertEquals(990, region.position());
+        assertEquals(10, region.count());
+        region.release();
+        ReferenceCountUtil.release(channel.readOutbound());
+        assertEquals(1, service.openFileCount());
+        assertFalse(channel.finishAndReleaseAll());
+    }
+
+    @Test
+    public void testServeNotModified() {
+        EmbeddedChannel channel = newChannel();
+        channel.writeInbound(get("/a.txt"));
+        HttpResponse response = channel.readOutbound();
+        String etag = response.headers().get(HttpHeaderNames.ETAG);
+        channel.releaseOutbound();
+
+        FullHttpRequest request = get("/a.txt");
+        request.headers().set(HttpHeaderNames.IF_NONE_MATCH, etag);
+        channel.writeInbound(request);
+        FullHttpResponse notModified = channel.readOutbound();
+        assertEquals(HttpResponseStatus.NOT_MODIFIED, notModified.status());
+        assertFalse(notModified.headers().contains(HttpHeaderNames.CONTENT_LENGTH));
+        assertEquals(etag, notModified.headers().get(HttpHeaderNames.ETAG));
+        notModified.release();
+        assertFalse(channel.finishAndReleaseAll());
+    }
+
+    @Test
+    public void testServeForbidden() {
+        EmbeddedChannel channel = newChannel();
+        channel.writeInbound(get("/%2e%2e/secret.txt"));
+        FullHttpResponse response = channel.readOutbound();
+        assertEquals(HttpResponseStatus.FORBIDDEN, response.status());
+        response.release();
+        assertFalse(channel.finishAndReleaseAll());
+    }
+
+    private EmbeddedChannel newChannel() {
+        return new EmbeddedChannel(new HttpRequestHandler("/ws", service));
+    }
+
+    private static FullHttpRequest get(String uri) {
+        FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri);
+        HttpUtil.setKeepAlive(request, true);
+        return request;
+    }
+
+    private static void assertRanges(String header, long[][] expected) {
+        List<long[]> ranges = StaticFileService.parseRanges(header, LENGTH);
+        assertNotNull(ranges, header);
+        assertEquals(expected.length, ranges.size(), header);
+        for (int i = 0; i < expected.length; i++) {
+            assertArrayEquals(expected[i], ranges.get(i), header);
+        }
+    }
+}
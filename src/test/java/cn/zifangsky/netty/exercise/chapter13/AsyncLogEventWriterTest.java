@@ -0,0 +1,139 @@
+package cn.zifangsky.netty.exercise.chapter13;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testing the AsyncLogEventWriter
+ *
+ * @author zifangsky
+ * @date 2020/11/24
+ * @since 1.0.0
+ */
+public class AsyncLogEventWriterTest {
+
+    @Test
+    public void testWriterSurvivesFormatAndSinkFailures() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        sink.failures = 1;
+        AsyncLogEventWriter writer = new AsyncLogEventWriter(sink, 1024, 1);
+
+        //写出失败（RuntimeException）
+        assertTrue(writer.offer(new LogEvent("a.log", "first")));
+        awaitCount(writer, 1);
+        //格式化失败：消息内容为null
+        assertTrue(writer.offer(new LogEvent("a.log", null)));
+        awaitCount(writer, 2);
+        assertTrue(writer.offer(new LogEvent("a.log", "second")));
+        awaitCount(writer, 3);
+        writer.close();
+
+        assertEquals(2, writer.droppedCount());
+        assertEquals(1, writer.writtenCount());
+        assertEquals(1, sink.lines.size());
+        assertTrue(sink.lines.get(0).endsWith("[a.log] : second"), sink.lines.get(0));
+        assertTrue(sink.closed);
+    }
+
+    @Test
+    public void testQueueBoundedByBytes() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        sink.blocked = new CountDownLatch(1);
+        String msg = new String(new char[512]).replace('\0', 'x');
+        AsyncLogEventWriter writer = new AsyncLogEventWriter(sink, 1024, 1, 8 * 1024);
+
+        //第一条消息被写线程取出后阻塞在输出目标上，之后的消息在队列中累积
+        assertTrue(writer.offer(new LogEvent("a.log", msg)));
+        assertTrue(sink.writing.await(5, TimeUnit.SECONDS));
+        int accepted = 0;
+        for (int i = 0; i < 100; i++) {
+            if (writer.offer(new LogEvent("a.log", msg))) {
+                accepted++;
+            }
+        }
+        assertTrue(accepted > 0 && accepted < 100, "accepted " + accepted);
+        assertTrue(writer.queuedBytes() <= 8 * 1024);
+        assertEquals(100 - accepted, writer.droppedCount());
+
+        sink.blocked.countDown();
+        writer.close();
+        assertEquals(accepted + 1, writer.writtenCount());
+        assertEquals(0, writer.queuedBytes());
+    }
+
+    @Test
+    public void testQueuedEventDoesNotPinReceiveBuffer() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        sink.blocked = new CountDownLatch(1);
+        AsyncLogEventWriter writer = new AsyncLogEventWriter(sink, 1024, 1);
+        assertTrue(writer.offer(new LogEvent("a.log", "first")));
+        assertTrue(sink.writing.await(5, TimeUnit.SECONDS));
+
+        //模拟一次recvmmsg读取的32KB接收缓冲区中的一条消息
+        ByteBuf received = Unpooled.directBuffer(32 * 1024).writeZero(32 * 1024);
+        received.setCharSequence(0, "a.log", CharsetUtil.UTF_8);
+        received.setCharSequence(5, "hello", CharsetUtil.UTF_8);
+        LogEvent event = new LogEvent(null, System.currentTimeMillis(),
+                received.retainedSlice(0, 5), received.retainedSlice(5, 5));
+        received.release();
+        assertTrue(writer.offer(event));
+        assertEquals(0, received.refCnt());
+        assertTrue(writer.queuedBytes() < 1024);
+
+        sink.blocked.countDown();
+        writer.close();
+        assertEquals(2, writer.writtenCount());
+        assertTrue(sink.lines.get(1).endsWith("[a.log] : hello"), sink.lines.get(1));
+    }
+
+    private static void awaitCount(AsyncLogEventWriter writer, long count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (writer.writtenCount() + writer.droppedCount() < count) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(1);
+        }
+    }
+
+    private static class RecordingSink implements LogEventSink {
+        final List<String> lines = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch writing = new CountDownLatch(1);
+        volatile CountDownLatch blocked;
+        volatile int failures;
+        volatile boolean closed;
+
+        @Override
+        public void write(ByteBuf buf) throws IOException {
+            writing.countDown();
+            if (blocked != null) {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            if (failures > 0) {
+                failures--;
+                throw new IllegalStateException("sink failure");
+            }
+            for (String line : buf.toString(CharsetUtil.UTF_8).split("\n")) {
+                lines.add(line);
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package cn.zifangsky.netty.exercise.chapter13;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testing the persistence and validation of LogCheckpointStore
+ *
+ * @author zifangsky
+ * @date 2020/11/24
+ * @since 1.0.0
+ */
+public class LogCheckpointStoreTest {
+
+    @Test
+    public void testSaveAndLoad(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("checkpoints");
+        LogCheckpointStore store = new LogCheckpointStore(file);
+        store.commit("(dev=1,ino=2)", Paths.get("/var/log/app\tname.log"), 100, 0xCAFEL);
+        store.commit("(dev=1,ino=3)", Paths.get("/var/log/b.log"), 0, 0);
+        store.save();
+
+        LogCheckpointStore loaded = new LogCheckpointStore(file);
+        assertEquals(100, loaded.get("(dev=1,ino=2)"));
+        assertTrue(loaded.matches("(dev=1,ino=2)", 0xCAFEL));
+        assertFalse(loaded.matches("(dev=1,ino=2)", 0xBEEFL));
+        assertEquals(0, loaded.get("(dev=1,ino=3)"));
+        assertEquals(LogCheckpointStore.NO_CHECKPOINT, loaded.get("(dev=1,ino=4)"));
+    }
+
+    @Test
+    public void testLoadWithoutHeadHash(@TempDir Path dir) throws Exception {
+        //没有哈希值的检查点不校验，格式错误的行被忽略
+        Path file = Files.write(dir.resolve("checkpoints"), List.of("(dev=1,ino=2)\t100\t/var/log/a.log", "broken", "k\tx\t/a"),
+                StandardCharsets.UTF_8);
+        LogCheckpointStore store = new LogCheckpointStore(file);
+        assertEquals(100, store.get("(dev=1,ino=2)"));
+        assertTrue(store.matches("(dev=1,ino=2)", 0xBEEFL));
+        assertEquals(LogCheckpointStore.NO_CHECKPOINT, store.get("k"));
+    }
+}
@@ -0,0 +1,165 @@
+package cn.zifangsky.netty.exercise.chapter13;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testing the rotation handling and checkpoint resume of LogDirectoryTailer
+ *
+ * @author zifangsky
+ * @date 2020/11/24
+ * @since 1.0.0
+ */
+public class LogDirectoryTailerTest {
+    private static final long POLL_INTERVAL_MILLIS = 20;
+
+    @TempDir
+    Path dir;
+    private final List<String> lines = Collections.synchronizedList(new ArrayList<>());
+    private LogDirectoryTailer tailer;
+    private Thread thread;
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        if (tailer != null) {
+            this.stop();
+        }
+    }
+
+    @Test
+    public void testRenameAndCreateRotation() throws Exception {
+        Path log = Files.createFile(dir.resolve("app.log"));
+        //同时匹配轮转之后的文件名
+        this.start("app.log*", new LogCheckpointStore());
+
+        append(log, "a1\na2\n");
+        awaitLines("a1", "a2");
+
+        //轮转前写入的内容，最后一行没有换行符
+        append(log, "a3\npartial");
+        Files.move(log, dir.resolve("app.log.1"));
+        append(Files.createFile(log), "b1\n");
+        awaitLines("a1", "a2", "a3", "partial", "b1");
+
+        //轮转后的旧文件按照检查点继续跟踪，不会重复读取
+        append(dir.resolve("app.log.1"), "late\n");
+        awaitLines("a1", "a2", "a3", "partial", "b1", "late");
+        append(log, "b2\n");
+        awaitLines("a1", "a2", "a3", "partial", "b1", "late", "b2");
+    }
+
+    @Test
+    public void testCheckpointResume() throws Exception {
+        Path log = Files.createFile(dir.resolve("app.log"));
+        Path store = dir.resolve("checkpoints");
+        this.start("app.log", new LogCheckpointStore(store));
+        append(log, "a1\na2\n");
+        awaitLines("a1", "a2");
+        this.stop();
+
+        //停止期间追加的内容在重启后从检查点继续读取
+        append(log, "a3\na4\n");
+        lines.clear();
+        this.start("app.log", new LogCheckpointStore(store));
+        append(log, "a5\n");
+        awaitLines("a3", "a4", "a5");
+    }
+
+    @Test
+    public void testReusedFileKeyReadFromBeginning() throws Exception {
+        Path log = Files.createFile(dir.resolve("app.log"));
+        Path store = dir.resolve("checkpoints");
+        this.start("app.log", new LogCheckpointStore(store));
+        append(log, "old-1\nold-2\n");
+        awaitLines("old-1", "old-2");
+        this.stop();
+
+        //同一个inode中写入了更长的不同内容，检查点的位置仍然在文件范围之内
+        Files.write(log, "new-1\nnew-2\nnew-3\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.TRUNCATE_EXISTING);
+        lines.clear();
+        this.start("app.log", new LogCheckpointStore(store));
+        awaitLines("new-1", "new-2", "new-3");
+    }
+
+    @Test
+    public void testCopyTruncate() throws Exception {
+        Path log = Files.createFile(dir.resolve("app.log"));
+        this.start("app.log", new LogCheckpointStore());
+        append(log, "a1\na2\na3\n");
+        awaitLines("a1", "a2", "a3");
+
+        //复制后截断原文件，之后写入的内容从头读取
+        Files.copy(log, dir.resolve("app.log.1"));
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.truncate(0);
+        }
+        append(log, "c1\n");
+        awaitLines("a1", "a2", "a3", "c1");
+    }
+
+    /**
+     * 开始跟踪，并等待app.log被跟踪（第一次启动时从文件末尾开始读取）
+     */
+    private void start(String glob, LogCheckpointStore checkpoints) throws Exception {
+        this.tailer = new LogDirectoryTailer(dir, glob, checkpoints, 2, false,
+                LogFileTailer.DEFAULT_BUFFER_SIZE, POLL_INTERVAL_MILLIS);
+        LogDirectoryTailer current = tailer;
+        this.thread = new Thread(() -> {
+            try {
+                current.run((file, offset, batch) -> lines.addAll(batch));
+            } catch (IOException | InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        thread.start();
+
+        Path log = dir.resolve("app.log");
+        String key = LogCheckpointStore.keyOf(log, Files.readAttributes(log, BasicFileAttributes.class));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (checkpoints.get(key) == LogCheckpointStore.NO_CHECKPOINT) {
+            assertTrue(System.nanoTime() < deadline, "app.log is not tracked");
+            Thread.sleep(POLL_INTERVAL_MILLIS);
+        }
+    }
+
+    private void stop() throws Exception {
+        tailer.stop();
+        thread.join(TimeUnit.SECONDS.toMillis(5));
+        tailer.close();
+        tailer = null;
+    }
+
+    private static void append(Path file, String content) throws IOException {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+
+    /**
+     * 等待读取到的所有行与期望一致（顺序和个数都相同）
+     */
+    private void awaitLines(String... expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (lines.size() < expected.length && System.nanoTime() < deadline) {
+            Thread.sleep(POLL_INTERVAL_MILLIS);
+        }
+        //再等待几次轮询，确认没有重复读取
+        Thread.sleep(POLL_INTERVAL_MILLIS * 5);
+        synchronized (lines) {
+            assertEquals(List.of(expected), new ArrayList<>(lines));
+        }
+    }
+}
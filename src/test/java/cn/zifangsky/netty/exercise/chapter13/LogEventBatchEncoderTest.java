@@ -0,0 +1,162 @@
+package cn.zifangsky.netty.exercise.chapter13;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.handler.codec.EncoderException;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testing the compressed batch round trip between LogEventBatchEncoder and LogEventDecoder
+ *
+ * @author zifangsky
+ * @date 2020/11/24
+ * @since 1.0.0
+ */
+public class LogEventBatchEncoderTest {
+    private static final InetSocketAddress ADDRESS = new InetSocketAddress("127.0.0.1", 9);
+    private static final long SESSION = 42;
+    private static final long FIRST_SEQUENCE = 1000;
+
+    @Test
+    public void testCompressedRoundTrip() {
+        //可压缩的消息与随机的十六进制字符串交替，后者压缩后超过数据包大小时需要拆分批次
+        Random random = new Random(0);
+        int lines = 10240;
+        List<String> paths = new ArrayList<>();
+        List<String> msgs = new ArrayList<>();
+        for (int i = 0; i < lines; i++) {
+            paths.add("/var/log/app-" + (i % 7) + ".log");
+            if (i % 3 == 0) {
+                StringBuilder sb = new StringBuilder();
+                for (int j = 0; j < 200; j++) {
+                    sb.append(Character.forDigit(random.nextInt(16), 16));
+                }
+                msgs.add(sb.toString());
+            } else {
+                msgs.add("INFO order " + i + " created for user " + (i % 97));
+            }
+        }
+
+        EmbeddedChannel encoder = new EmbeddedChannel(new LogEventBatchEncoder(ADDRESS,
+                LogEventBatchEncoder.DEFAULT_MAX_PACKET_SIZE, true));
+        for (int i = 0; i < lines; i++) {
+            //检查点取序列号的10倍，拆分后的数据包仍然使用整个批次的检查点
+            long sequence = FIRST_SEQUENCE + i;
+            encoder.write(new LogEvent(paths.get(i), msgs.get(i)).sequence(SESSION, sequence, sequence * 10));
+            if (i % 256 == 255) {
+                encoder.flush();
+            }
+        }
+        encoder.flush();
+
+        List<DatagramPacket> packets = readPackets(encoder);
+        int splitPackets = 0;
+        long expected = FIRST_SEQUENCE;
+        for (DatagramPacket packet : packets) {
+            assertTrue(packet.content().readableBytes() <= LogEventBatchEncoder.DEFAULT_MAX_PACKET_SIZE);
+            List<LogEvent> events = decode(packet);
+            assertFalse(events.isEmpty());
+            if (events.get(0).getOffset() != events.get(0).getSequence() * 10) {
+                splitPackets++;
+            }
+            for (LogEvent event : events) {
+                assertEquals(SESSION, event.getSessionId());
+                assertEquals(expected, event.getSequence());
+                int index = (int) (expected - FIRST_SEQUENCE);
+                assertEquals(paths.get(index), event.getFilePath());
+                assertEquals(msgs.get(index), event.getMsg());
+                expected++;
+                event.release();
+            }
+        }
+        assertEquals(FIRST_SEQUENCE + lines, expected);
+        assertTrue(splitPackets > 0, "no batch was split");
+        assertFalse(encoder.finishAndReleaseAll());
+    }
+
+    @Test
+    public void testDictionaryFull() {
+        EmbeddedChannel encoder = new EmbeddedChannel(new LogEventBatchEncoder(ADDRESS, 60000, true));
+        int lines = 600;
+        for (int i = 0; i < lines; i++) {
+            encoder.write(new LogEvent("app-" + i + ".log", "line-" + i));
+        }
+        encoder.flush();
+
+        //每个批次的字典最多255个文件名
+        List<DatagramPacket> packets = readPackets(encoder);
+        assertEquals(3, packets.size());
+        int index = 0;
+        for (DatagramPacket packet : packets) {
+            for (LogEvent event : decode(packet)) {
+                assertFalse(event.hasSequence());
+                assertEquals("app-" + index + ".log", event.getFilePath());
+                assertEquals("line-" + index, event.getMsg());
+                index++;
+                event.release();
+            }
+        }
+        assertEquals(lines, index);
+        assertFalse(encoder.finishAndReleaseAll());
+    }
+
+    @Test
+    public void testRawBatchWithinDecoderLimit() {
+        //压缩率很高时估计的原始字节数很大，但每个数据包解压后不能超过解码器的上限
+        EmbeddedChannel encoder = new EmbeddedChannel(new LogEventBatchEncoder(ADDRESS, 60000, true));
+        String padding = new String(new char[1000]).replace('\0', 'x');
+        int lines = 2000;
+        for (int i = 0; i < lines; i++) {
+            assertNull(encoder.write(new LogEvent("a.log", padding + i)).cause());
+        }
+        encoder.flush();
+
+        List<DatagramPacket> packets = readPackets(encoder);
+        assertTrue(packets.size() > 1);
+        int index = 0;
+        for (DatagramPacket packet : packets) {
+            for (LogEvent event : decode(packet)) {
+                assertEquals(padding + index, event.getMsg());
+                index++;
+                event.release();
+            }
+        }
+        assertEquals(lines, index);
+
+        //单条消息超过解压后的最大长度时写出失败
+        String huge = new String(new char[LogEventBatchEncoder.MAX_DECOMPRESSED_LENGTH]).replace('\0', 'x');
+        assertTrue(encoder.write(new LogEvent("a.log", huge)).cause() instanceof EncoderException);
+        assertFalse(encoder.finishAndReleaseAll());
+    }
+
+    private static List<DatagramPacket> readPackets(EmbeddedChannel encoder) {
+        List<DatagramPacket> packets = new ArrayList<>();
+        DatagramPacket packet;
+        while ((packet = encoder.readOutbound()) != null) {
+            packets.add(packet);
+        }
+        return packets;
+    }
+
+    /**
+     * 解码一个数据包（释放该数据包）
+     */
+    private static List<LogEvent> decode(DatagramPacket packet) {
+        EmbeddedChannel decoder = new EmbeddedChannel(new LogEventDecoder(true));
+        decoder.writeInbound(packet);
+        List<LogEvent> events = new ArrayList<>();
+        LogEvent event;
+        while ((event = decoder.readInbound()) != null) {
+            events.add(event);
+        }
+        decoder.finish();
+        return events;
+    }
+}
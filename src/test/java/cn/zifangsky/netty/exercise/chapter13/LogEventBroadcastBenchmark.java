@@ -0,0 +1,100 @@
+package cn.zifangsky.netty.exercise.chapter13;
+
+import cn.zifangsky.netty.exercise.BenchmarkUtils;
+import cn.zifangsky.netty.exercise.utils.TransportType;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.EventLoopGroup;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.InetSocketAddress;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比每条日志一个数据包（{@link LogEventEncoder}）与批量数据包（{@link LogEventBatchEncoder}）的发送速率（行/秒）
+ * <p>与LogEventBroadcaster一致，每个批次在EventLoop中写出后只冲刷一次，数据包发送到一个不读取数据的本地UDP端口</p>
+ *
+ * @author zifangsky
+ * @date 2020/11/13
+ * @since 1.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class LogEventBroadcastBenchmark {
+    private static final int LINES_PER_BATCH = 256;
+
+    public enum Encoder {
+        SINGLE, BATCH
+    }
+
+    @Param({"SINGLE", "BATCH"})
+    public Encoder encoder;
+
+    @Param({"80", "200"})
+    public int lineLength;
+
+    @Param({"NIO", "EPOLL"})
+    public TransportType transport;
+
+    private DatagramChannel receiver;
+    private EventLoopGroup group;
+    private Channel channel;
+    private List<LogEvent> lines;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        if (!transport.isAvailable()) {
+            throw new IllegalStateException(transport + " transport is not available on this platform");
+        }
+        this.receiver = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0));
+        InetSocketAddress address = (InetSocketAddress) receiver.getLocalAddress();
+
+        ChannelHandler handler = encoder == Encoder.BATCH
+                ? new LogEventBatchEncoder(address) : new LogEventEncoder(address);
+        this.group = transport.newEventLoopGroup(1);
+        this.channel = new Bootstrap()
+                .group(group)
+                .channel(transport.datagramChannelClass())
+                .handler(handler)
+                .bind(0).sync().channel();
+
+        char[] msg = new char[lineLength];
+        Arrays.fill(msg, 'x');
+        this.lines = new ArrayList<>(LINES_PER_BATCH);
+        for (int i = 0; i < LINES_PER_BATCH; i++) {
+            lines.add(new LogEvent("application.log", new String(msg)));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        channel.close().sync();
+        group.shutdownGracefully().sync();
+        receiver.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES_PER_BATCH)
+    public void broadcast() throws Exception {
+        channel.eventLoop().submit(() -> {
+            for (LogEvent line : lines) {
+                //编码器会释放写出的消息，同一个消息需要重复写出
+                channel.write(line.retain(), channel.voidPromise());
+            }
+            channel.flush();
+        }).sync();
+    }
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkUtils.run(LogEventBroadcastBenchmark.class);
+    }
+}
@@ -0,0 +1,113 @@
+package cn.zifangsky.netty.exercise.chapter13;
+
+import cn.zifangsky.netty.exercise.BenchmarkUtils;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.socket.DatagramPacket;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.InetSocketAddress;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比普通批量数据包与压缩批量数据包（文件名字典 + Snappy）的数据包字节数和每行的CPU开销
+ * <p>每次操作编码256行类似应用日志的消息，然后用延迟解码的{@link LogEventDecoder}解码。
+ * 主要结果是每秒处理的行数，辅助计数器wireBytes是每秒产生的数据包字节数，二者相除即为每行在网络上的平均字节数</p>
+ *
+ * @author zifangsky
+ * @date 2020/11/21
+ * @since 1.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class LogEventCompressionBenchmark {
+    private static final InetSocketAddress ADDRESS = new InetSocketAddress("127.0.0.1", 9);
+    private static final int LINES_PER_BATCH = 256;
+    private static final String[] LEVELS = {"INFO ", "INFO ", "INFO ", "DEBUG", "WARN "};
+    private static final String[] LOGGERS = {"c.z.n.service.OrderService", "c.z.n.service.UserService",
+            "c.z.n.controller.PaymentController", "o.s.web.servlet.DispatcherServlet"};
+    private static final String[] MESSAGES = {"order %d created for user %d, amount=%d.%02d",
+            "user %d logged in from 10.0.%d.%d", "payment %d completed in %d ms, status=%d, retry=%d",
+            "Completed 200 OK for GET /api/orders/%d?page=%d&size=%d, took %d ms"};
+
+    @Param({"false", "true"})
+    public boolean compress;
+
+    /**
+     * 日志文件个数（每行随机属于其中一个文件）
+     */
+    @Param({"1", "4"})
+    public int files;
+
+    private String[] paths;
+    private String[] lines;
+    private int next;
+    private EmbeddedChannel encoder;
+    private EmbeddedChannel decoder;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class WireBytes {
+        public long wireBytes;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        this.paths = new String[files];
+        for (int i = 0; i < files; i++) {
+            paths[i] = "/var/log/app/application-" + i + ".log";
+        }
+        this.lines = new String[4096];
+        for (int i = 0; i < lines.length; i++) {
+            String msg = String.format(MESSAGES[random.nextInt(MESSAGES.length)], random.nextInt(1000000),
+                    random.nextInt(10000), random.nextInt(256), random.nextInt(100));
+            lines[i] = String.format("2020-11-21 10:%02d:%02d.%03d %s [http-nio-8080-exec-%d] %s - %s",
+                    random.nextInt(60), random.nextInt(60), random.nextInt(1000), LEVELS[random.nextInt(LEVELS.length)],
+                    random.nextInt(200), LOGGERS[random.nextInt(LOGGERS.length)], msg);
+        }
+
+        this.encoder = new EmbeddedChannel(new LogEventBatchEncoder(ADDRESS, LogEventBatchEncoder.DEFAULT_MAX_PACKET_SIZE, compress));
+        this.decoder = new EmbeddedChannel(new LogEventDecoder(true));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        encoder.finishAndReleaseAll();
+        decoder.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES_PER_BATCH)
+    public long encodeAndDecode(WireBytes counters) {
+        for (int i = 0; i < LINES_PER_BATCH; i++) {
+            int index = next++ & (lines.length - 1);
+            encoder.write(new LogEvent(paths[index % files], lines[index]));
+        }
+        encoder.flush();
+
+        long bytes = 0;
+        DatagramPacket packet;
+        while ((packet = encoder.readOutbound()) != null) {
+            bytes += packet.content().readableBytes();
+            decoder.writeInbound(packet);
+        }
+        counters.wireBytes += bytes;
+
+        long checksum = 0;
+        LogEvent event;
+        while ((event = decoder.readInbound()) != null) {
+            checksum += event.msgBytes().readableBytes();
+            event.release();
+        }
+        return checksum;
+    }
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkUtils.run(LogEventCompressionBenchmark.class);
+    }
+}
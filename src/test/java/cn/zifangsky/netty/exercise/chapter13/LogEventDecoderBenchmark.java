@@ -0,0 +1,81 @@
+package cn.zifangsky.netty.exercise.chapter13;
+
+import cn.zifangsky.netty.exercise.BenchmarkUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.socket.DatagramPacket;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比{@link LogEventDecoder}立即解码与延迟解码的开销
+ * <p>每次解码一个由{@link LogEventBatchEncoder}产生的批量数据包；materialize为false时消费者只读取消息的字节数</p>
+ *
+ * @author zifangsky
+ * @date 2020/11/16
+ * @since 1.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class LogEventDecoderBenchmark {
+    private static final InetSocketAddress ADDRESS = new InetSocketAddress("127.0.0.1", 9);
+
+    @Param({"false", "true"})
+    public boolean lazy;
+
+    @Param({"false", "true"})
+    public boolean materialize;
+
+    private EmbeddedChannel decoder;
+    private ByteBuf packet;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        char[] msg = new char[80];
+        Arrays.fill(msg, 'x');
+        EmbeddedChannel encoder = new EmbeddedChannel(new LogEventBatchEncoder(ADDRESS));
+        for (int i = 0; i < 16; i++) {
+            encoder.write(new LogEvent("application.log", new String(msg)));
+        }
+        encoder.flush();
+        DatagramPacket batch = encoder.readOutbound();
+        this.packet = batch.content();
+        encoder.finishAndReleaseAll();
+
+        this.decoder = new EmbeddedChannel(new LogEventDecoder(lazy));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        packet.release();
+        decoder.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public int decode() {
+        decoder.writeInbound(new DatagramPacket(packet.retainedDuplicate(), ADDRESS, ADDRESS));
+
+        int length = 0;
+        LogEvent event;
+        while ((event = decoder.readInbound()) != null) {
+            if (materialize || !lazy) {
+                length += event.getFilePath().length() + event.getMsg().length() + event.getReceivedTime().length();
+            } else {
+                length += event.msgBytes().readableBytes();
+            }
+            event.release();
+        }
+        return length;
+    }
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkUtils.run(LogEventDecoderBenchmark.class);
+    }
+}
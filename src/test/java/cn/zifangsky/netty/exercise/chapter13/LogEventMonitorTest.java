@@ -0,0 +1,106 @@
+package cn.zifangsky.netty.exercise.chapter13;
+
+import cn.zifangsky.netty.exercise.utils.TransportType;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Testing that every datagram is received exactly once with multiple SO_REUSEPORT receivers
+ *
+ * @author zifangsky
+ * @date 2020/11/24
+ * @since 1.0.0
+ */
+public class LogEventMonitorTest {
+    private static final int COUNT = 10;
+
+    @Test
+    public void testBroadcastBindsSingleReceiver() throws Exception {
+        int port = freePort();
+        RecordingHandler handler = new RecordingHandler();
+        //没有声明单播，广播数据包会被复制给每个SO_REUSEPORT Socket，因此只绑定一个Channel
+        LogEventMonitor monitor = new LogEventMonitor(TransportType.preferred(), new InetSocketAddress(port), null,
+                handler, 3, LogEventMonitor.DEFAULT_RECEIVE_BUFFER_SIZE, false);
+        try {
+            List<Channel> channels = monitor.bind();
+            assertEquals(1, channels.size());
+
+            send(new InetSocketAddress("255.255.255.255", port), true);
+            handler.assertReceivedOnce();
+        } finally {
+            monitor.stop();
+        }
+    }
+
+    @Test
+    public void testUnicastSpreadsAcrossReceivers() throws Exception {
+        assumeTrue(TransportType.EPOLL.isAvailable());
+        int port = freePort();
+        RecordingHandler handler = new RecordingHandler();
+        LogEventMonitor monitor = new LogEventMonitor(TransportType.EPOLL, new InetSocketAddress(port), null,
+                handler, 3, LogEventMonitor.DEFAULT_RECEIVE_BUFFER_SIZE, true);
+        try {
+            List<Channel> channels = monitor.bind();
+            assertEquals(3, channels.size());
+
+            send(new InetSocketAddress("127.0.0.1", port), false);
+            handler.assertReceivedOnce();
+        } finally {
+            monitor.stop();
+        }
+    }
+
+    private static int freePort() throws Exception {
+        try (DatagramChannel probe = DatagramChannel.open().bind(new InetSocketAddress(0))) {
+            return ((InetSocketAddress) probe.getLocalAddress()).getPort();
+        }
+    }
+
+    private static void send(InetSocketAddress target, boolean broadcast) throws Exception {
+        try (DatagramChannel channel = DatagramChannel.open()) {
+            channel.setOption(StandardSocketOptions.SO_BROADCAST, broadcast);
+            for (int i = 0; i < COUNT; i++) {
+                channel.send(ByteBuffer.wrap(("a.log:line-" + i).getBytes(StandardCharsets.UTF_8)), target);
+            }
+        }
+    }
+
+    @ChannelHandler.Sharable
+    private static final class RecordingHandler extends SimpleChannelInboundHandler<LogEvent> {
+        private final Map<String, AtomicInteger> received = new ConcurrentHashMap<>();
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, LogEvent event) {
+            received.computeIfAbsent(event.getMsg(), k -> new AtomicInteger()).incrementAndGet();
+        }
+
+        void assertReceivedOnce() throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (received.size() < COUNT) {
+                assertTrue(System.nanoTime() < deadline, "received " + received);
+                Thread.sleep(10);
+            }
+            //等待可能到达的重复数据包
+            Thread.sleep(200);
+            assertEquals(COUNT, received.size());
+            received.forEach((msg, count) -> assertEquals(1, count.get(), msg));
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package cn.zifangsky.netty.exercise.chapter13;
+
+import cn.zifangsky.netty.exercise.BenchmarkUtils;
+import cn.zifangsky.netty.exercise.utils.TransportType;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.socket.DatagramPacket;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 测试{@link LogEventMonitor}在不同接收Channel个数下的数据包接收速率（包/秒）
+ * <p>多个发送线程各自使用一个本地端口发送批量数据包（SO_REUSEPORT按照来源地址分散数据包），
+ * 接收端使用与LogEventMonitor相同的配置和解码器，只统计解码得到的消息数。每个发送线程在未接收的数据包超过窗口大小时等待，
+ * 因此测得的是接收端的处理速率。receivers大于1时需要EPOLL传输，并且需要在多核机器上运行才能看到扩展效果</p>
+ * <p>broadcast为true时发送到255.255.255.255，监听端只会绑定一个Channel（广播数据包会被复制给SO_REUSEPORT组中的每个Socket），
+ * 结束时输出的重复数据包个数应该为0</p>
+ *
+ * @author zifangsky
+ * @date 2020/11/19
+ * @since 1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Threads(4)
+@Fork(1)
+public class LogEventReceiveBenchmark {
+    private static final int RECORDS_PER_PACKET = 8;
+    private static final int PACKETS_PER_BURST = 32;
+    /**
+     * 所有发送线程允许的未接收数据包个数
+     */
+    private static final int WINDOW = 1024;
+    private static final long LOSS_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+    @Param({"1", "2", "4"})
+    public int receivers;
+
+    @Param({"EPOLL", "NIO"})
+    public TransportType transport;
+
+    @Param({"false", "true"})
+    public boolean broadcast;
+
+    private LogEventMonitor monitor;
+    private InetSocketAddress address;
+    private int boundChannels;
+    private ByteBuffer packet;
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    /**
+     * 等待超时后跳过的数据包个数，避免丢包后发送线程一直等待
+     */
+    private final AtomicLong skipped = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        if (!transport.isAvailable()) {
+            throw new IllegalStateException(transport + " transport is not available on this platform");
+        }
+        if (receivers > 1 && transport != TransportType.EPOLL) {
+            throw new IllegalStateException("SO_REUSEPORT requires the EPOLL transport");
+        }
+
+        //所有接收Channel需要绑定到同一个确定的端口
+        try (DatagramChannel probe = DatagramChannel.open().bind(new InetSocketAddress("127.0.0.1", 0))) {
+            this.address = (InetSocketAddress) probe.getLocalAddress();
+        }
+        //绑定到具体地址的Socket收不到广播数据包，广播时监听所有地址
+        InetSocketAddress localAddress = broadcast ? new InetSocketAddress(address.getPort()) : address;
+        this.monitor = new LogEventMonitor(transport, localAddress, null, new CountingHandler(received),
+                receivers, LogEventMonitor.DEFAULT_RECEIVE_BUFFER_SIZE, !broadcast);
+        this.boundChannels = monitor.bind().size();
+        if (broadcast) {
+            this.address = new InetSocketAddress("255.255.255.255", address.getPort());
+        }
+
+        char[] msg = new char[80];
+        Arrays.fill(msg, 'x');
+        EmbeddedChannel encoder = new EmbeddedChannel(new LogEventBatchEncoder(address));
+        for (int i = 0; i < RECORDS_PER_PACKET; i++) {
+            encoder.write(new LogEvent("application.log", new String(msg)));
+        }
+        encoder.flush();
+        DatagramPacket batch = encoder.readOutbound();
+        ByteBuf content = batch.content();
+        this.packet = ByteBuffer.allocateDirect(content.readableBytes());
+        content.getBytes(content.readerIndex(), packet);
+        packet.flip();
+        batch.release();
+        encoder.finishAndReleaseAll();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        monitor.stop();
+        long receivedPackets = received.sum() / RECORDS_PER_PACKET;
+        long lost = sent.sum() - receivedPackets;
+        System.out.printf("%nchannels=%d, received packets=%d, lost packets=%d, duplicate packets=%d%n",
+                boundChannels, receivedPackets, Math.max(lost, 0), Math.max(-lost, 0));
+    }
+
+    @State(Scope.Thread)
+    public static class Sender {
+        DatagramChannel channel;
+        ByteBuffer packet;
+
+        @Setup(Level.Trial)
+        public void setUp(LogEventReceiveBenchmark benchmark) throws Exception {
+            this.channel = DatagramChannel.open();
+            channel.setOption(StandardSocketOptions.SO_BROADCAST, benchmark.broadcast);
+            channel.connect(benchmark.address);
+            this.packet = benchmark.packet.duplicate();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            channel.close();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PACKETS_PER_BURST)
+    public void receive(Sender sender) throws Exception {
+        for (int i = 0; i < PACKETS_PER_BURST; i++) {
+            sender.packet.clear();
+            sender.channel.write(sender.packet);
+        }
+        sent.add(PACKETS_PER_BURST);
+
+        //等待接收端追上，超时未到达的数据包视为丢失
+        long deadline = System.nanoTime() + LOSS_TIMEOUT_NANOS;
+        while (this.outstanding() > WINDOW) {
+            if (System.nanoTime() - deadline > 0) {
+                long pending = sent.sum() - received.sum() / RECORDS_PER_PACKET;
+                skipped.accumulateAndGet(pending, Math::max);
+                break;
+            }
+            //发送线程可能多于CPU核数，让出CPU给接收线程
+            Thread.yield();
+        }
+    }
+
+    private long outstanding() {
+        return sent.sum() - received.sum() / RECORDS_PER_PACKET - skipped.get();
+    }
+
+    @ChannelHandler.Sharable
+    static final class CountingHandler extends SimpleChannelInboundHandler<LogEvent> {
+        private final LongAdder received;
+
+        CountingHandler(LongAdder received) {
+            this.received = received;
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, LogEvent event) {
+            received.increment();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkUtils.run(LogEventReceiveBenchmark.class);
+    }
+}
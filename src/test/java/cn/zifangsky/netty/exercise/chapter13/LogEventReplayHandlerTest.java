@@ -0,0 +1,127 @@
+package cn.zifangsky.netty.exercise.chapter13;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.socket.DatagramPacket;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testing the replay ring and NACK parsing of LogEventReplayHandler
+ *
+ * @author zifangsky
+ * @date 2020/11/24
+ * @since 1.0.0
+ */
+public class LogEventReplayHandlerTest {
+    private static final InetSocketAddress MONITOR = new InetSocketAddress("127.0.0.1", 9999);
+
+    @Test
+    public void testRetransmitRange() {
+        LogEventReplayHandler handler = new LogEventReplayHandler(8);
+        EmbeddedChannel channel = new EmbeddedChannel(handler);
+        record(handler, 5);
+
+        channel.writeInbound(nack(handler.getSessionId(), 1, 3, 4, 5));
+        assertEquals(List.of(1L, 2L, 4L), readSequences(channel));
+        assertEquals(3, handler.retransmittedCount());
+        assertEquals(0, handler.unrecoverableCount());
+        assertFalse(channel.finishAndReleaseAll());
+    }
+
+    @Test
+    public void testNackOutsideRing() {
+        LogEventReplayHandler handler = new LogEventReplayHandler(4);
+        EmbeddedChannel channel = new EmbeddedChannel(handler);
+        //0~5已经被挤出缓冲区，只保存着6~9
+        List<LogEvent> recorded = record(handler, 10);
+        assertEquals(0, recorded.get(0).refCnt());
+        assertEquals(1, recorded.get(9).refCnt());
+
+        channel.writeInbound(nack(handler.getSessionId(), 2, 8));
+        assertEquals(List.of(6L, 7L), readSequences(channel));
+        assertEquals(4, handler.unrecoverableCount());
+
+        //完全在缓冲区之前、尚未发送的区间
+        channel.writeInbound(nack(handler.getSessionId(), 0, 3, 10, 20));
+        assertTrue(readSequences(channel).isEmpty());
+        assertEquals(7, handler.unrecoverableCount());
+        assertEquals(2, handler.retransmittedCount());
+
+        //其他会话的NACK和截断的数据包
+        channel.writeInbound(nack(handler.getSessionId() + 1, 6, 10));
+        channel.writeInbound(new DatagramPacket(Unpooled.wrappedBuffer(new byte[]{LogEvent.NACK_MARKER, 0, 0}), MONITOR));
+        assertTrue(readSequences(channel).isEmpty());
+
+        //移除时释放缓冲区中的消息
+        channel.pipeline().remove(handler);
+        assertEquals(0, recorded.get(9).refCnt());
+        assertFalse(channel.finishAndReleaseAll());
+    }
+
+    @Test
+    public void testTrackerNackIsReplayed() {
+        LogEventReplayHandler handler = new LogEventReplayHandler(16);
+        EmbeddedChannel sender = new EmbeddedChannel(handler);
+        LogEventSequenceTracker tracker = new LogEventSequenceTracker();
+        EmbeddedChannel monitor = new EmbeddedChannel(tracker);
+
+        //监听端只收到了0和3
+        List<LogEvent> recorded = record(handler, 4);
+        for (int i : new int[]{0, 3}) {
+            LogEvent event = recorded.get(i);
+            monitor.writeInbound(new LogEvent(MONITOR, null, event.getFilePath(), event.getMsg())
+                    .sequence(event.getSessionId(), event.getSequence(), event.getOffset()));
+        }
+        tracker.checkGaps(System.nanoTime() + TimeUnit.SECONDS.toNanos(1));
+        DatagramPacket nack = monitor.readOutbound();
+        sender.writeInbound(nack);
+
+        assertEquals(List.of(1L, 2L), readSequences(sender));
+        assertFalse(sender.finishAndReleaseAll());
+        monitor.finishAndReleaseAll();
+    }
+
+    /**
+     * 记录count条消息，模拟编码器写出后释放一次
+     */
+    private static List<LogEvent> record(LogEventReplayHandler handler, int count) {
+        List<LogEvent> events = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            LogEvent event = handler.record(new LogEvent("a.log", "line-" + i), i * 100L);
+            events.add(event);
+            event.release();
+        }
+        return events;
+    }
+
+    private static DatagramPacket nack(long sessionId, long... ranges) {
+        ByteBuf buf = Unpooled.buffer();
+        buf.writeByte(LogEvent.NACK_MARKER);
+        buf.writeLong(sessionId);
+        buf.writeShort(ranges.length / 2);
+        for (long value : ranges) {
+            buf.writeLong(value);
+        }
+        return new DatagramPacket(buf, MONITOR, MONITOR);
+    }
+
+    private static List<Long> readSequences(EmbeddedChannel channel) {
+        List<Long> sequences = new ArrayList<>();
+        LogEvent event;
+        while ((event = channel.readOutbound()) != null) {
+            assertEquals("line-" + event.getSequence(), event.getMsg());
+            assertEquals(event.getSequence() * 100, event.getOffset());
+            sequences.add(event.getSequence());
+            event.release();
+        }
+        return sequences;
+    }
+}
@@ -0,0 +1,193 @@
+package cn.zifangsky.netty.exercise.chapter13;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.socket.DatagramPacket;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testing the deduplication, gap tracking and ordered delivery of LogEventSequenceTracker
+ *
+ * @author zifangsky
+ * @date 2020/11/24
+ * @since 1.0.0
+ */
+public class LogEventSequenceTrackerTest {
+    private static final long SESSION = 42;
+    private static final InetSocketAddress SENDER = new InetSocketAddress("127.0.0.1", 9999);
+    private static final long INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(LogEventSequenceTracker.DEFAULT_NACK_INTERVAL_MILLIS);
+
+    @Test
+    public void testInOrderAndDuplicates() {
+        LogEventSequenceTracker tracker = new LogEventSequenceTracker();
+        EmbeddedChannel channel = new EmbeddedChannel(tracker);
+
+        write(channel, 0, 1, 2, 1, 0, 3);
+        assertEquals(List.of(0L, 1L, 2L, 3L), readSequences(channel));
+        assertEquals(4, tracker.receivedCount());
+        assertEquals(2, tracker.duplicateCount());
+
+        //没有序列号的消息直接传递
+        channel.writeInbound(new LogEvent("a.log", "unsequenced"));
+        LogEvent event = channel.readInbound();
+        assertFalse(event.hasSequence());
+        event.release();
+        assertFalse(channel.finishAndReleaseAll());
+    }
+
+    @Test
+    public void testSingleGapFilled() {
+        LogEventSequenceTracker tracker = new LogEventSequenceTracker();
+        EmbeddedChannel channel = new EmbeddedChannel(tracker);
+
+        write(channel, 0, 2, 3);
+        assertEquals(List.of(0L), readSequences(channel));
+
+        //补齐缺口后按照序列号的顺序传递暂存的消息
+        write(channel, 1);
+        assertEquals(List.of(1L, 2L, 3L), readSequences(channel));
+        write(channel, 2);
+        assertTrue(readSequences(channel).isEmpty());
+        assertEquals(1, tracker.recoveredCount());
+        assertEquals(1, tracker.duplicateCount());
+        assertEquals(0, tracker.lostCount());
+        assertFalse(channel.finishAndReleaseAll());
+    }
+
+    @Test
+    public void testGapSplitInTheMiddle() {
+        LogEventSequenceTracker tracker = new LogEventSequenceTracker();
+        EmbeddedChannel channel = new EmbeddedChannel(tracker);
+
+        //缺口[1, 6)中间的3到达后拆分为[1, 3)和[4, 6)
+        write(channel, 0, 6, 3);
+        assertEquals(List.of(0L), readSequences(channel));
+        tracker.checkGaps(System.nanoTime() + INTERVAL_NANOS);
+        assertEquals(List.of("1-3", "4-6"), readNack(channel));
+
+        write(channel, 4, 1, 5);
+        assertEquals(List.of(1L), readSequences(channel));
+        write(channel, 2);
+        assertEquals(List.of(2L, 3L, 4L, 5L, 6L), readSequences(channel));
+        assertEquals(5, tracker.recoveredCount());
+        assertFalse(channel.finishAndReleaseAll());
+    }
+
+    @Test
+    public void testHeldOverflowUnblocksOldestGap() {
+        LogEventSequenceTracker tracker = new LogEventSequenceTracker(1, LogEventSequenceTracker.DEFAULT_NACK_INTERVAL_MILLIS, 4);
+        EmbeddedChannel channel = new EmbeddedChannel(tracker);
+
+        //暂存区只有4个槽位：5到达时缺口[1, 2)不再阻塞之后的消息
+        write(channel, 0, 2, 3, 4);
+        assertEquals(List.of(0L), readSequences(channel));
+        write(channel, 5, 6);
+        assertEquals(List.of(2L, 3L, 4L, 5L, 6L), readSequences(channel));
+
+        //缺口仍然会请求重传，补齐的消息在到达时直接传递
+        long now = System.nanoTime() + INTERVAL_NANOS;
+        tracker.checkGaps(now);
+        assertEquals(List.of("1-2"), readNack(channel));
+        write(channel, 1);
+        assertEquals(List.of(1L), readSequences(channel));
+        assertEquals(0, tracker.lostCount());
+        assertFalse(channel.finishAndReleaseAll());
+    }
+
+    @Test
+    public void testGiveUpDrainsHeldEvents() {
+        LogEventSequenceTracker tracker = new LogEventSequenceTracker(1, LogEventSequenceTracker.DEFAULT_NACK_INTERVAL_MILLIS, 16);
+        EmbeddedChannel channel = new EmbeddedChannel(tracker);
+
+        write(channel, 0, 3, 4);
+        assertEquals(List.of(0L), readSequences(channel));
+
+        long now = System.nanoTime() + INTERVAL_NANOS;
+        tracker.checkGaps(now);
+        assertEquals(List.of("1-3"), readNack(channel));
+        //超过NACK次数后缺口计为丢失，暂存的消息在EventLoop中继续传递
+        tracker.checkGaps(now + TimeUnit.SECONDS.toNanos(1));
+        assertNull(channel.readOutbound());
+        channel.runPendingTasks();
+        assertEquals(List.of(3L, 4L), readSequences(channel));
+        assertEquals(2, tracker.lostCount());
+
+        //计为丢失之后到达的消息视为重复
+        write(channel, 1, 5);
+        assertEquals(List.of(5L), readSequences(channel));
+        assertEquals(1, tracker.duplicateCount());
+        assertFalse(channel.finishAndReleaseAll());
+    }
+
+    @Test
+    public void testIdleSessionExpires() {
+        LogEventSequenceTracker tracker = new LogEventSequenceTracker(1, LogEventSequenceTracker.DEFAULT_NACK_INTERVAL_MILLIS, 16, 1000);
+        EmbeddedChannel channel = new EmbeddedChannel(tracker);
+
+        write(channel, 0, 2);
+        readSequences(channel);
+        //有未决缺口的会话不会被移除
+        long now = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        tracker.checkGaps(now);
+        assertEquals(1, tracker.sessionCount());
+        readNack(channel);
+        tracker.checkGaps(now + TimeUnit.SECONDS.toNanos(1));
+        channel.runPendingTasks();
+        assertEquals(List.of(2L), readSequences(channel));
+
+        tracker.checkGaps(now + TimeUnit.SECONDS.toNanos(2));
+        assertEquals(0, tracker.sessionCount());
+        //移除后再收到该会话的消息时重新开始跟踪
+        write(channel, 10, 11);
+        assertEquals(List.of(10L, 11L), readSequences(channel));
+        assertEquals(1, tracker.sessionCount());
+        assertFalse(channel.finishAndReleaseAll());
+    }
+
+    private static void write(EmbeddedChannel channel, long... sequences) {
+        for (long sequence : sequences) {
+            channel.writeInbound(new LogEvent(SENDER, null, "a.log", "line-" + sequence).sequence(SESSION, sequence, 0));
+        }
+    }
+
+    private static List<Long> readSequences(EmbeddedChannel channel) {
+        List<Long> sequences = new ArrayList<>();
+        LogEvent event;
+        while ((event = channel.readInbound()) != null) {
+            assertEquals("line-" + event.getSequence(), event.getMsg());
+            sequences.add(event.getSequence());
+            event.release();
+        }
+        return sequences;
+    }
+
+    /**
+     * 读取一个NACK数据包中的所有区间，格式为“start-end”
+     */
+    private static List<String> readNack(EmbeddedChannel channel) {
+        DatagramPacket packet = channel.readOutbound();
+        assertNotNull(packet);
+        assertEquals(SENDER, packet.recipient());
+        ByteBuf data = packet.content();
+        List<String> ranges = new ArrayList<>();
+        try {
+            assertEquals(LogEvent.NACK_MARKER, data.readByte());
+            assertEquals(SESSION, data.readLong());
+            int count = data.readUnsignedShort();
+            for (int i = 0; i < count; i++) {
+                ranges.add(data.readLong() + "-" + data.readLong());
+            }
+            assertFalse(data.isReadable());
+        } finally {
+            packet.release();
+        }
+        return ranges;
+    }
+}
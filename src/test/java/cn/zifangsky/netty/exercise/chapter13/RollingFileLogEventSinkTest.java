@@ -0,0 +1,107 @@
+package cn.zifangsky.netty.exercise.chapter13;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testing the crash recovery and rolling of RollingFileLogEventSink
+ *
+ * @author zifangsky
+ * @date 2020/11/24
+ * @since 1.0.0
+ */
+public class RollingFileLogEventSinkTest {
+    private static final long MAX_FILE_SIZE = 16;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testMmapFileLeftPaddedByCrash() throws IOException {
+        //异常退出时文件仍然是映射时扩展后的大小，末尾是0
+        Path log = dir.resolve("monitor.log");
+        byte[] content = Arrays.copyOf("a1\na2\n".getBytes(StandardCharsets.UTF_8), (int) MAX_FILE_SIZE);
+        Files.write(log, content);
+
+        RollingFileLogEventSink sink = new RollingFileLogEventSink(log.toFile(), MAX_FILE_SIZE, true);
+        write(sink, "a3\n");
+        sink.close();
+        assertEquals("a1\na2\na3\n", read(log));
+        assertEquals(List.of("monitor.log"), listFiles());
+    }
+
+    @Test
+    public void testMmapRollAndTruncate() throws IOException {
+        Path log = dir.resolve("monitor.log");
+        RollingFileLogEventSink sink = new RollingFileLogEventSink(log.toFile(), MAX_FILE_SIZE, true);
+        write(sink, "0123456789\n", "abcdefghij\n");
+        sink.close();
+
+        //第一个文件写满16个字节后滚动，当前文件截断到实际长度
+        List<String> files = listFiles();
+        assertEquals(2, files.size());
+        assertEquals("0123456789\nabcde", read(dir.resolve(files.get(1))));
+        assertEquals("fghij\n", read(log));
+    }
+
+    @Test
+    public void testRollAfterRenameFailure() throws IOException {
+        for (boolean mmap : new boolean[]{false, true}) {
+            Path log = dir.resolve("monitor-" + mmap + ".log");
+            RollingFileLogEventSink sink = new RollingFileLogEventSink(log.toFile(), MAX_FILE_SIZE, mmap);
+            write(sink, "0123456789abcde\n");
+
+            //当前文件被删除，滚动时重命名失败
+            Files.delete(log);
+            ByteBuf failed = Unpooled.copiedBuffer("lost\n", CharsetUtil.UTF_8);
+            try {
+                assertThrows(IOException.class, () -> sink.write(failed));
+            } finally {
+                failed.release();
+            }
+
+            //之后的写入重新打开当前文件
+            write(sink, "b1\n", "b2\n");
+            sink.close();
+            assertEquals("b1\nb2\n", read(log), "mmap: " + mmap);
+        }
+    }
+
+    private static void write(RollingFileLogEventSink sink, String... lines) throws IOException {
+        for (String line : lines) {
+            ByteBuf buf = Unpooled.copiedBuffer(line, CharsetUtil.UTF_8);
+            try {
+                sink.write(buf);
+            } finally {
+                buf.release();
+            }
+        }
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 按文件名排序的所有文件（当前文件排在滚动后的文件之前）
+     */
+    private List<String> listFiles() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(file -> file.getFileName().toString()).sorted().collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package cn.zifangsky.netty.exercise.chapter4;
+
+import cn.zifangsky.netty.exercise.BenchmarkUtils;
+import io.netty.channel.epoll.Epoll;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 通过本地回环地址对第4章中不同传输方式实现的服务端进行基准测试
+ * <p>这些服务端在连接建立后都会写出“Hi!\r\n”并关闭连接，因此每次操作包括一次完整的建立连接、读取、关闭过程。
+ * JMH的每个线程模拟一个并发连接</p>
+ *
+ * @author zifangsky
+ * @date 2020/11/2
+ * @since 1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class ServerTransportBenchmark {
+
+    public enum Transport {
+        NETTY_NIO,
+        NETTY_EPOLL,
+        NETTY_OIO,
+        PLAIN_NIO,
+        PLAIN_OIO
+    }
+
+    @Param
+    public Transport transport;
+
+    private int port;
+    private Thread serverThread;
+
+    @Setup(Level.Trial)
+    public void startServer() throws Exception {
+        this.port = BenchmarkUtils.freePort();
+
+        switch (this.transport) {
+            case NETTY_NIO:
+                this.serverThread = BenchmarkUtils.startServer("nio-server", false,
+                        p -> new NettyNioServer().server(p), this.port);
+                break;
+            case NETTY_EPOLL:
+                if (!Epoll.isAvailable()) {
+                    throw new IllegalStateException("Epoll is not available", Epoll.unavailabilityCause());
+                }
+                this.serverThread = BenchmarkUtils.startServer("epoll-server", false,
+                        p -> new NettyEpollServer().server(p), this.port);
+                break;
+            case NETTY_OIO:
+                this.serverThread = BenchmarkUtils.startServer("oio-server", false,
+                        p -> new NettyOioServer().server(p), this.port);
+                break;
+            case PLAIN_NIO:
+                //PlainNioServer和PlainOioServer不会响应中断，使用守护线程运行
+                this.serverThread = BenchmarkUtils.startServer("plain-nio-server", true,
+                        p -> new PlainNioServer().server(p), this.port);
+                break;
+            case PLAIN_OIO:
+                this.serverThread = BenchmarkUtils.startServer("plain-oio-server", true,
+                        p -> new PlainOioServer().server(p), this.port);
+                break;
+            default:
+                throw new IllegalStateException("Unsupported transport " + this.transport);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() throws Exception {
+        if (!this.serverThread.isDaemon()) {
+            BenchmarkUtils.stopServer(this.serverThread);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ClientState {
+        final byte[] response = new byte[64];
+    }
+
+    /**
+     * 建立连接 -> 读取“Hi!\r\n”直到服务端关闭连接
+     */
+    @Benchmark
+    public int connectAndRead(ClientState client) throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress("127.0.0.1", this.port));
+
+            return BenchmarkUtils.readToEnd(socket.getInputStream(), client.response);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkUtils.run(ServerTransportBenchmark.class, 1, 16, 64);
+    }
+}
@@ -0,0 +1,72 @@
+package cn.zifangsky.netty.exercise.chapter9;
+
+import cn.zifangsky.netty.exercise.BenchmarkUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比{@link AbsIntegerEncoder}每个int输出一个Integer与批量输出的耗时和分配情况
+ * <p>编码器前面是一个直接丢弃消息的出站处理器，因此结果包括了每个消息经过ChannelPipeline的开销，结果按照每个int计算</p>
+ *
+ * @author zifangsky
+ * @date 2020/11/21
+ * @since 1.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class AbsIntegerEncoderBenchmark {
+    private static final int VALUES_PER_WRITE = 1024;
+
+    @Param({"BOXED", "INT_ARRAY", "BUFFER"})
+    public AbsIntegerEncoder.Mode mode;
+
+    private EmbeddedChannel channel;
+    private ByteBuf input;
+    private long messages;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.channel = new EmbeddedChannel(new ChannelOutboundHandlerAdapter() {
+            @Override
+            public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+                messages++;
+                ReferenceCountUtil.release(msg);
+                promise.setSuccess();
+            }
+        }, new AbsIntegerEncoder(mode));
+
+        this.input = PooledByteBufAllocator.DEFAULT.directBuffer(VALUES_PER_WRITE * 4);
+        for (int i = 0; i < VALUES_PER_WRITE; i++) {
+            input.writeInt(i % 2 == 0 ? i : -i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        input.release();
+        channel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES_PER_WRITE)
+    public long encode() {
+        channel.writeOutbound(input.retainedDuplicate());
+        return messages;
+    }
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkUtils.run(AbsIntegerEncoderBenchmark.class);
+    }
+}
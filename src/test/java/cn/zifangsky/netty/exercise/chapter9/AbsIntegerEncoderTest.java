@@ -34,4 +34,47 @@ public class AbsIntegerEncoderTest {
         }
         assertNull(channel.readOutbound());
     }
+
+    @Test
+    public void testEncodedAsIntArray() {
+        ByteBuf buf = Unpooled.buffer();
+        for (int i = 1; i < 10; i++) {
+            buf.writeInt(i * -1);
+        }
+
+        EmbeddedChannel channel = new EmbeddedChannel(
+            new AbsIntegerEncoder(AbsIntegerEncoder.Mode.INT_ARRAY));
+        assertTrue(channel.writeOutbound(buf));
+        assertTrue(channel.finish());
+
+        //一个ByteBuf只产生一个消息
+        int[] values = channel.readOutbound();
+        assertArrayEquals(new int[]{1, 2, 3, 4, 5, 6, 7, 8, 9}, values);
+        assertNull(channel.readOutbound());
+        assertEquals(0, buf.refCnt());
+    }
+
+    @Test
+    public void testEncodedAsBuffer() {
+        ByteBuf buf = Unpooled.buffer();
+        for (int i = 1; i < 10; i++) {
+            buf.writeInt(i * -1);
+        }
+        //不足4个字节的剩余数据会被丢弃
+        buf.writeByte(1);
+
+        EmbeddedChannel channel = new EmbeddedChannel(
+            new AbsIntegerEncoder(AbsIntegerEncoder.Mode.BUFFER));
+        assertTrue(channel.writeOutbound(buf));
+        assertTrue(channel.finish());
+
+        ByteBuf read = channel.readOutbound();
+        assertEquals(36, read.readableBytes());
+        for (int i = 1; i < 10; i++) {
+            assertEquals(i, read.readInt());
+        }
+        read.release();
+        assertNull(channel.readOutbound());
+        assertEquals(0, buf.refCnt());
+    }
 }
@@ -0,0 +1,73 @@
+package cn.zifangsky.netty.exercise.chapter9;
+
+import cn.zifangsky.netty.exercise.BenchmarkUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比{@link FixedLengthFrameDecoder}三种输出方式的解码耗时和分配情况
+ * <p>每次调用向ChannelPipeline写入一个256KB的池化直接内存缓冲区（相当于一次较大的读取），由最后一个处理器统计字节数后释放每个帧</p>
+ *
+ * @author zifangsky
+ * @date 2020/11/21
+ * @since 1.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class FixedLengthFrameDecoderBenchmark {
+    private static final int READ_SIZE = 256 * 1024;
+
+    @Param({"16", "256", "4096", "65536"})
+    public int frameLength;
+
+    @Param({"COPY", "SLICE", "BATCH"})
+    public FixedLengthFrameDecoder.Mode mode;
+
+    private EmbeddedChannel channel;
+    private ByteBuf input;
+    private long bytes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.channel = new EmbeddedChannel(new FixedLengthFrameDecoder(frameLength, mode),
+                new ChannelInboundHandlerAdapter() {
+                    @Override
+                    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                        ByteBuf frame = (ByteBuf) msg;
+                        bytes += frame.readableBytes();
+                        frame.release();
+                    }
+                });
+
+        this.input = PooledByteBufAllocator.DEFAULT.directBuffer(READ_SIZE);
+        for (int i = 0; i < READ_SIZE; i++) {
+            input.writeByte(i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        input.release();
+        channel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public long decode() {
+        channel.writeInbound(input.retainedDuplicate());
+        return bytes;
+    }
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkUtils.run(FixedLengthFrameDecoderBenchmark.class);
+    }
+}
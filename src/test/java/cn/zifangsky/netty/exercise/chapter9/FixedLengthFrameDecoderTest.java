@@ -78,4 +78,55 @@ public class FixedLengthFrameDecoderTest {
         buf.release();
     }
 
+    @Test
+    public void testFramesDecodedAsSlices() {
+        ByteBuf buf = Unpooled.buffer();
+        for (int i = 0; i < 9; i++) {
+            buf.writeByte(i);
+        }
+        ByteBuf input = buf.duplicate();
+
+        EmbeddedChannel channel = new EmbeddedChannel(
+                new FixedLengthFrameDecoder(3, FixedLengthFrameDecoder.Mode.SLICE));
+        assertFalse(channel.writeInbound(input.readRetainedSlice(2)));
+        assertTrue(channel.writeInbound(input.readRetainedSlice(7)));
+        assertTrue(channel.finish());
+
+        for (int i = 0; i < 3; i++) {
+            ByteBuf read = channel.readInbound();
+            assertEquals(buf.readSlice(3), read);
+            read.release();
+        }
+
+        assertNull(channel.readInbound());
+        buf.release();
+    }
+
+    @Test
+    public void testFramesDecodedAsBatch() {
+        ByteBuf buf = Unpooled.buffer();
+        for (int i = 0; i < 10; i++) {
+            buf.writeByte(i);
+        }
+        ByteBuf input = buf.duplicate();
+
+        EmbeddedChannel channel = new EmbeddedChannel(
+                new FixedLengthFrameDecoder(3, FixedLengthFrameDecoder.Mode.BATCH));
+        //一次读取得到的所有完整的帧作为一个消息输出，剩下的1个字节等待下一次读取
+        assertTrue(channel.writeInbound(input.readRetainedSlice(8)));
+        ByteBuf read = channel.readInbound();
+        assertEquals(buf.readSlice(6), read);
+        read.release();
+        assertNull(channel.readInbound());
+
+        assertTrue(channel.writeInbound(input.readRetainedSlice(2)));
+        assertTrue(channel.finish());
+        read = channel.readInbound();
+        assertEquals(buf.readSlice(3), read);
+        read.release();
+
+        assertNull(channel.readInbound());
+        buf.release();
+    }
+
 }
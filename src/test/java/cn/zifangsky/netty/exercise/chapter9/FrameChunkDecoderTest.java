@@ -53,4 +53,50 @@ public class FrameChunkDecoderTest {
         read.release();
         buf.release();
     }
+
+    @Test
+    public void testFramesStreamedInChunks() {
+        ByteBuf buf = Unpooled.buffer();
+        for (int i = 0; i < 9; i++) {
+            buf.writeByte(i);
+        }
+        ByteBuf input = buf.duplicate();
+
+        EmbeddedChannel channel = new EmbeddedChannel(
+            new FrameChunkDecoder(3, FrameChunkDecoder.Mode.STREAMING));
+
+        //没有超过maxFrameSize时只有一个分块，既是第一个也是最后一个
+        assertTrue(channel.writeInbound(input.readRetainedSlice(2)));
+        FrameChunk chunk = channel.readInbound();
+        assertTrue(chunk.isBegin());
+        assertTrue(chunk.isEnd());
+        assertEquals(buf.readSlice(2), chunk.content());
+        chunk.release();
+
+        //超过maxFrameSize时不会抛出异常，而是拆分为3 + 3 + 1个字节的分块
+        assertTrue(channel.writeInbound(input.readRetainedSlice(7)));
+        assertTrue(channel.finish());
+
+        chunk = channel.readInbound();
+        assertTrue(chunk.isBegin());
+        assertFalse(chunk.isEnd());
+        assertEquals(buf.readSlice(3), chunk.content());
+        chunk.release();
+
+        chunk = channel.readInbound();
+        assertTrue(chunk.isContinuation());
+        assertEquals(buf.readSlice(3), chunk.content());
+        chunk.release();
+
+        chunk = channel.readInbound();
+        assertFalse(chunk.isBegin());
+        assertTrue(chunk.isEnd());
+        assertEquals(buf.readSlice(1), chunk.content());
+        chunk.release();
+
+        assertNull(channel.readInbound());
+        //所有分块都是输入数据的切片，释放之后输入数据也被释放
+        assertEquals(1, buf.refCnt());
+        buf.release();
+    }
 }
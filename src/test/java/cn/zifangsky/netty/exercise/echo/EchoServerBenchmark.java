@@ -0,0 +1,121 @@
+package cn.zifangsky.netty.exercise.echo;
+
+import cn.zifangsky.netty.exercise.BenchmarkUtils;
+import cn.zifangsky.netty.exercise.echo.server.EchoServer;
+import cn.zifangsky.netty.exercise.utils.TransportType;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 通过本地回环地址对{@link EchoServer}进行基准测试
+ * <p>JMH的每个线程模拟一个并发连接：非持久连接模式下每次操作都会重新建立连接，持久连接模式下每个线程复用同一个连接。吞吐量、延迟分位数（p50/p99/p999）和分配速率（-prof gc）分别在不同的传输方式、消息大小、连接数下输出。
+ * 在Linux下可以额外使用<code>-prof perfnorm</code>或者<code>strace -c -f</code>对比EPOLL和NIO每次操作的系统调用次数</p>
+ *
+ * @author zifangsky
+ * @date 2020/11/2
+ * @since 1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class EchoServerBenchmark {
+
+    @Param({"16", "1024", "16384"})
+    public int messageSize;
+
+    @Param({"false", "true"})
+    public boolean keepAlive;
+
+    @Param({"NIO", "EPOLL"})
+    public TransportType transport;
+
+    private int port;
+    private Thread serverThread;
+
+    @Setup(Level.Trial)
+    public void startServer() throws Exception {
+        if (!this.transport.isAvailable()) {
+            throw new IllegalStateException(this.transport + " transport is not available");
+        }
+        this.port = BenchmarkUtils.freePort();
+        this.serverThread = BenchmarkUtils.startServer("echo-server", false,
+                p -> new EchoServer(p, this.keepAlive, this.transport).start(), this.port);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() throws Exception {
+        BenchmarkUtils.stopServer(this.serverThread);
+    }
+
+    /**
+     * 每个线程各自的消息、读缓冲区以及持久连接
+     */
+    @State(Scope.Thread)
+    public static class ClientState {
+        byte[] request;
+        byte[] response;
+        Socket socket;
+
+        @Setup(Level.Trial)
+        public void setUp(EchoServerBenchmark benchmark) throws IOException {
+            this.request = new byte[benchmark.messageSize];
+            Arrays.fill(this.request, (byte) 'a');
+            this.response = new byte[benchmark.messageSize];
+
+            if (benchmark.keepAlive) {
+                this.socket = connect(benchmark.port);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            if (this.socket != null) {
+                this.socket.close();
+            }
+        }
+    }
+
+    /**
+     * 发送消息 -> 读取回显的消息（非持久连接模式下每次都需要重新建立和关闭连接）
+     */
+    @Benchmark
+    public int echo(ClientState client) throws IOException {
+        if (this.keepAlive) {
+            return exchange(client.socket, client);
+        }
+
+        try (Socket socket = connect(this.port)) {
+            return exchange(socket, client);
+        }
+    }
+
+    private int exchange(Socket socket, ClientState client) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write(client.request);
+        out.flush();
+
+        InputStream in = socket.getInputStream();
+        return BenchmarkUtils.readFully(in, client.response, this.messageSize);
+    }
+
+    private static Socket connect(int port) throws IOException {
+        Socket socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.connect(new InetSocketAddress("127.0.0.1", port));
+        return socket;
+    }
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkUtils.run(EchoServerBenchmark.class, 1, 16, 64);
+    }
+}
@@ -0,0 +1,78 @@
+package cn.zifangsky.netty.exercise.utils;
+
+import cn.zifangsky.netty.exercise.BenchmarkUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比{@link DateUtils}缓存格式化器前后的开销
+ * <p>以legacy开头的方法是原有的实现：每次调用都会创建新的DateTimeFormatter/SimpleDateFormat，多个格式化表达式依次解析失败时会抛出异常</p>
+ *
+ * @author zifangsky
+ * @date 2020/11/17
+ * @since 1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class DateUtilsBenchmark {
+    private static final String PATTERN = "yyyy-MM-dd HH:mm:ss";
+    /**
+     * 只有最后一个格式化表达式可以解析
+     */
+    private static final String[] PATTERNS = {"yyyy/MM/dd HH:mm:ss", "yyyyMMddHHmmss", PATTERN};
+    private static final String DATE_STR = "2020-11-17 10:20:30";
+
+    private final LocalDateTime dateTime = LocalDateTime.of(2020, 11, 17, 10, 20, 30);
+
+    @Benchmark
+    public String legacyNowStr() {
+        return LocalDateTime.now().format(DateTimeFormatter.ofPattern(PATTERN, Locale.SIMPLIFIED_CHINESE));
+    }
+
+    @Benchmark
+    public String nowStr() {
+        return DateUtils.nowStr();
+    }
+
+    @Benchmark
+    public String legacyFormatLocalDateTime() {
+        return dateTime.format(DateTimeFormatter.ofPattern(PATTERN, Locale.SIMPLIFIED_CHINESE));
+    }
+
+    @Benchmark
+    public String formatLocalDateTime() {
+        return DateUtils.formatLocalDateTime(dateTime);
+    }
+
+    @Benchmark
+    public Date legacyToDateWithPatterns() {
+        for (String pattern : PATTERNS) {
+            try {
+                return new SimpleDateFormat(pattern).parse(DATE_STR);
+            } catch (ParseException e) {
+                // try the next pattern
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public Date toDateWithPatterns() {
+        return DateUtils.toDate(DATE_STR, PATTERNS);
+    }
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkUtils.run(DateUtilsBenchmark.class);
+    }
+}
@@ -0,0 +1,100 @@
+package cn.zifangsky.netty.exercise.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testing the cached parsing and formatting of DateUtils
+ *
+ * @author zifangsky
+ * @date 2020/11/24
+ * @since 1.0.0
+ */
+public class DateUtilsTest {
+    private static final String DATE_TIME_PATTERN = "yyyy-MM-dd HH:mm:ss";
+    private static final String DATE_PATTERN = "yyyy-MM-dd";
+
+    @Test
+    public void testParseWithFallbackPatterns() {
+        //第一个表达式解析失败时返回null而不是抛出异常，继续尝试第二个表达式
+        assertNull(DateUtils.parseDate("2020-11-17", DATE_TIME_PATTERN));
+        Date date = DateUtils.toDate("2020-11-17", DATE_TIME_PATTERN, DATE_PATTERN);
+        assertEquals(DateUtils.toDate(LocalDateTime.of(2020, 11, 17, 0, 0)), date);
+
+        date = DateUtils.toDate("2020-11-17 10:20:30", DATE_TIME_PATTERN, DATE_PATTERN);
+        assertEquals(DateUtils.toDate(LocalDateTime.of(2020, 11, 17, 10, 20, 30)), date);
+
+        assertNull(DateUtils.toDate("not a date", DATE_TIME_PATTERN, DATE_PATTERN));
+        assertNull(DateUtils.toDate("2020-11-17", new String[0]));
+    }
+
+    @Test
+    public void testParseNull() {
+        assertNull(DateUtils.parseDate(null, DATE_TIME_PATTERN));
+        assertNull(DateUtils.toDate((String) null));
+        assertNull(DateUtils.toDate(null, DATE_TIME_PATTERN, DATE_PATTERN));
+    }
+
+    @Test
+    public void testFormatMilliSecondTimestamp() {
+        long second = DateUtils.toDate(LocalDateTime.of(2020, 11, 17, 10, 20, 30)).getTime();
+        String text = DateUtils.formatMilliSecondTimestamp(second);
+        assertEquals("2020-11-17 10:20:30", text);
+        //同一秒内复用同一个字符串
+        assertSame(text, DateUtils.formatMilliSecondTimestamp(second + 999));
+
+        assertEquals("2020-11-17 10:20:31", DateUtils.formatMilliSecondTimestamp(second + 1000));
+        assertEquals("2020-11-17 10:20:29", DateUtils.formatMilliSecondTimestamp(second - 1));
+        assertEquals("2020-11-17 10:20:30", DateUtils.formatMilliSecondTimestamp(second + 500));
+    }
+
+    @Test
+    public void testConcurrentParseAndFormat() throws Exception {
+        int threads = 8;
+        int iterations = 2000;
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern(DATE_TIME_PATTERN);
+        LocalDateTime base = LocalDateTime.of(2020, 11, 17, 0, 0);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int offset = t;
+                futures.add(executor.submit((Callable<Void>) () -> {
+                    start.await();
+                    for (int i = 0; i < iterations; i++) {
+                        //每个线程解析和格式化不同的时间，共享的格式化器会让结果互相干扰
+                        LocalDateTime dateTime = base.plusSeconds((long) i * threads + offset);
+                        String expected = dateTime.format(formatter);
+                        Date date = DateUtils.parseDate(expected, DATE_TIME_PATTERN);
+                        assertEquals(DateUtils.toDate(dateTime), date, expected);
+
+                        long milliSecond = dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+                        assertEquals(expected, DateUtils.formatMilliSecondTimestamp(milliSecond + i % 1000));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}